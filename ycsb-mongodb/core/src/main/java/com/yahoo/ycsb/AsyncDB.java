@@ -0,0 +1,95 @@
+/**
+ * Copyright (c) 2010 Yahoo! Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.yahoo.ycsb;
+
+import java.util.HashMap;
+import java.util.Set;
+import java.util.Vector;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * A DB layer whose operations complete asynchronously. Each xxxAsync() method submits the operation and
+ * returns a future that completes with the same return code the synchronous method would return. The
+ * result maps passed to readAsync() and scanAsync() are filled before the future completes.
+ * 
+ * When "pipeline.depth" is greater than 1, DBWrapper lets each client keep up to that many operations in
+ * flight: the synchronous methods called by the workload submit the operation and return DB.PENDING as soon
+ * as the operation is in flight, and its latency and return code are recorded when it completes. Otherwise the
+ * synchronous methods simply wait for the operation to complete.
+ */
+public abstract class AsyncDB extends DB
+{
+	/**
+	 * The number of operations each client may have in flight at once. 1 (the default) runs them one at a time.
+	 */
+	public static final String PIPELINE_DEPTH_PROPERTY="pipeline.depth";
+
+	public static final String PIPELINE_DEPTH_PROPERTY_DEFAULT="1";
+
+	public abstract CompletableFuture<Integer> readAsync(String table, String key, Set<String> fields, HashMap<String,ByteIterator> result);
+
+	public abstract CompletableFuture<Integer> scanAsync(String table, String startkey, int recordcount, Set<String> fields, Vector<HashMap<String,ByteIterator>> result);
+
+	public abstract CompletableFuture<Integer> updateAsync(String table, String key, HashMap<String,ByteIterator> values);
+
+	public abstract CompletableFuture<Integer> insertAsync(String table, String key, HashMap<String,ByteIterator> values);
+
+	public abstract CompletableFuture<Integer> deleteAsync(String table, String key);
+
+	/**
+	 * Wait for an operation to complete and return its return code, or 1 if it failed with an exception.
+	 */
+	static int await(CompletableFuture<Integer> future)
+	{
+		try
+		{
+			return future.join();
+		}
+		catch (CompletionException e)
+		{
+			e.getCause().printStackTrace();
+			return 1;
+		}
+	}
+
+	public int read(String table, String key, Set<String> fields, HashMap<String,ByteIterator> result)
+	{
+		return await(readAsync(table,key,fields,result));
+	}
+
+	public int scan(String table, String startkey, int recordcount, Set<String> fields, Vector<HashMap<String,ByteIterator>> result)
+	{
+		return await(scanAsync(table,startkey,recordcount,fields,result));
+	}
+
+	public int update(String table, String key, HashMap<String,ByteIterator> values)
+	{
+		return await(updateAsync(table,key,values));
+	}
+
+	public int insert(String table, String key, HashMap<String,ByteIterator> values)
+	{
+		return await(insertAsync(table,key,values));
+	}
+
+	public int delete(String table, String key)
+	{
+		return await(deleteAsync(table,key));
+	}
+}
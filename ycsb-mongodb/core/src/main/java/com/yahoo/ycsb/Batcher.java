@@ -0,0 +1,238 @@
+/**
+ * Copyright (c) 2010 Yahoo! Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.yahoo.ycsb;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import com.yahoo.ycsb.measurements.Measurements;
+
+/**
+ * Queues the writes of one DB instance and executes them together, trading a round trip per operation for one
+ * per batch. A batch is executed once it holds "batchsize" operations or "batch.bytes" bytes, before the next operation
+ * is queued once its oldest operation has waited "batch.interval" milliseconds, and when the batcher is closed, which
+ * a DB must do in cleanup().
+ * 
+ * A batcher has no thread of its own: like the DB instance it belongs to, it is only used by the client thread that
+ * owns the instance, so execute() never runs concurrently with the DB's other operations. A DB whose other operations
+ * should also release an overdue batch calls flushIfDue() from them.
+ * 
+ * A DB returns the result of add() for the operations it queues, DB.BATCHED, so DBWrapper does not measure them one by one.
+ * Each executed batch is measured here instead: its round trip under "operation-BATCH", and under "operation" once
+ * per queued operation with the round trip divided by the batch size. Each operation's intended latency runs from
+ * its intended start time, or from when it was queued if it has none, to the end of its batch. Every operation gets
+ * a return code, 0 if the DB reports it applied and 1 otherwise, so a partially failed batch is counted exactly.
+ * 
+ * @param <T> The DB's representation of a queued operation.
+ */
+public abstract class Batcher<T>
+{
+	/**
+	 * The number of operations per batch. 1, the default, disables batching.
+	 */
+	public static final String BATCH_SIZE_PROPERTY="batchsize";
+	public static final String BATCH_SIZE_PROPERTY_DEFAULT="1";
+
+	/**
+	 * Execute a batch once the operations in it add up to this many bytes. 0, the default, means no limit.
+	 */
+	public static final String BATCH_BYTES_PROPERTY="batch.bytes";
+	public static final String BATCH_BYTES_PROPERTY_DEFAULT="0";
+
+	/**
+	 * Execute a batch before queuing the next operation once its oldest operation has waited this many milliseconds,
+	 * even if it is not full. 0, the default, means a batch only waits to fill up.
+	 */
+	public static final String BATCH_INTERVAL_PROPERTY="batch.interval";
+	public static final String BATCH_INTERVAL_PROPERTY_DEFAULT="0";
+
+	final String _operation;
+	final int _size;
+	final long _bytes;
+	final long _intervalns;
+	final Measurements _measurements;
+
+	ArrayList<T> _items;
+	/**
+	 * The time each queued operation's intended latency is measured from.
+	 */
+	long[] _intended;
+	String _table;
+	long _queuedbytes;
+	long _oldest;
+
+	/**
+	 * @param operation The name the batches are measured under, e.g. "INSERT".
+	 * @param p The properties configuring the batch size, bytes and interval.
+	 * @throws DBException If the properties are not numbers, or out of range.
+	 */
+	public Batcher(String operation, Properties p) throws DBException
+	{
+		this(operation,
+				parse(p,BATCH_SIZE_PROPERTY,BATCH_SIZE_PROPERTY_DEFAULT),
+				parse(p,BATCH_BYTES_PROPERTY,BATCH_BYTES_PROPERTY_DEFAULT),
+				parse(p,BATCH_INTERVAL_PROPERTY,BATCH_INTERVAL_PROPERTY_DEFAULT));
+	}
+
+	/**
+	 * Create a batcher configured by a DB's own properties rather than the batch* ones.
+	 * 
+	 * @param operation The name the batches are measured under, e.g. "UPDATE".
+	 * @param size The number of operations per batch, 1 to disable batching.
+	 * @param bytes The number of bytes per batch, 0 for no limit.
+	 * @param intervalms How long an operation waits in a batch before the next one executes it, in milliseconds, 0 for no limit.
+	 * @throws DBException If the size is below 1 or the bytes or interval are negative.
+	 */
+	public Batcher(String operation, long size, long bytes, long intervalms) throws DBException
+	{
+		if ( (size<1) || (size>Integer.MAX_VALUE) || (bytes<0) || (intervalms<0) )
+		{
+			throw new DBException("Batches of "+operation+" operations need a size of at least 1, and a byte limit and interval that are not negative");
+		}
+		_operation=operation;
+		_size=(int)size;
+		_bytes=bytes;
+		_intervalns=intervalms*1000000L;
+		_measurements=Measurements.getMeasurements();
+		_items=new ArrayList<T>(_size);
+		_intended=new long[_size];
+	}
+
+	/**
+	 * Return true if operations should be queued here, false if the DB should execute them one at a time.
+	 */
+	public boolean enabled()
+	{
+		return _size>1;
+	}
+
+	/**
+	 * Queue an operation, executing the batch if it is full.
+	 * 
+	 * @param table The table the operation applies to. A batch only holds operations on one table, so a pending batch
+	 * on another table is executed first, as is a pending batch whose interval has passed.
+	 * @param item The operation.
+	 * @param bytes The size of the operation, counted against "batch.bytes".
+	 * @return DB.BATCHED, for the DB to return.
+	 */
+	public int add(String table, T item, long bytes)
+	{
+		if ( (!_items.isEmpty()) && ( (table.compareTo(_table)!=0) || due() ) )
+		{
+			flush();
+		}
+		if (_items.isEmpty())
+		{
+			_table=table;
+			_oldest=System.nanoTime();
+		}
+		long ist=_measurements.getIntendedStartTimeNs();
+		_intended[_items.size()]=(ist==0) ? System.nanoTime() : ist;
+		_items.add(item);
+		_queuedbytes+=bytes;
+		if ( (_items.size()>=_size) || ( (_bytes>0) && (_queuedbytes>=_bytes) ) )
+		{
+			flush();
+		}
+		return DB.BATCHED;
+	}
+
+	/**
+	 * Execute the pending batch if its oldest operation has waited "batch.interval" milliseconds.
+	 */
+	public void flushIfDue()
+	{
+		if ( (!_items.isEmpty()) && due() )
+		{
+			flush();
+		}
+	}
+
+	/**
+	 * Execute the pending batch, if any.
+	 */
+	public void flush()
+	{
+		int n=_items.size();
+		if (n==0)
+		{
+			return;
+		}
+
+		long applied;
+		long st=System.nanoTime();
+		try
+		{
+			applied=execute(_table,_items);
+		}
+		catch (Exception e)
+		{
+			System.err.println("Batch of "+n+" "+_operation+" operations failed: "+e);
+			e.printStackTrace();
+			applied=0;
+		}
+		long en=System.nanoTime();
+		_items.clear();
+		_queuedbytes=0;
+
+		int latency=(int)((en-st)/1000);
+		_measurements.measure(_operation+"-BATCH",latency);
+		_measurements.reportReturnCode(_operation+"-BATCH",applied==n ? 0 : 1);
+		int each=latency/n;
+		for (int i=0; i<n; i++)
+		{
+			_measurements.measure(_operation,each);
+			_measurements.measureIntended(_operation,(int)((en-_intended[i])/1000));
+			_measurements.reportReturnCode(_operation,i<applied ? 0 : 1);
+		}
+	}
+
+	/**
+	 * Execute the pending batch. The batcher can still be used afterwards.
+	 */
+	public void close()
+	{
+		flush();
+	}
+
+	/**
+	 * Execute the given operations, all on the same table.
+	 * 
+	 * @return The number of operations the DB reports as applied. Throwing counts none of them as applied.
+	 */
+	protected abstract long execute(String table, List<T> items) throws Exception;
+
+	private boolean due()
+	{
+		return (_intervalns>0) && (System.nanoTime()-_oldest>=_intervalns);
+	}
+
+	private static long parse(Properties p, String property, String def) throws DBException
+	{
+		String value=p.getProperty(property,def);
+		try
+		{
+			return Long.parseLong(value);
+		}
+		catch (NumberFormatException e)
+		{
+			throw new DBException("Invalid value for "+property+": "+value);
+		}
+	}
+}
@@ -44,6 +44,14 @@ public class ByteArrayByteIterator extends ByteIterator {
 		return ret;
 	}
 
+	@Override
+	public int nextBuf(byte[] buf, int buf_off) {
+		int n = Math.min(len - off, buf.length - buf_off);
+		System.arraycopy(str, off, buf, buf_off, n);
+		off += n;
+		return buf_off + n;
+	}
+
 	@Override
 	public long bytesLeft() {
 		return len - off;
@@ -0,0 +1,62 @@
+/**
+ * Copyright (c) 2010 Yahoo! Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.yahoo.ycsb;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A ByteIterator over a region of a ByteBuffer, such as a direct one. The buffer is read with absolute gets,
+ * so any number of iterators can share it without copying it or moving its position.
+ */
+public class ByteBufferByteIterator extends ByteIterator {
+	final ByteBuffer buf;
+	int off;
+	final int len;
+
+	public ByteBufferByteIterator(ByteBuffer buf, int off, int len) {
+		this.buf = buf;
+		this.off = off;
+		this.len = off + len;
+	}
+
+	@Override
+	public boolean hasNext() {
+		return off < len;
+	}
+
+	@Override
+	public byte nextByte() {
+		byte ret = buf.get(off);
+		off++;
+		return ret;
+	}
+
+	@Override
+	public int nextBuf(byte[] buffer, int bufferOffset) {
+		int n = Math.min(len - off, buffer.length - bufferOffset);
+		buf.get(off, buffer, bufferOffset, n);
+		off += n;
+		return bufferOffset + n;
+	}
+
+	@Override
+	public long bytesLeft() {
+		return len - off;
+	}
+
+}
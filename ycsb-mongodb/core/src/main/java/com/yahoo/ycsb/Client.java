@@ -19,302 +19,15 @@ package com.yahoo.ycsb;
 
 
 import java.io.*;
-import java.text.DecimalFormat;
 import java.util.*;
 
+import com.yahoo.ycsb.measurements.IntervalLog;
 import com.yahoo.ycsb.measurements.Measurements;
 import com.yahoo.ycsb.measurements.exporter.MeasurementsExporter;
 import com.yahoo.ycsb.measurements.exporter.TextMeasurementsExporter;
 
 //import org.apache.log4j.BasicConfigurator;
 
-/**
- * A thread to periodically show the status of the experiment, to reassure you that progress is being made.
- * 
- * @author cooperb
- *
- */
-class StatusThread extends Thread
-{
-	Vector<Thread> _threads;
-	String _label;
-	boolean _standardstatus;
-	
-	/**
-	 * The interval for reporting status.
-	 */
-	public static final long sleeptime=10000;
-
-	public StatusThread(Vector<Thread> threads, String label, boolean standardstatus)
-	{
-		_threads=threads;
-		_label=label;
-		_standardstatus=standardstatus;
-	}
-
-	/**
-	 * Run and periodically report status.
-	 */
-	public void run()
-	{
-		long st=System.currentTimeMillis();
-
-		long lasten=st;
-		long lasttotalops=0;
-		
-		boolean alldone;
-
-		do 
-		{
-			alldone=true;
-
-			int totalops=0;
-
-			//terminate this thread when all the worker threads are done
-			for (Thread t : _threads)
-			{
-				if (t.getState()!=Thread.State.TERMINATED)
-				{
-					alldone=false;
-				}
-
-				ClientThread ct=(ClientThread)t;
-				totalops+=ct.getOpsDone();
-			}
-
-			long en=System.currentTimeMillis();
-
-			long interval=en-st;
-			//double throughput=1000.0*((double)totalops)/((double)interval);
-
-			double curthroughput=1000.0*(((double)(totalops-lasttotalops))/((double)(en-lasten)));
-			
-			lasttotalops=totalops;
-			lasten=en;
-			
-			DecimalFormat d = new DecimalFormat("#.##");
-			
-			if (totalops==0)
-			{
-				System.err.println(_label+" "+(interval/1000)+" sec: "+totalops+" operations; "+Measurements.getMeasurements().getSummary());
-			}
-			else
-			{
-				System.err.println(_label+" "+(interval/1000)+" sec: "+totalops+" operations; "+d.format(curthroughput)+" current ops/sec; "+Measurements.getMeasurements().getSummary());
-			}
-
-			if (_standardstatus)
-			{
-			if (totalops==0)
-			{
-				System.out.println(_label+" "+(interval/1000)+" sec: "+totalops+" operations; "+Measurements.getMeasurements().getSummary());
-			}
-			else
-			{
-				System.out.println(_label+" "+(interval/1000)+" sec: "+totalops+" operations; "+d.format(curthroughput)+" current ops/sec; "+Measurements.getMeasurements().getSummary());
-			}
-			}
-
-			try
-			{
-				sleep(sleeptime);
-			}
-			catch (InterruptedException e)
-			{
-				//do nothing
-			}
-
-		}
-		while (!alldone);
-	}
-}
-
-/**
- * A thread for executing transactions or data inserts to the database.
- * 
- * @author cooperb
- *
- */
-class ClientThread extends Thread
-{
-	DB _db;
-	boolean _dotransactions;
-	Workload _workload;
-	int _opcount;
-	double _target;
-
-	int _opsdone;
-	int _threadid;
-	int _threadcount;
-	Object _workloadstate;
-	Properties _props;
-
-
-	/**
-	 * Constructor.
-	 * 
-	 * @param db the DB implementation to use
-	 * @param dotransactions true to do transactions, false to insert data
-	 * @param workload the workload to use
-	 * @param threadid the id of this thread 
-	 * @param threadcount the total number of threads 
-	 * @param props the properties defining the experiment
-	 * @param opcount the number of operations (transactions or inserts) to do
-	 * @param targetperthreadperms target number of operations per thread per ms
-	 */
-	public ClientThread(DB db, boolean dotransactions, Workload workload, int threadid, int threadcount, Properties props, int opcount, double targetperthreadperms)
-	{
-		//TODO: consider removing threadcount and threadid
-		_db=db;
-		_dotransactions=dotransactions;
-		_workload=workload;
-		_opcount=opcount;
-		_opsdone=0;
-		_target=targetperthreadperms;
-		_threadid=threadid;
-		_threadcount=threadcount;
-		_props=props;
-		//System.out.println("Interval = "+interval);
-	}
-
-	public int getOpsDone()
-	{
-		return _opsdone;
-	}
-
-	public void run()
-	{
-		try
-		{
-			_db.init();
-		}
-		catch (DBException e)
-		{
-			e.printStackTrace();
-			e.printStackTrace(System.out);
-			return;
-		}
-
-		try
-		{
-			_workloadstate=_workload.initThread(_props,_threadid,_threadcount);
-		}
-		catch (WorkloadException e)
-		{
-			e.printStackTrace();
-			e.printStackTrace(System.out);
-			return;
-		}
-
-		//spread the thread operations out so they don't all hit the DB at the same time
-		try
-		{
-		   //GH issue 4 - throws exception if _target>1 because random.nextInt argument must be >0
-		   //and the sleep() doesn't make sense for granularities < 1 ms anyway
-		   if ( (_target>0) && (_target<=1.0) ) 
-		   {
-		      sleep(Utils.random().nextInt((int)(1.0/_target)));
-		   }
-		}
-		catch (InterruptedException e)
-		{
-		  // do nothing.
-		}
-		
-		try
-		{
-			if (_dotransactions)
-			{
-				long st=System.currentTimeMillis();
-
-				while (((_opcount == 0) || (_opsdone < _opcount)) && !_workload.isStopRequested())
-				{
-
-					if (!_workload.doTransaction(_db,_workloadstate))
-					{
-						break;
-					}
-
-					_opsdone++;
-
-					//throttle the operations
-					if (_target>0)
-					{
-						//this is more accurate than other throttling approaches we have tried,
-						//like sleeping for (1/target throughput)-operation latency,
-						//because it smooths timing inaccuracies (from sleep() taking an int, 
-						//current time in millis) over many operations
-						while (System.currentTimeMillis()-st<((double)_opsdone)/_target)
-						{
-							try
-							{
-								sleep(1);
-							}
-							catch (InterruptedException e)
-							{
-							  // do nothing.
-							}
-
-						}
-					}
-				}
-			}
-			else
-			{
-				long st=System.currentTimeMillis();
-
-				while (((_opcount == 0) || (_opsdone < _opcount)) && !_workload.isStopRequested())
-				{
-
-					if (!_workload.doInsert(_db,_workloadstate))
-					{
-						break;
-					}
-
-					_opsdone++;
-
-					//throttle the operations
-					if (_target>0)
-					{
-						//this is more accurate than other throttling approaches we have tried,
-						//like sleeping for (1/target throughput)-operation latency,
-						//because it smooths timing inaccuracies (from sleep() taking an int, 
-						//current time in millis) over many operations
-						while (System.currentTimeMillis()-st<((double)_opsdone)/_target)
-						{
-							try 
-							{
-								sleep(1);
-							}
-							catch (InterruptedException e)
-							{
-							  // do nothing.
-							}
-						}
-					}
-				}
-			}
-		}
-		catch (Exception e)
-		{
-			e.printStackTrace();
-			e.printStackTrace(System.out);
-			System.exit(0);
-		}
-
-		try
-		{
-			_db.cleanup();
-		}
-		catch (DBException e)
-		{
-			e.printStackTrace();
-			e.printStackTrace(System.out);
-			return;
-		}
-	}
-}
-
 /**
  * Main class for executing YCSB.
  */
@@ -326,6 +39,14 @@ public class Client
 	public static final String RECORD_COUNT_PROPERTY="recordcount";
 
 	public static final String WORKLOAD_PROPERTY="workload";
+
+	/**
+	 * The kind of thread each client runs on: "platform" (the default) or "virtual". Virtual threads are
+	 * cheap enough to run tens of thousands of clients, each blocking on its own synchronous DB calls.
+	 */
+	public static final String THREAD_MODE_PROPERTY="threadmode";
+
+	public static final String THREAD_MODE_PROPERTY_DEFAULT="platform";
 	
 	/**
 	 * Indicates how many inserts to do, if less than recordcount. Useful for partitioning
@@ -339,6 +60,34 @@ public class Client
    */
   public static final String MAX_EXECUTION_TIME = "maxexecutiontime";
 
+	/**
+	 * A comma-separated list of phases to run one after the other in the same JVM, e.g. "load,warmup,run".
+	 * The properties of each phase are the others, overridden by those prefixed with "phase.&lt;name&gt;.",
+	 * e.g. "phase.warmup.maxexecutiontime=60". Unset by default: a single phase, chosen by -load or -t.
+	 * 
+	 * A DB instance initialized with the first phase's properties stays open until the last phase ends. A binding
+	 * whose instances share state configured on the first init, such as connections, may reject a later phase's
+	 * properties by throwing a DBException from init(), which ends the run before it starts.
+	 */
+	public static final String PHASES_PROPERTY="phases";
+
+	public static final String PHASE_PREFIX="phase.";
+
+	/**
+	 * What a phase of a plan does: "load" or "run" (the default).
+	 */
+	public static final String PHASE_MODE_PROPERTY="mode";
+
+	public static final String PHASE_MODE_PROPERTY_DEFAULT="run";
+
+	/**
+	 * Set to false to discard the measurements of a phase of a plan, e.g. one warming up the JVM and the DB.
+	 * Each recorded phase is exported separately, as metrics prefixed with "&lt;name&gt;/".
+	 */
+	public static final String PHASE_RECORD_PROPERTY="record";
+
+	public static final String PHASE_RECORD_PROPERTY_DEFAULT="true";
+
 	public static void usageMessage()
 	{
 		System.out.println("Usage: java com.yahoo.ycsb.Client [options]");
@@ -358,6 +107,19 @@ public class Client
 		System.out.println("                  values in the propertyfile");
 		System.out.println("  -s:  show status during run (default: no status)");
 		System.out.println("  -l label:  use label for status (e.g. to label one experiment out of a whole batch)");
+		System.out.println("  -p openloop=true:  release operations at the target rate regardless of how fast they");
+		System.out.println("                     complete, using \"threadcount\" threads to execute them");
+		System.out.println("  -p threadmode=virtual:  run each of the \"threadcount\" clients on a virtual thread;");
+		System.out.println("                          see also the \"dbinstances\" property");
+		System.out.println("  -p randomseed=n:  make each thread's random draws the same on every run with the same seed;");
+		System.out.println("                    keys from shared counters, e.g. inserts, still depend on thread timing");
+		System.out.println("  -p trace.record=file:  record every operation into a trace that TraceWorkload can replay");
+		System.out.println("  -p phases=load,warmup,run:  run these phases in turn, each configured with phase.<name>.<property>;");
+		System.out.println("                            phase.<name>.mode=load|run, phase.<name>.record=false to not measure it");
+		System.out.println("  -p measurement.intervallog=file.gz:  log the throughput and latency percentiles of each metric");
+		System.out.println("                                     every measurement.intervallog.interval (default 1000) ms");
+		System.out.println("  -p search.slo=ms:  find the highest target at which the search.percentile (default 99) latency");
+		System.out.println("                     stays within ms, in steps of search.steptime (default 30) seconds");
 		System.out.println("");
 		System.out.println("Required properties:");
 		System.out.println("  "+WORKLOAD_PROPERTY+": the name of the workload class to use (e.g. com.yahoo.ycsb.workloads.CoreWorkload)");
@@ -380,63 +142,56 @@ public class Client
 
 
 	/**
-	 * Exports the measurements to either sysout or a file using the exporter
-	 * loaded from conf.
-	 * @throws IOException Either failed to write to output stream or failed to close it.
+	 * Open the exporter loaded from conf, writing to either sysout or a file.
+	 * @throws IOException Failed to open the file.
 	 */
-	private static void exportMeasurements(Properties props, int opcount, long runtime)
-			throws IOException
+	static MeasurementsExporter openExporter(Properties props) throws IOException
 	{
-		MeasurementsExporter exporter = null;
-		try
+		// if no destination file is provided the results will be written to stdout
+		OutputStream out;
+		String exportFile = props.getProperty("exportfile");
+		if (exportFile == null)
 		{
-			// if no destination file is provided the results will be written to stdout
-			OutputStream out;
-			String exportFile = props.getProperty("exportfile");
-			if (exportFile == null)
-			{
-				out = System.out;
-			} else
-			{
-				out = new FileOutputStream(exportFile);
-			}
-
-			// if no exporter is provided the default text one will be used
-			String exporterStr = props.getProperty("exporter", "com.yahoo.ycsb.measurements.exporter.TextMeasurementsExporter");
-			try
-			{
-				exporter = (MeasurementsExporter) Class.forName(exporterStr).getConstructor(OutputStream.class).newInstance(out);
-			} catch (Exception e)
-			{
-				System.err.println("Could not find exporter " + exporterStr
-						+ ", will use default text reporter.");
-				e.printStackTrace();
-				exporter = new TextMeasurementsExporter(out);
-			}
-
-			exporter.write("OVERALL", "RunTime(ms)", runtime);
-			double throughput = 1000.0 * ((double) opcount) / ((double) runtime);
-			exporter.write("OVERALL", "Throughput(ops/sec)", throughput);
+			out = System.out;
+		} else
+		{
+			out = new FileOutputStream(exportFile);
+		}
 
-			Measurements.getMeasurements().exportMeasurements(exporter);
-		} finally
+		// if no exporter is provided the default text one will be used
+		String exporterStr = props.getProperty("exporter", "com.yahoo.ycsb.measurements.exporter.TextMeasurementsExporter");
+		try
 		{
-			if (exporter != null)
-			{
-				exporter.close();
-			}
+			return (MeasurementsExporter) Class.forName(exporterStr).getConstructor(OutputStream.class).newInstance(out);
+		} catch (Exception e)
+		{
+			System.err.println("Could not find exporter " + exporterStr
+					+ ", will use default text reporter.");
+			e.printStackTrace();
+			return new TextMeasurementsExporter(out);
 		}
 	}
+
+	/**
+	 * Exports the overall throughput and the current measurements.
+	 * @throws IOException Failed to write to the output stream.
+	 */
+	static void exportMeasurements(MeasurementsExporter exporter, long opcount, long runtime)
+			throws IOException
+	{
+		exporter.write("OVERALL", "RunTime(ms)", runtime);
+		double throughput = 1000.0 * ((double) opcount) / ((double) runtime);
+		exporter.write("OVERALL", "Throughput(ops/sec)", throughput);
+
+		Measurements.getMeasurements().exportMeasurements(exporter);
+	}
 	
 	@SuppressWarnings("unchecked")
 	public static void main(String[] args)
 	{
-		String dbname;
 		Properties props=new Properties();
 		Properties fileprops=new Properties();
 		boolean dotransactions=true;
-		int threadcount=1;
-		int target=0;
 		boolean status=false;
 		String label="";
 
@@ -598,25 +353,39 @@ public class Client
 
 		props=fileprops;
 
-		if (!checkRequiredProperties(props))
+		//the phases to run: those listed in the plan, the steps of a throughput search, or a single one
+		Vector<Phase> phases=new Vector<Phase>();
+		ThroughputSearch search=null;
+		String plan=props.getProperty(PHASES_PROPERTY);
+		if (props.getProperty(ThroughputSearch.SLO_PROPERTY)!=null)
 		{
-			System.exit(0);
+			if (plan!=null)
+			{
+				System.out.println(ThroughputSearch.SLO_PROPERTY+" cannot be combined with "+PHASES_PROPERTY);
+				System.exit(0);
+			}
+			try
+			{
+				search=new ThroughputSearch(props);
+			}
+			catch (IllegalArgumentException e)
+			{
+				System.out.println(e.getMessage());
+				System.exit(0);
+			}
+		}
+		else if (plan==null)
+		{
+			phases.add(new Phase(null,0,props,dotransactions,true));
 		}
-		
-		long maxExecutionTime = Integer.parseInt(props.getProperty(MAX_EXECUTION_TIME, "0"));
-
-		//get number of threads, target and db
-		threadcount=Integer.parseInt(props.getProperty("threadcount","1"));
-		dbname=props.getProperty("db","com.yahoo.ycsb.BasicDB");
-		target=Integer.parseInt(props.getProperty("target","0"));
-		
-		//compute the target throughput
-		double targetperthreadperms=-1;
-		if (target>0)
+		else
 		{
-			double targetperthread=((double)target)/((double)threadcount);
-			targetperthreadperms=targetperthread/1000.0;
-		}	 
+			String[] names=plan.split(",");
+			for (int i=0; i<names.length; i++)
+			{
+				phases.add(Phase.fromPlan(names[i].trim(),i,props));
+			}
+		}
 
 		System.out.println("YCSB Client 0.1");
 		System.out.print("Command line:");
@@ -625,178 +394,163 @@ public class Client
 			System.out.print(" "+args[i]);
 		}
 		System.out.println();
-		System.err.println("Loading workload...");
-		
-		//show a warning message that creating the workload is taking a while
-		//but only do so if it is taking longer than 2 seconds 
-		//(showing the message right away if the setup wasn't taking very long was confusing people)
-		Thread warningthread=new Thread() 
+
+		//start recording the trace, if asked to
+		try
+		{
+			TraceWriter.open(props);
+		}
+		catch (IOException e)
 		{
-			public void run()
+			System.out.println("Could not open "+TraceWriter.TRACE_RECORD_PROPERTY+" file: "+e.getMessage());
+			System.exit(0);
+		}
+
+		//keep a DB instance open from the first phase to the last, so that bindings that share their connections
+		//between instances do not close them between phases
+		DB keepalive=null;
+		if ( (phases.size()>1) || (search!=null) )
+		{
+			Properties first=(search!=null) ? props : phases.get(0)._props;
+			String dbname=first.getProperty("db","com.yahoo.ycsb.BasicDB");
+			Measurements.setProperties(first);
+			try
+			{
+				keepalive=DBFactory.newDB(dbname,first);
+				keepalive.init();
+			}
+			catch (UnknownDBException e)
 			{
+				System.out.println("Unknown DB "+dbname);
+				System.exit(0);
+			}
+			catch (DBException e)
+			{
+				e.printStackTrace();
+				e.printStackTrace(System.out);
+				System.exit(0);
+			}
+
+			//a binding that shares its connections configures them on the first init, so let it reject the
+			//DB properties of a later phase that differ, before any phase runs, rather than ignore them
+			for (int i=1; i<phases.size(); i++)
+			{
+				Phase phase=phases.get(i);
+				DB probe=DBFactory.newUnwrappedDB(phase._dbname,phase._props);
+				if (probe==null)
+				{
+					System.out.println("Unknown DB "+phase._dbname);
+					System.exit(0);
+				}
 				try
 				{
-					sleep(2000);
+					probe.init();
+					probe.cleanup();
 				}
-				catch (InterruptedException e)
+				catch (DBException e)
 				{
-					return;
+					System.out.println("Phase "+phase._name+": "+e.getMessage());
+					System.exit(0);
 				}
-				System.err.println(" (might take a few minutes for large data sets)");
 			}
-		};
-
-		warningthread.start();
-		
-		//set up measurements
-		Measurements.setProperties(props);
-		
-		//load the workload
-		ClassLoader classLoader = Client.class.getClassLoader();
-
-		Workload workload=null;
-
-		try 
-		{
-			Class workloadclass = classLoader.loadClass(props.getProperty(WORKLOAD_PROPERTY));
-
-			workload=(Workload)workloadclass.newInstance();
-		}
-		catch (Exception e) 
-		{  
-			e.printStackTrace();
-			e.printStackTrace(System.out);
-			System.exit(0);
 		}
 
+		//log the latencies of every interval, if asked to
+		IntervalLog intervallog=null;
 		try
 		{
-			workload.init(props);
+			intervallog=IntervalLog.start(props);
 		}
-		catch (WorkloadException e)
+		catch (IOException e)
 		{
-			e.printStackTrace();
-			e.printStackTrace(System.out);
+			System.out.println("Could not open "+IntervalLog.INTERVAL_LOG_PROPERTY+" file: "+e.getMessage());
 			System.exit(0);
 		}
-		
-		warningthread.interrupt();
-
-		//run the workload
-
-		System.err.println("Starting test.");
-
-		int opcount;
-		if (dotransactions)
+		catch (IllegalArgumentException e)
 		{
-			opcount=Integer.parseInt(props.getProperty(OPERATION_COUNT_PROPERTY,"0"));
+			System.out.println(e.getMessage());
+			System.exit(0);
 		}
-		else
+
+		MeasurementsExporter exporter=null;
+		try
 		{
-			if (props.containsKey(INSERT_COUNT_PROPERTY))
+			exporter=openExporter(props);
+			if (search!=null)
 			{
-				opcount=Integer.parseInt(props.getProperty(INSERT_COUNT_PROPERTY,"0"));
+				search.run(status,label);
+				search.export(exporter);
 			}
-			else
+			for (Phase phase : phases)
+			{
+				if (phase._record)
+				{
+					phase._stream=phase.prefixed(exporter);
+				}
+				phase.run(status,label);
+				if (phase._record)
+				{
+					phase.export(exporter);
+				}
+			}
+		}
+		catch (IOException e)
+		{
+			System.err.println("Could not export measurements, error: " + e.getMessage());
+			e.printStackTrace();
+			System.exit(-1);
+		}
+		finally
+		{
+			if (exporter != null)
 			{
-				opcount=Integer.parseInt(props.getProperty(RECORD_COUNT_PROPERTY,"0"));
+				try
+				{
+					exporter.close();
+				}
+				catch (IOException e)
+				{
+					System.err.println("Could not export measurements, error: " + e.getMessage());
+				}
 			}
 		}
 
-		Vector<Thread> threads=new Vector<Thread>();
-
-		for (int threadid=0; threadid<threadcount; threadid++)
+		if (intervallog!=null)
 		{
-			DB db=null;
 			try
 			{
-				db=DBFactory.newDB(dbname,props);
+				intervallog.close();
 			}
-			catch (UnknownDBException e)
+			catch (IOException e)
 			{
-				System.out.println("Unknown DB "+dbname);
-				System.exit(0);
+				System.err.println("Could not close "+IntervalLog.INTERVAL_LOG_PROPERTY+" file: "+e.getMessage());
 			}
-
-			Thread t=new ClientThread(db,dotransactions,workload,threadid,threadcount,props,opcount/threadcount,targetperthreadperms);
-
-			threads.add(t);
-			//t.start();
 		}
 
-		StatusThread statusthread=null;
-
-		if (status)
+		if (TraceWriter.getTraceWriter()!=null)
 		{
-			boolean standardstatus=false;
-			if (props.getProperty("measurementtype","").compareTo("timeseries")==0) 
+			try
+			{
+				TraceWriter.getTraceWriter().close();
+			}
+			catch (IOException e)
 			{
-				standardstatus=true;
-			}	
-			statusthread=new StatusThread(threads,label,standardstatus);
-			statusthread.start();
+				System.err.println("Could not close "+TraceWriter.TRACE_RECORD_PROPERTY+" file: "+e.getMessage());
+			}
 		}
 
-		long st=System.currentTimeMillis();
-
-		for (Thread t : threads)
-		{
-			t.start();
-		}
-		
-    Thread terminator = null;
-    
-    if (maxExecutionTime > 0) {
-      terminator = new TerminatorThread(maxExecutionTime, threads, workload);
-      terminator.start();
-    }
-    
-    int opsDone = 0;
-
-		for (Thread t : threads)
+		if (keepalive!=null)
 		{
 			try
 			{
-				t.join();
-				opsDone += ((ClientThread)t).getOpsDone();
+				keepalive.cleanup();
 			}
-			catch (InterruptedException e)
+			catch (DBException e)
 			{
+				e.printStackTrace();
 			}
 		}
 
-		long en=System.currentTimeMillis();
-		
-		if (terminator != null && !terminator.isInterrupted()) {
-      terminator.interrupt();
-    }
-
-		if (status)
-		{
-			statusthread.interrupt();
-		}
-
-		try
-		{
-			workload.cleanup();
-		}
-		catch (WorkloadException e)
-		{
-			e.printStackTrace();
-			e.printStackTrace(System.out);
-			System.exit(0);
-		}
-
-		try
-		{
-			exportMeasurements(props, opsDone, en - st);
-		} catch (IOException e)
-		{
-			System.err.println("Could not export measurements, error: " + e.getMessage());
-			e.printStackTrace();
-			System.exit(-1);
-		}
-
 		System.exit(0);
 	}
 }
@@ -0,0 +1,239 @@
+/**
+ * Copyright (c) 2010 Yahoo! Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.yahoo.ycsb;
+
+import java.util.Properties;
+
+import com.yahoo.ycsb.measurements.Measurements;
+
+/**
+ * A client executing transactions or data inserts to the database. Each one is run by its own platform
+ * or virtual thread.
+ * 
+ * @author cooperb
+ *
+ */
+class ClientThread implements Runnable
+{
+	DB _db;
+	boolean _dotransactions;
+	Workload _workload;
+	long _opcount;
+	double _target;
+
+	long _opsdone;
+	int _threadid;
+	int _threadcount;
+	Object _workloadstate;
+	Properties _props;
+	Measurements _measurements;
+	OpenLoopScheduler _scheduler;
+
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param db the DB implementation to use
+	 * @param dotransactions true to do transactions, false to insert data
+	 * @param workload the workload to use
+	 * @param threadid the id of this thread 
+	 * @param threadcount the total number of threads 
+	 * @param props the properties defining the experiment
+	 * @param opcount the number of operations (transactions or inserts) to do
+	 * @param targetperthreadperms target number of operations per thread per ms
+	 */
+	public ClientThread(DB db, boolean dotransactions, Workload workload, int threadid, int threadcount, Properties props, long opcount, double targetperthreadperms)
+	{
+		//TODO: consider removing threadcount and threadid
+		_db=db;
+		_dotransactions=dotransactions;
+		_workload=workload;
+		_opcount=opcount;
+		_opsdone=0;
+		_target=targetperthreadperms;
+		_threadid=threadid;
+		_threadcount=threadcount;
+		_props=props;
+		_measurements=Measurements.getMeasurements();
+		//System.out.println("Interval = "+interval);
+	}
+
+	/**
+	 * Constructor for a thread that executes the operations released by an open-loop scheduler, instead of
+	 * issuing them back to back.
+	 * 
+	 * @param db the DB implementation to use
+	 * @param dotransactions true to do transactions, false to insert data
+	 * @param workload the workload to use
+	 * @param threadid the id of this thread 
+	 * @param threadcount the total number of threads 
+	 * @param props the properties defining the experiment
+	 * @param scheduler the scheduler releasing the operations
+	 */
+	public ClientThread(DB db, boolean dotransactions, Workload workload, int threadid, int threadcount, Properties props, OpenLoopScheduler scheduler)
+	{
+		this(db,dotransactions,workload,threadid,threadcount,props,0,-1);
+		_scheduler=scheduler;
+	}
+
+	public long getOpsDone()
+	{
+		return _opsdone;
+	}
+
+	public void run()
+	{
+		Utils.initThread(_threadid);
+
+		try
+		{
+			_db.init();
+		}
+		catch (DBException e)
+		{
+			e.printStackTrace();
+			e.printStackTrace(System.out);
+			return;
+		}
+
+		try
+		{
+			runInitialized();
+		}
+		finally
+		{
+			//clean up even if the thread gave up, so that batched writes are flushed and pooled instances
+			//are not left waiting for it
+			try
+			{
+				_db.cleanup();
+			}
+			catch (DBException e)
+			{
+				e.printStackTrace();
+				e.printStackTrace(System.out);
+			}
+		}
+	}
+
+	/**
+	 * Run the operations of this thread once its DB is initialized.
+	 */
+	void runInitialized()
+	{
+		try
+		{
+			_workloadstate=_workload.initThread(_props,_threadid,_threadcount);
+		}
+		catch (WorkloadException e)
+		{
+			e.printStackTrace();
+			e.printStackTrace(System.out);
+			return;
+		}
+
+		//pace the operations on a nanosecond schedule, spreading the threads' start times over one interval
+		//so they don't all hit the DB at the same time
+		Throttle throttle=null;
+		if (_target>0)
+		{
+			throttle=new Throttle(_target*1000.0,true);
+		}
+		
+		try
+		{
+			if (_scheduler!=null)
+			{
+				while (((_opcount == 0) || (_opsdone < _opcount)) && !_workload.isStopRequested())
+				{
+					long arrival=_scheduler.nextArrival();
+					if (arrival==OpenLoopScheduler.NO_MORE_ARRIVALS)
+					{
+						break;
+					}
+
+					//time between the operation's arrival and this thread picking it up
+					_measurements.measureMetric("QUEUE-DELAY",(int)((System.nanoTime()-arrival)/1000));
+					_measurements.setIntendedStartTimeNs(arrival);
+
+					boolean more;
+					if (_dotransactions)
+					{
+						more=_workload.doTransaction(_db,_workloadstate);
+					}
+					else
+					{
+						more=_workload.doInsert(_db,_workloadstate);
+					}
+					if (!more)
+					{
+						break;
+					}
+
+					_opsdone++;
+				}
+			}
+			else if (_dotransactions)
+			{
+				while (((_opcount == 0) || (_opsdone < _opcount)) && !_workload.isStopRequested())
+				{
+					//throttle the operations
+					if (throttle!=null)
+					{
+						long deadline=throttle.deadline(_opsdone);
+						Throttle.waitUntil(deadline);
+						_measurements.setIntendedStartTimeNs(deadline);
+					}
+
+					if (!_workload.doTransaction(_db,_workloadstate))
+					{
+						break;
+					}
+
+					_opsdone++;
+				}
+			}
+			else
+			{
+				while (((_opcount == 0) || (_opsdone < _opcount)) && !_workload.isStopRequested())
+				{
+					//throttle the operations
+					if (throttle!=null)
+					{
+						long deadline=throttle.deadline(_opsdone);
+						Throttle.waitUntil(deadline);
+						_measurements.setIntendedStartTimeNs(deadline);
+					}
+
+					if (!_workload.doInsert(_db,_workloadstate))
+					{
+						break;
+					}
+
+					_opsdone++;
+				}
+			}
+		}
+		catch (Exception e)
+		{
+			e.printStackTrace();
+			e.printStackTrace(System.out);
+			System.exit(0);
+		}
+	}
+}
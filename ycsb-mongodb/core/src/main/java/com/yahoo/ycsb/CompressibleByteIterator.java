@@ -0,0 +1,178 @@
+/**
+ * Copyright (c) 2010 Yahoo! Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.yahoo.ycsb;
+
+import java.util.Random;
+
+/**
+ * A ByteIterator that generates data which compresses by about a given ratio, the way real records do: runs of
+ * random bytes interleaved with n-grams that recur across values, rather than a block of zeros followed by
+ * random bytes.
+ *
+ * The n-grams come from a small dictionary shared by every value, so they repeat within any page of records a
+ * block compressor sees. Each value is a random sequence of literal runs and n-grams; the more of them are
+ * n-grams, the better it compresses. The chance of a literal run for each ratio was measured with snappy, the
+ * default block compressor of WiredTiger, over 32 KB pages of 1 KB values; values from 100 bytes to a few KB
+ * compress within a few percent of that. zlib and zstd, which also entropy code, compress the same data
+ * further. The highest ratio it produces is about 6.7 with snappy, for data made only of n-grams.
+ *
+ * Literals take all 256 byte values, so that they do not compress at all; the values are not printable.
+ */
+public class CompressibleByteIterator extends ByteIterator {
+  /**
+   * The ratio the generated field values should compress by. 1, the default, gives the random printable bytes
+   * of RandomByteIterator.
+   */
+  public static final String COMPRESSIBILITY_PROPERTY = "compressibility";
+  public static final String COMPRESSIBILITY_PROPERTY_DEFAULT = "1";
+
+  /** The number of n-grams in the dictionary, few enough for each to recur within a page. */
+  static final int PHRASES = 16;
+  /** The shortest and longest n-gram, and literal run. */
+  static final int MIN_PHRASE = 32;
+  static final int MAX_PHRASE = 128;
+  static final int MIN_LITERALS = 16;
+  static final int MAX_LITERALS = 64;
+
+  /**
+   * The snappy compression ratio of the data for a chance of a literal run of 1, 0.95, ..., 0.
+   */
+  static final double[] SNAPPY_RATIOS = {
+    1.00, 1.02, 1.09, 1.18, 1.28, 1.38, 1.50, 1.63, 1.77, 1.94, 2.12,
+    2.31, 2.54, 2.80, 3.10, 3.44, 3.86, 4.38, 4.96, 5.71, 6.68
+  };
+
+  /** The dictionary, drawn from a fixed seed so that every run and thread uses the same one. */
+  static final byte[] DICTIONARY = new byte[PHRASES * MAX_PHRASE];
+  static {
+    new SplitMixRandom(0x59435342L).nextBytes(DICTIONARY);
+  }
+
+  private long len;
+  private long off;
+
+  /** The probability that the next chunk is a literal run rather than an n-gram. */
+  private final double literalchance;
+
+  /** The chunk being returned: a literal run, or an n-gram at phrase in the dictionary. */
+  private boolean literal;
+  private int phrase;
+  private int chunkLeft;
+
+  /**
+   * @param len The number of bytes to generate.
+   * @param compressibility The ratio the data should compress by; 1 or less for incompressible data.
+   */
+  public CompressibleByteIterator(long len, double compressibility) {
+    this.len = len;
+    this.off = 0;
+    this.literalchance = literalChance(compressibility);
+  }
+
+  /**
+   * Return a value of the given length that compresses by about the given ratio, or random printable bytes if
+   * the ratio is 1 or less.
+   */
+  public static ByteIterator create(long len, double compressibility) {
+    if (compressibility <= 1) {
+      return new RandomByteIterator(len);
+    }
+    return new CompressibleByteIterator(len, compressibility);
+  }
+
+  /**
+   * Return the chance of choosing a literal run for each chunk that gives the requested ratio, interpolated
+   * from {@link #SNAPPY_RATIOS}.
+   */
+  static double literalChance(double compressibility) {
+    int steps = SNAPPY_RATIOS.length - 1;
+    if (compressibility <= SNAPPY_RATIOS[0]) {
+      return 1;
+    }
+    for (int i = 1; i <= steps; i++) {
+      if (compressibility < SNAPPY_RATIOS[i]) {
+        double t = (compressibility - SNAPPY_RATIOS[i - 1]) / (SNAPPY_RATIOS[i] - SNAPPY_RATIOS[i - 1]);
+        return 1 - (i - 1 + t) / steps;
+      }
+    }
+    return 0;
+  }
+
+  /** Choose the next chunk. */
+  private void nextChunk(Random r) {
+    literal = r.nextDouble() < literalchance;
+    if (literal) {
+      chunkLeft = MIN_LITERALS + r.nextInt(MAX_LITERALS - MIN_LITERALS + 1);
+    } else {
+      chunkLeft = MIN_PHRASE + r.nextInt(MAX_PHRASE - MIN_PHRASE + 1);
+      phrase = r.nextInt(PHRASES) * MAX_PHRASE;
+    }
+  }
+
+  @Override
+  public boolean hasNext() {
+    return off < len;
+  }
+
+  @Override
+  public byte nextByte() {
+    Random r = Utils.random();
+    if (chunkLeft == 0) {
+      nextChunk(r);
+    }
+    byte b = literal ? (byte)r.nextInt() : DICTIONARY[phrase++];
+    chunkLeft--;
+    off++;
+    return b;
+  }
+
+  @Override
+  public int nextBuf(byte[] buffer, int bufferOffset) {
+    int ret = (int)Math.min(len - off, buffer.length - bufferOffset);
+    Random r = Utils.random();
+    int i = bufferOffset;
+    int end = bufferOffset + ret;
+    while (i < end) {
+      if (chunkLeft == 0) {
+        nextChunk(r);
+      }
+      int n = Math.min(chunkLeft, end - i);
+      if (literal) {
+        for (int j = 0; j < n; ) {
+          long w = r.nextLong();
+          for (int k = 0; k < 8 && j < n; k++, j++) {
+            buffer[i + j] = (byte)w;
+            w >>>= 8;
+          }
+        }
+      } else {
+        System.arraycopy(DICTIONARY, phrase, buffer, i, n);
+        phrase += n;
+      }
+      chunkLeft -= n;
+      i += n;
+    }
+    off += ret;
+    return end;
+  }
+
+  @Override
+  public long bytesLeft() {
+    return len - off;
+  }
+}
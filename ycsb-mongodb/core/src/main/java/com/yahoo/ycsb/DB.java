@@ -43,6 +43,19 @@ import java.util.Vector;
  */
 public abstract class DB
 {
+	/**
+	 * Return code for a write that was queued in a Batcher rather than executed. DBWrapper reports it to the
+	 * workload as a success and leaves its measurement to the Batcher, which measures it when the batch executes.
+	 */
+	public static final int BATCHED=-2;
+
+	/**
+	 * Return code for an operation that DBWrapper has submitted to an AsyncDB without waiting for it, when
+	 * operations are pipelined. Its outcome is not known yet: DBWrapper records its return code when it
+	 * completes, so a workload must not count it as a success.
+	 */
+	public static final int PENDING=-3;
+
 	/**
 	 * Properties for configuring this DB.
 	 */
@@ -67,7 +80,7 @@ public abstract class DB
 
 	/**
 	 * Initialize any state for this DB.
-	 * Called once per DB instance; there is one DB instance per client thread.
+	 * Called once per DB instance; there is one DB instance per client thread, unless "dbinstances" shares a fixed number of them.
 	 */
 	public void init() throws DBException
 	{
@@ -75,7 +88,7 @@ public abstract class DB
 
 	/**
 	 * Cleanup any state for this DB.
-	 * Called once per DB instance; there is one DB instance per client thread.
+	 * Called once per DB instance; there is one DB instance per client thread, unless "dbinstances" shares a fixed number of them.
 	 */
 	public void cleanup() throws DBException
 	{
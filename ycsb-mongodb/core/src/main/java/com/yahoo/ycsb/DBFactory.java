@@ -24,8 +24,18 @@ import java.util.Properties;
  */
 public class DBFactory
 {
-      @SuppressWarnings("unchecked")
 	public static DB newDB(String dbname, Properties properties) throws UnknownDBException
+      {
+	 DB ret=newUnwrappedDB(dbname,properties);
+	 return ret==null ? null : new DBWrapper(ret);
+      }
+
+      /**
+       * Create the DB without the DBWrapper that measures it, for DBs that are measured through another layer,
+       * such as the instances of a DBPool.
+       */
+      @SuppressWarnings("unchecked")
+	static DB newUnwrappedDB(String dbname, Properties properties)
       {
 	 ClassLoader classLoader = DBFactory.class.getClassLoader();
 
@@ -46,7 +56,7 @@ public class DBFactory
 	 
 	 ret.setProperties(properties);
 
-	 return new DBWrapper(ret);
+	 return ret;
       }
       
 }
@@ -0,0 +1,338 @@
+/**
+ * Copyright (c) 2010 Yahoo! Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.yahoo.ycsb;
+
+import java.util.HashMap;
+import java.util.Properties;
+import java.util.Set;
+import java.util.Vector;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A fixed set of DB instances shared by all the clients, for runs with many more clients than the DB layer
+ * should have instances (e.g. tens of thousands of clients on virtual threads).
+ * 
+ * Each client gets a lightweight DB from newClient(). If the instances are "shared", each client is bound to
+ * one instance and calls it concurrently with the other clients bound to it, so the DB layer must be
+ * thread-safe. Otherwise each operation borrows an idle instance for its duration, so an instance is only
+ * ever used by one client at a time, which is safe for DB layers that keep per-instance state.
+ * 
+ * The instances are initialized by the first client to call init(), and cleaned up when the last client
+ * that initialized has called cleanup(). If one of them fails to initialize, those already initialized are
+ * cleaned up at once, and every client's init() fails.
+ * 
+ * Each client's DB is measured by its own DBWrapper, so the time an operation waits for an idle instance
+ * counts in its latency. The instances themselves are not wrapped, so "pipeline.depth" does not apply to them.
+ */
+public class DBPool
+{
+	/**
+	 * The number of DB instances shared by the clients. 0 (the default) gives each client its own instance.
+	 */
+	public static final String DB_INSTANCES_PROPERTY="dbinstances";
+
+	public static final String DB_INSTANCES_PROPERTY_DEFAULT="0";
+
+	/**
+	 * True to bind each client to one instance that it uses concurrently with other clients, false (the
+	 * default) to lend each operation an instance for its exclusive use.
+	 */
+	public static final String DB_SHARED_PROPERTY="dbinstances.shared";
+
+	public static final String DB_SHARED_PROPERTY_DEFAULT="false";
+
+	DB[] _instances;
+	boolean _shared;
+	ArrayBlockingQueue<DB> _idle;
+
+	/**
+	 * Guards the reference counts. Not a monitor, so that virtual threads waiting for the instances to be
+	 * initialized don't pin their carrier threads, as for the measurement stripes.
+	 */
+	ReentrantLock _lock=new ReentrantLock();
+	int _clients=0;
+	int _initialized=0;
+	int _cleanedup=0;
+
+	/**
+	 * Why the instances failed to initialize, if they did. They are not retried: every later client fails too.
+	 */
+	DBException _failure;
+
+	public DBPool(String dbname, Properties props, int instances, boolean shared) throws UnknownDBException
+	{
+		_instances=new DB[instances];
+		for (int i=0; i<instances; i++)
+		{
+			_instances[i]=DBFactory.newUnwrappedDB(dbname,props);
+			if (_instances[i]==null)
+			{
+				throw new UnknownDBException("Unknown DB "+dbname);
+			}
+		}
+		_shared=shared;
+		_idle=new ArrayBlockingQueue<DB>(instances);
+		for (DB db : _instances)
+		{
+			_idle.add(db);
+		}
+	}
+
+	/**
+	 * Return the DB for a new client.
+	 */
+	public DB newClient()
+	{
+		_lock.lock();
+		try
+		{
+			DB bound=_shared ? _instances[_clients%_instances.length] : null;
+			_clients++;
+			return new PooledDB(bound);
+		}
+		finally
+		{
+			_lock.unlock();
+		}
+	}
+
+	void init() throws DBException
+	{
+		_lock.lock();
+		try
+		{
+			if (_failure!=null)
+			{
+				_clients--;
+				throw new DBException("The shared DB instances failed to initialize",_failure);
+			}
+			if (_initialized==0)
+			{
+				int done=0;
+				try
+				{
+					for (DB db : _instances)
+					{
+						db.init();
+						done++;
+					}
+				}
+				catch (DBException e)
+				{
+					//this client will not run, so the instances must not wait for it to clean up
+					_clients--;
+					_failure=e;
+					for (int i=0; i<done; i++)
+					{
+						try
+						{
+							_instances[i].cleanup();
+						}
+						catch (DBException ce)
+						{
+							e.addSuppressed(ce);
+						}
+					}
+					throw e;
+				}
+			}
+			_initialized++;
+		}
+		finally
+		{
+			_lock.unlock();
+		}
+	}
+
+	void cleanup() throws DBException
+	{
+		_lock.lock();
+		try
+		{
+			_cleanedup++;
+			if (_cleanedup==_clients)
+			{
+				for (DB db : _instances)
+				{
+					db.cleanup();
+				}
+			}
+		}
+		finally
+		{
+			_lock.unlock();
+		}
+	}
+
+	DB borrow()
+	{
+		try
+		{
+			return _idle.take();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			return null;
+		}
+	}
+
+	void release(DB db)
+	{
+		_idle.add(db);
+	}
+
+	/**
+	 * The DB used by one client. Operations go to the bound instance if there is one, or to a borrowed one.
+	 */
+	class PooledDB extends DB
+	{
+		DB _bound;
+
+		PooledDB(DB bound)
+		{
+			_bound=bound;
+		}
+
+		public void setProperties(Properties p)
+		{
+			_instances[0].setProperties(p);
+		}
+
+		public Properties getProperties()
+		{
+			return _instances[0].getProperties();
+		}
+
+		public void init() throws DBException
+		{
+			DBPool.this.init();
+		}
+
+		public void cleanup() throws DBException
+		{
+			DBPool.this.cleanup();
+		}
+
+		public int read(String table, String key, Set<String> fields, HashMap<String,ByteIterator> result)
+		{
+			if (_bound!=null)
+			{
+				return _bound.read(table,key,fields,result);
+			}
+			DB db=borrow();
+			if (db==null)
+			{
+				return -1;
+			}
+			try
+			{
+				return db.read(table,key,fields,result);
+			}
+			finally
+			{
+				release(db);
+			}
+		}
+
+		public int scan(String table, String startkey, int recordcount, Set<String> fields, Vector<HashMap<String,ByteIterator>> result)
+		{
+			if (_bound!=null)
+			{
+				return _bound.scan(table,startkey,recordcount,fields,result);
+			}
+			DB db=borrow();
+			if (db==null)
+			{
+				return -1;
+			}
+			try
+			{
+				return db.scan(table,startkey,recordcount,fields,result);
+			}
+			finally
+			{
+				release(db);
+			}
+		}
+
+		public int update(String table, String key, HashMap<String,ByteIterator> values)
+		{
+			if (_bound!=null)
+			{
+				return _bound.update(table,key,values);
+			}
+			DB db=borrow();
+			if (db==null)
+			{
+				return -1;
+			}
+			try
+			{
+				return db.update(table,key,values);
+			}
+			finally
+			{
+				release(db);
+			}
+		}
+
+		public int insert(String table, String key, HashMap<String,ByteIterator> values)
+		{
+			if (_bound!=null)
+			{
+				return _bound.insert(table,key,values);
+			}
+			DB db=borrow();
+			if (db==null)
+			{
+				return -1;
+			}
+			try
+			{
+				return db.insert(table,key,values);
+			}
+			finally
+			{
+				release(db);
+			}
+		}
+
+		public int delete(String table, String key)
+		{
+			if (_bound!=null)
+			{
+				return _bound.delete(table,key);
+			}
+			DB db=borrow();
+			if (db==null)
+			{
+				return -1;
+			}
+			try
+			{
+				return db.delete(table,key);
+			}
+			finally
+			{
+				release(db);
+			}
+		}
+	}
+}
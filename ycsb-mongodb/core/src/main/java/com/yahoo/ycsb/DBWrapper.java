@@ -21,21 +21,49 @@ import java.util.HashMap;
 import java.util.Properties;
 import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
 
 import com.yahoo.ycsb.measurements.Measurements;
 
 /**
  * Wrapper around a "real" DB that measures latencies and counts return codes.
+ * 
+ * If the DB is an AsyncDB and "pipeline.depth" is greater than 1, operations are submitted without waiting
+ * for them to complete, up to that many at a time, and are measured from submission to completion. They return
+ * DB.PENDING, and their return codes are only counted when they complete.
+ * 
+ * Writes the DB queues in a Batcher, returned as DB.BATCHED, are measured by the Batcher when their batch executes.
+ * 
+ * If a trace is being recorded, every operation is recorded before it is issued, see TraceWriter.
  */
 public class DBWrapper extends DB
 {
 	DB _db;
 	Measurements _measurements;
 
+	/**
+	 * The DB, if operations are pipelined.
+	 */
+	AsyncDB _async;
+
+	/**
+	 * Permits for the operations that may still be put in flight, if operations are pipelined.
+	 */
+	Semaphore _window;
+
+	int _depth;
+
+	/**
+	 * The trace the operations are recorded into, or null.
+	 */
+	TraceWriter _trace;
+
 	public DBWrapper(DB db)
 	{
 		_db=db;
 		_measurements=Measurements.getMeasurements();
+		_trace=TraceWriter.getTraceWriter();
 	}
 
 	/**
@@ -61,6 +89,21 @@ public class DBWrapper extends DB
 	public void init() throws DBException
 	{
 		_db.init();
+
+		int depth=Integer.parseInt(getProperties().getProperty(AsyncDB.PIPELINE_DEPTH_PROPERTY,AsyncDB.PIPELINE_DEPTH_PROPERTY_DEFAULT));
+		if (depth>1)
+		{
+			if (_db instanceof AsyncDB)
+			{
+				_async=(AsyncDB)_db;
+				_depth=depth;
+				_window=new Semaphore(depth);
+			}
+			else
+			{
+				System.err.println(AsyncDB.PIPELINE_DEPTH_PROPERTY+" ignored, "+_db.getClass().getName()+" is not an AsyncDB");
+			}
+		}
 	}
 
 	/**
@@ -69,12 +112,54 @@ public class DBWrapper extends DB
 	 */
 	public void cleanup() throws DBException
 	{
+		//wait for the operations still in flight
+		if (_window!=null)
+		{
+			_window.acquireUninterruptibly(_depth);
+		}
+
     long st=System.nanoTime();
 		_db.cleanup();
     long en=System.nanoTime();
     _measurements.measure("CLEANUP", (int)((en-st)/1000));
 	}
 
+	/**
+	 * Record the latency of an operation that was scheduled to start at ist (or 0 if unscheduled), started
+	 * at st and ended at en, all System.nanoTime() values.
+	 */
+	void measure(String operation, long ist, long st, long en)
+	{
+		_measurements.measure(operation,(int)((en-st)/1000));
+		_measurements.measureIntended(operation,(int)((en-(ist==0 ? st : ist))/1000));
+	}
+
+	/**
+	 * Measure a pipelined operation when it completes, and give back its slot in the window.
+	 */
+	void complete(final String operation, final long ist, final long st, CompletableFuture<Integer> future)
+	{
+		future.whenComplete((res,e) ->
+		{
+			long en=System.nanoTime();
+			measure(operation,ist,st,en);
+			if (e!=null)
+			{
+				e.printStackTrace();
+			}
+			_measurements.reportReturnCode(operation,e==null ? res : 1);
+			_window.release();
+		});
+	}
+
+	/**
+	 * Take a slot in the window for a pipelined operation, waiting for an earlier one to complete if needed.
+	 */
+	void acquire()
+	{
+		_window.acquireUninterruptibly();
+	}
+
 	/**
 	 * Read a record from the database. Each field/value pair from the result will be stored in a HashMap.
 	 *
@@ -86,10 +171,32 @@ public class DBWrapper extends DB
 	 */
 	public int read(String table, String key, Set<String> fields, HashMap<String,ByteIterator> result)
 	{
+		long ist=_measurements.getIntendedStartTimeNs();
+		if (_trace!=null)
+		{
+			_trace.record(TraceWriter.READ,ist==0 ? System.nanoTime() : ist,table,key,0,fields,null);
+		}
+		if (_window!=null)
+		{
+			acquire();
+			long st=System.nanoTime();
+			CompletableFuture<Integer> future;
+			try
+			{
+				future=_async.readAsync(table,key,fields,result);
+			}
+			catch (RuntimeException e)
+			{
+				_window.release();
+				throw e;
+			}
+			complete("READ",ist,st,future);
+			return PENDING;
+		}
 		long st=System.nanoTime();
 		int res=_db.read(table,key,fields,result);
 		long en=System.nanoTime();
-		_measurements.measure("READ",(int)((en-st)/1000));
+		measure("READ",ist,st,en);
 		_measurements.reportReturnCode("READ",res);
 		return res;
 	}
@@ -106,10 +213,32 @@ public class DBWrapper extends DB
 	 */
 	public int scan(String table, String startkey, int recordcount, Set<String> fields, Vector<HashMap<String,ByteIterator>> result)
 	{
+		long ist=_measurements.getIntendedStartTimeNs();
+		if (_trace!=null)
+		{
+			_trace.record(TraceWriter.SCAN,ist==0 ? System.nanoTime() : ist,table,startkey,recordcount,fields,null);
+		}
+		if (_window!=null)
+		{
+			acquire();
+			long st=System.nanoTime();
+			CompletableFuture<Integer> future;
+			try
+			{
+				future=_async.scanAsync(table,startkey,recordcount,fields,result);
+			}
+			catch (RuntimeException e)
+			{
+				_window.release();
+				throw e;
+			}
+			complete("SCAN",ist,st,future);
+			return PENDING;
+		}
 		long st=System.nanoTime();
 		int res=_db.scan(table,startkey,recordcount,fields,result);
 		long en=System.nanoTime();
-		_measurements.measure("SCAN",(int)((en-st)/1000));
+		measure("SCAN",ist,st,en);
 		_measurements.reportReturnCode("SCAN",res);
 		return res;
 	}
@@ -125,10 +254,36 @@ public class DBWrapper extends DB
 	 */
 	public int update(String table, String key, HashMap<String,ByteIterator> values)
 	{
+		long ist=_measurements.getIntendedStartTimeNs();
+		if (_trace!=null)
+		{
+			_trace.record(TraceWriter.UPDATE,ist==0 ? System.nanoTime() : ist,table,key,0,null,values);
+		}
+		if (_window!=null)
+		{
+			acquire();
+			long st=System.nanoTime();
+			CompletableFuture<Integer> future;
+			try
+			{
+				future=_async.updateAsync(table,key,values);
+			}
+			catch (RuntimeException e)
+			{
+				_window.release();
+				throw e;
+			}
+			complete("UPDATE",ist,st,future);
+			return PENDING;
+		}
 		long st=System.nanoTime();
 		int res=_db.update(table,key,values);
+		if (res==BATCHED)
+		{
+			return 0;
+		}
 		long en=System.nanoTime();
-		_measurements.measure("UPDATE",(int)((en-st)/1000));
+		measure("UPDATE",ist,st,en);
 		_measurements.reportReturnCode("UPDATE",res);
 		return res;
 	}
@@ -144,10 +299,36 @@ public class DBWrapper extends DB
 	 */
 	public int insert(String table, String key, HashMap<String,ByteIterator> values)
 	{
+		long ist=_measurements.getIntendedStartTimeNs();
+		if (_trace!=null)
+		{
+			_trace.record(TraceWriter.INSERT,ist==0 ? System.nanoTime() : ist,table,key,0,null,values);
+		}
+		if (_window!=null)
+		{
+			acquire();
+			long st=System.nanoTime();
+			CompletableFuture<Integer> future;
+			try
+			{
+				future=_async.insertAsync(table,key,values);
+			}
+			catch (RuntimeException e)
+			{
+				_window.release();
+				throw e;
+			}
+			complete("INSERT",ist,st,future);
+			return PENDING;
+		}
 		long st=System.nanoTime();
 		int res=_db.insert(table,key,values);
+		if (res==BATCHED)
+		{
+			return 0;
+		}
 		long en=System.nanoTime();
-		_measurements.measure("INSERT",(int)((en-st)/1000));
+		measure("INSERT",ist,st,en);
 		_measurements.reportReturnCode("INSERT",res);
 		return res;
 	}
@@ -161,10 +342,36 @@ public class DBWrapper extends DB
 	 */
 	public int delete(String table, String key)
 	{
+		long ist=_measurements.getIntendedStartTimeNs();
+		if (_trace!=null)
+		{
+			_trace.record(TraceWriter.DELETE,ist==0 ? System.nanoTime() : ist,table,key,0,null,null);
+		}
+		if (_window!=null)
+		{
+			acquire();
+			long st=System.nanoTime();
+			CompletableFuture<Integer> future;
+			try
+			{
+				future=_async.deleteAsync(table,key);
+			}
+			catch (RuntimeException e)
+			{
+				_window.release();
+				throw e;
+			}
+			complete("DELETE",ist,st,future);
+			return PENDING;
+		}
 		long st=System.nanoTime();
 		int res=_db.delete(table,key);
+		if (res==BATCHED)
+		{
+			return 0;
+		}
 		long en=System.nanoTime();
-		_measurements.measure("DELETE",(int)((en-st)/1000));
+		measure("DELETE",ist,st,en);
 		_measurements.reportReturnCode("DELETE",res);
 		return res;
 	}
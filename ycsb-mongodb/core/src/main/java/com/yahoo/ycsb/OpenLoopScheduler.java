@@ -0,0 +1,155 @@
+/**
+ * Copyright (c) 2011 Yahoo! Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+package com.yahoo.ycsb;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A thread that releases operations at a fixed offered load, independently of how fast they complete.
+ * 
+ * In the default closed-loop mode every client thread issues its next operation only after the previous one
+ * returns, so the offered load drops exactly when the database slows down. In open-loop mode this thread
+ * computes an arrival time for every operation on a System.nanoTime() timeline, either evenly spaced
+ * ("constant") or with exponentially distributed gaps ("poisson"), and hands the arrival times to a pool of
+ * client threads that execute them. The time an operation waited between its arrival and the moment a
+ * client thread picked it up is its queueing delay.
+ * 
+ * Arrivals are handed over through a bounded queue. When the queue is full the scheduler blocks, but the
+ * arrival times it hands over are still the scheduled ones, so the queueing delay of a backlog is measured
+ * in full without holding every pending arrival in memory.
+ */
+public class OpenLoopScheduler extends Thread
+{
+	/**
+	 * Set to true to run the client open-loop. Requires a target throughput.
+	 */
+	public static final String OPEN_LOOP_PROPERTY="openloop";
+
+	public static final String OPEN_LOOP_PROPERTY_DEFAULT="false";
+
+	/**
+	 * The distribution of the time between arrivals: "constant" or "poisson".
+	 */
+	public static final String ARRIVALS_PROPERTY="openloop.arrivals";
+
+	public static final String ARRIVALS_PROPERTY_DEFAULT="constant";
+
+	/**
+	 * The maximum number of released operations waiting for a client thread.
+	 */
+	public static final String BACKLOG_PROPERTY="openloop.backlog";
+
+	public static final String BACKLOG_PROPERTY_DEFAULT="10000";
+
+	/**
+	 * Returned by nextArrival() once there will be no more arrivals.
+	 */
+	public static final long NO_MORE_ARRIVALS=-1;
+
+	private final double intervalns;
+	private final boolean poisson;
+	private final long opcount;
+	private final Workload workload;
+	private final ArrayBlockingQueue<Long> arrivals;
+	private volatile boolean done;
+
+	/**
+	 * @param target The offered load, in operations per second.
+	 * @param poisson True for exponentially distributed gaps between arrivals, false for evenly spaced arrivals.
+	 * @param opcount The total number of operations to release, or 0 for no limit.
+	 * @param backlog The maximum number of released operations waiting for a client thread.
+	 * @param workload The workload, checked for stop requests.
+	 */
+	public OpenLoopScheduler(double target, boolean poisson, long opcount, int backlog, Workload workload)
+	{
+		super("OpenLoopScheduler");
+		setDaemon(true);
+		this.intervalns=1000000000.0/target;
+		this.poisson=poisson;
+		this.opcount=opcount;
+		this.workload=workload;
+		this.arrivals=new ArrayBlockingQueue<Long>(backlog);
+		this.done=false;
+	}
+
+	public void run()
+	{
+		try
+		{
+			double next=System.nanoTime();
+			for (long released=0; ((opcount==0) || (released<opcount)) && !workload.isStopRequested(); released++)
+			{
+				if (poisson)
+				{
+					next+=-Math.log(1.0-Utils.random().nextDouble())*intervalns;
+				}
+				else
+				{
+					next+=intervalns;
+				}
+
+				long arrival=(long)next;
+				Throttle.waitUntil(arrival);
+
+				//don't block for good on a full backlog that nobody will take from after a stop
+				while (!arrivals.offer(arrival,100,TimeUnit.MILLISECONDS))
+				{
+					if (workload.isStopRequested())
+					{
+						return;
+					}
+				}
+			}
+		}
+		catch (InterruptedException e)
+		{
+			// stop releasing operations.
+		}
+		finally
+		{
+			done=true;
+		}
+	}
+
+	/**
+	 * Wait for the next arrival and return the System.nanoTime() at which it was scheduled, or
+	 * NO_MORE_ARRIVALS if the scheduler has finished and every arrival has been taken.
+	 */
+	public long nextArrival()
+	{
+		while (true)
+		{
+			try
+			{
+				Long arrival=arrivals.poll(100,TimeUnit.MILLISECONDS);
+				if (arrival!=null)
+				{
+					return arrival;
+				}
+			}
+			catch (InterruptedException e)
+			{
+				// check whether we are done.
+			}
+			if ( (done && arrivals.isEmpty()) || workload.isStopRequested() )
+			{
+				return NO_MORE_ARRIVALS;
+			}
+		}
+	}
+}
@@ -0,0 +1,451 @@
+/**
+ * Copyright (c) 2010 Yahoo! Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.yahoo.ycsb;
+
+import java.io.IOException;
+import java.util.Enumeration;
+import java.util.Properties;
+import java.util.Vector;
+
+import com.yahoo.ycsb.measurements.Measurements;
+import com.yahoo.ycsb.measurements.exporter.MeasurementsExporter;
+
+/**
+ * One pass of a workload over the DB, loading or doing transactions, with its own properties. A run is a
+ * single phase, unless the "phases" property lists several to run one after the other in the same JVM.
+ */
+class Phase
+{
+	String _name;
+	int _index;
+	Properties _props;
+	boolean _dotransactions;
+	boolean _record;
+
+	String _dbname;
+	int _threadcount;
+	int _target;
+	double _targetperthreadperms;
+	boolean _virtualthreads;
+	boolean _openloop;
+	long _maxExecutionTime;
+
+	long _opsdone;
+	long _runtime;
+
+	/**
+	 * Where the time series of the phase are streamed as they complete, or null to keep them for the export.
+	 */
+	MeasurementsExporter _stream=null;
+
+	/**
+	 * Check the properties of a phase, exiting if they are not valid.
+	 * 
+	 * @param name the name of the phase, or null for the only phase of a run without a plan
+	 * @param index the position of the phase in the plan
+	 * @param props the properties of the phase
+	 * @param dotransactions true to do transactions, false to insert data
+	 * @param record false to discard the measurements of the phase
+	 */
+	Phase(String name, int index, Properties props, boolean dotransactions, boolean record)
+	{
+		_name=name;
+		_index=index;
+		_props=props;
+		_dotransactions=dotransactions;
+		_record=record;
+
+		if (!Client.checkRequiredProperties(props))
+		{
+			System.exit(0);
+		}
+
+		_maxExecutionTime = Integer.parseInt(props.getProperty(Client.MAX_EXECUTION_TIME, "0"));
+
+		//get number of threads, target and db
+		_threadcount=Integer.parseInt(props.getProperty("threadcount","1"));
+		_dbname=props.getProperty("db","com.yahoo.ycsb.BasicDB");
+		_target=Integer.parseInt(props.getProperty("target","0"));
+		
+		//compute the target throughput
+		_targetperthreadperms=-1;
+		if (_target>0)
+		{
+			double targetperthread=((double)_target)/((double)_threadcount);
+			_targetperthreadperms=targetperthread/1000.0;
+		}	 
+
+		String threadmode=props.getProperty(Client.THREAD_MODE_PROPERTY,Client.THREAD_MODE_PROPERTY_DEFAULT);
+		if ( (threadmode.compareTo("platform")!=0) && (threadmode.compareTo("virtual")!=0) )
+		{
+			System.out.println("Unknown "+Client.THREAD_MODE_PROPERTY+" \""+threadmode+"\", must be platform or virtual");
+			System.exit(0);
+		}
+		_virtualthreads=threadmode.compareTo("virtual")==0;
+
+		_openloop=Boolean.parseBoolean(props.getProperty(OpenLoopScheduler.OPEN_LOOP_PROPERTY,OpenLoopScheduler.OPEN_LOOP_PROPERTY_DEFAULT));
+		if (_openloop)
+		{
+			if (_target<=0)
+			{
+				System.out.println("Open-loop mode requires a target throughput");
+				Client.usageMessage();
+				System.exit(0);
+			}
+			//in open-loop mode the latency that matters includes the time spent waiting for a client thread
+			if (props.getProperty(Measurements.MEASUREMENT_INTERVAL)==null)
+			{
+				props.setProperty(Measurements.MEASUREMENT_INTERVAL,"both");
+			}
+		}
+	}
+
+	/**
+	 * Create a phase of a plan. Its properties are the given ones, overridden by those prefixed with
+	 * "phase.&lt;name&gt;.".
+	 */
+	@SuppressWarnings("unchecked")
+	static Phase fromPlan(String name, int index, Properties base)
+	{
+		Properties props=new Properties();
+		String prefix=Client.PHASE_PREFIX+name+".";
+		for (Enumeration e=base.propertyNames(); e.hasMoreElements(); )
+		{
+			String prop=(String)e.nextElement();
+			props.setProperty(prop,base.getProperty(prop));
+		}
+		for (Enumeration e=base.propertyNames(); e.hasMoreElements(); )
+		{
+			String prop=(String)e.nextElement();
+			if (prop.startsWith(prefix))
+			{
+				props.setProperty(prop.substring(prefix.length()),base.getProperty(prop));
+			}
+		}
+
+		String mode=props.getProperty(Client.PHASE_MODE_PROPERTY,Client.PHASE_MODE_PROPERTY_DEFAULT);
+		if ( (mode.compareTo("load")!=0) && (mode.compareTo("run")!=0) )
+		{
+			System.out.println("Unknown "+prefix+Client.PHASE_MODE_PROPERTY+" \""+mode+"\", must be load or run");
+			System.exit(0);
+		}
+		boolean record=Boolean.parseBoolean(props.getProperty(Client.PHASE_RECORD_PROPERTY,Client.PHASE_RECORD_PROPERTY_DEFAULT));
+		return new Phase(name,index,props,mode.compareTo("run")==0,record);
+	}
+
+	/**
+	 * Run the phase: create its workload, DB instances and client threads, wait for the threads to finish, and
+	 * clean up the workload. The phase is measured into a fresh Measurements object.
+	 */
+	void run(boolean status, String label)
+	{
+		System.err.println("Loading workload...");
+		
+		//show a warning message that creating the workload is taking a while
+		//but only do so if it is taking longer than 2 seconds 
+		//(showing the message right away if the setup wasn't taking very long was confusing people)
+		Thread warningthread=new Thread() 
+		{
+			public void run()
+			{
+				try
+				{
+					sleep(2000);
+				}
+				catch (InterruptedException e)
+				{
+					return;
+				}
+				System.err.println(" (might take a few minutes for large data sets)");
+			}
+		};
+
+		warningthread.start();
+		
+		//derive every thread's random stream from the seed, if there is one, so that each phase draws its own values
+		if (_props.getProperty(Utils.SEED_PROPERTY)!=null)
+		{
+			Utils.setSeed(Long.parseLong(_props.getProperty(Utils.SEED_PROPERTY))+_index);
+		}
+
+		//set up measurements
+		Measurements.setProperties(_props);
+		Measurements.reset();
+		if (_stream!=null)
+		{
+			Measurements.getMeasurements().streamTimeSeries(_stream);
+		}
+
+		//load the workload
+		ClassLoader classLoader = Client.class.getClassLoader();
+
+		Workload workload=null;
+
+		try 
+		{
+			Class workloadclass = classLoader.loadClass(_props.getProperty(Client.WORKLOAD_PROPERTY));
+
+			workload=(Workload)workloadclass.newInstance();
+		}
+		catch (Exception e) 
+		{  
+			e.printStackTrace();
+			e.printStackTrace(System.out);
+			System.exit(0);
+		}
+
+		try
+		{
+			workload.init(_props);
+		}
+		catch (WorkloadException e)
+		{
+			e.printStackTrace();
+			e.printStackTrace(System.out);
+			System.exit(0);
+		}
+		
+		warningthread.interrupt();
+
+		//run the workload
+
+		if (_name==null)
+		{
+			System.err.println("Starting test.");
+		}
+		else
+		{
+			System.err.println("Starting phase "+_name+".");
+			label=label+" "+_name;
+		}
+
+		long opcount;
+		if (_dotransactions)
+		{
+			opcount=Long.parseLong(_props.getProperty(Client.OPERATION_COUNT_PROPERTY,"0"));
+		}
+		else
+		{
+			if (_props.containsKey(Client.INSERT_COUNT_PROPERTY))
+			{
+				opcount=Long.parseLong(_props.getProperty(Client.INSERT_COUNT_PROPERTY,"0"));
+			}
+			else
+			{
+				opcount=Long.parseLong(_props.getProperty(Client.RECORD_COUNT_PROPERTY,"0"));
+			}
+		}
+
+		OpenLoopScheduler scheduler=null;
+		if (_openloop)
+		{
+			String arrivals=_props.getProperty(OpenLoopScheduler.ARRIVALS_PROPERTY,OpenLoopScheduler.ARRIVALS_PROPERTY_DEFAULT);
+			if ( (arrivals.compareTo("constant")!=0) && (arrivals.compareTo("poisson")!=0) )
+			{
+				System.out.println("Unknown "+OpenLoopScheduler.ARRIVALS_PROPERTY+" \""+arrivals+"\", must be constant or poisson");
+				System.exit(0);
+			}
+			int backlog=Integer.parseInt(_props.getProperty(OpenLoopScheduler.BACKLOG_PROPERTY,OpenLoopScheduler.BACKLOG_PROPERTY_DEFAULT));
+			scheduler=new OpenLoopScheduler(_target,arrivals.compareTo("poisson")==0,opcount,backlog,workload);
+		}
+
+		//optionally share a fixed number of DB instances between all the clients
+		int dbinstances=Integer.parseInt(_props.getProperty(DBPool.DB_INSTANCES_PROPERTY,DBPool.DB_INSTANCES_PROPERTY_DEFAULT));
+		DBPool pool=null;
+		if (dbinstances>0)
+		{
+			boolean shared=Boolean.parseBoolean(_props.getProperty(DBPool.DB_SHARED_PROPERTY,DBPool.DB_SHARED_PROPERTY_DEFAULT));
+			try
+			{
+				pool=new DBPool(_dbname,_props,dbinstances,shared);
+			}
+			catch (UnknownDBException e)
+			{
+				System.out.println("Unknown DB "+_dbname);
+				System.exit(0);
+			}
+		}
+
+		Vector<Thread> threads=new Vector<Thread>();
+		Vector<ClientThread> clients=new Vector<ClientThread>();
+
+		for (int threadid=0; threadid<_threadcount; threadid++)
+		{
+			DB db=null;
+			if (pool!=null)
+			{
+				//measured around the pool, so that waiting for an idle instance counts in the latency
+				db=new DBWrapper(pool.newClient());
+			}
+			else
+			{
+				try
+				{
+					db=DBFactory.newDB(_dbname,_props);
+				}
+				catch (UnknownDBException e)
+				{
+					System.out.println("Unknown DB "+_dbname);
+					System.exit(0);
+				}
+			}
+
+			ClientThread client;
+			if (_openloop)
+			{
+				client=new ClientThread(db,_dotransactions,workload,threadid,_threadcount,_props,scheduler);
+			}
+			else
+			{
+				client=new ClientThread(db,_dotransactions,workload,threadid,_threadcount,_props,opcount/_threadcount,_targetperthreadperms);
+			}
+
+			Thread t;
+			if (_virtualthreads)
+			{
+				t=Thread.ofVirtual().name("ClientThread-"+threadid).unstarted(client);
+			}
+			else
+			{
+				t=new Thread(client,"ClientThread-"+threadid);
+			}
+
+			clients.add(client);
+			threads.add(t);
+			//t.start();
+		}
+
+		StatusThread statusthread=null;
+
+		if (status)
+		{
+			boolean standardstatus=false;
+			if (_props.getProperty("measurementtype","").compareTo("timeseries")==0) 
+			{
+				standardstatus=true;
+			}	
+			statusthread=new StatusThread(threads,clients,label,standardstatus);
+			statusthread.start();
+		}
+
+		long st=System.currentTimeMillis();
+		Measurements.getMeasurements().setStartTime(st);
+
+		for (Thread t : threads)
+		{
+			t.start();
+		}
+
+		if (scheduler!=null)
+		{
+			scheduler.start();
+		}
+		
+    Thread terminator = null;
+    
+    if (_maxExecutionTime > 0) {
+      terminator = new TerminatorThread(_maxExecutionTime, threads, workload);
+      terminator.start();
+    }
+    
+    long opsDone = 0;
+
+		for (Thread t : threads)
+		{
+			try
+			{
+				t.join();
+			}
+			catch (InterruptedException e)
+			{
+			}
+		}
+
+		for (ClientThread client : clients)
+		{
+			opsDone += client.getOpsDone();
+		}
+
+		long en=System.currentTimeMillis();
+		
+		if (terminator != null && !terminator.isInterrupted()) {
+      terminator.interrupt();
+    }
+
+		if (status)
+		{
+			statusthread.interrupt();
+		}
+
+		try
+		{
+			workload.cleanup();
+		}
+		catch (WorkloadException e)
+		{
+			e.printStackTrace();
+			e.printStackTrace(System.out);
+			System.exit(0);
+		}
+
+		_opsdone=opsDone;
+		_runtime=en-st;
+	}
+
+	/**
+	 * Export the measurements of the phase. Those of a named phase are prefixed with "&lt;name&gt;/".
+	 */
+	void export(MeasurementsExporter exporter) throws IOException
+	{
+		Client.exportMeasurements(prefixed(exporter),_opsdone,_runtime);
+	}
+
+	/**
+	 * Return an exporter that writes the measurements of the phase to the given one, prefixed with
+	 * "&lt;name&gt;/" if the phase is named.
+	 */
+	MeasurementsExporter prefixed(final MeasurementsExporter exporter)
+	{
+		if (_name==null)
+		{
+			return exporter;
+		}
+		final String prefix=_name+"/";
+		return new MeasurementsExporter()
+		{
+			public void write(String metric, String measurement, int i) throws IOException
+			{
+				exporter.write(prefix+metric,measurement,i);
+			}
+
+			public void write(String metric, String measurement, long l) throws IOException
+			{
+				exporter.write(prefix+metric,measurement,l);
+			}
+
+			public void write(String metric, String measurement, double d) throws IOException
+			{
+				exporter.write(prefix+metric,measurement,d);
+			}
+
+			public void close()
+			{
+			}
+		};
+	}
+}
@@ -16,72 +16,108 @@
  */
 package com.yahoo.ycsb;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
 /**
  *  A ByteIterator that generates a random sequence of bytes.
+ *
+ *  Bytes are printable characters from ' ' to '?', each drawn from 5 random bits. They are generated 8 at a
+ *  time from one 64-bit draw of the thread's random stream, masked and offset all at once and stored with a
+ *  single write, and nextBuf() writes them straight into the destination.
  */
 public class RandomByteIterator extends ByteIterator {
+  /** Views a byte array as little endian longs, to store 8 generated bytes at once. */
+  private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+  /** The low 5 bits of each byte. */
+  private static final long LOW5 = 0x1F1F1F1F1F1F1F1FL;
+  /** ' ' in each byte; adding it to a byte of at most 31 never carries into the next. */
+  private static final long SPACES = 0x2020202020202020L;
+
   private long len;
   private long off;
-  private int bufOff;
-  private byte[] buf;
+  /** The bytes generated for nextByte() and not returned yet, lowest first. */
+  private long word;
+  private int wordLeft;
 
-  @Override
-  public boolean hasNext() {
-    return (off + bufOff) < len;
+  public RandomByteIterator(long len) {
+    this.len = len;
+    this.off = 0;
   }
 
-  private void fillBytesImpl(byte[] buffer, int base) {
-    int bytes = Utils.random().nextInt();
-    try {
-      buffer[base+0] = (byte)(((bytes) & 31) + ' ');
-      buffer[base+1] = (byte)(((bytes >> 5) & 31) + ' ');
-      buffer[base+2] = (byte)(((bytes >> 10) & 31) + ' ');
-      buffer[base+3] = (byte)(((bytes >> 15) & 31) + ' ');
-      buffer[base+4] = (byte)(((bytes >> 20) & 31) + ' ');
-      buffer[base+5] = (byte)(((bytes >> 25) & 31) + ' ');
-    } catch (ArrayIndexOutOfBoundsException e) { /* ignore it */ }
+  /** Return 8 printable bytes drawn from the given random bits, lowest first. */
+  static long printable(long bits) {
+    return (bits & LOW5) + SPACES;
   }
 
-  private void fillBytes() {
-    if(bufOff ==  buf.length) {
-      fillBytesImpl(buf, 0);
-      bufOff = 0;
-      off += buf.length;
+  /**
+   * Fill len bytes of dst from off with random printable bytes, drawn from the calling thread's random stream.
+   */
+  public static void fill(byte[] dst, int off, int len) {
+    Random r = Utils.random();
+    int end = off + len;
+    int i = off;
+    for(; i <= end - 8; i += 8) {
+      LONGS.set(dst, i, printable(r.nextLong()));
+    }
+    if(i < end) {
+      long w = printable(r.nextLong());
+      for(; i < end; i++) {
+        dst[i] = (byte)w;
+        w >>>= 8;
+      }
     }
   }
 
-  public RandomByteIterator(long len) {
-    this.len = len;
-    this.buf = new byte[6];
-    this.bufOff = buf.length;
-    fillBytes();
-    this.off = 0;
+  /**
+   * Fill the next len bytes of dst with random printable bytes, drawn from the calling thread's random stream,
+   * and advance its position past them.
+   */
+  public static void fill(ByteBuffer dst, int len) {
+    Random r = Utils.random();
+    int i = 0;
+    for(; i <= len - 8; i += 8) {
+      dst.putLong(printable(r.nextLong()));
+    }
+    if(i < len) {
+      long w = printable(r.nextLong());
+      for(; i < len; i++) {
+        dst.put((byte)w);
+        w >>>= 8;
+      }
+    }
+  }
+
+  @Override
+  public boolean hasNext() {
+    return off < len;
   }
 
   public byte nextByte() {
-    fillBytes();
-    bufOff++;
-    return buf[bufOff-1];
+    if(wordLeft == 0) {
+      word = printable(Utils.random().nextLong());
+      wordLeft = 8;
+    }
+    byte b = (byte)word;
+    word >>>= 8;
+    wordLeft--;
+    off++;
+    return b;
   }
 
   @Override
   public int nextBuf(byte[] buffer, int bufferOffset) {
-    int ret;
-    if(len - off < buffer.length - bufferOffset) {
-      ret = (int)(len - off);
-    } else {
-      ret = buffer.length - bufferOffset;
-    }
-    int i;
-    for(i = 0; i < ret; i+=6) {
-      fillBytesImpl(buffer, i + bufferOffset);
-    }
-    off+=ret;
+    int ret = (int)Math.min(len - off, buffer.length - bufferOffset);
+    fill(buffer, bufferOffset, ret);
+    off += ret;
     return ret + bufferOffset;
   }
 
   @Override
   public long bytesLeft() {
-    return len - off - bufOff;
+    return len - off;
   }
 }
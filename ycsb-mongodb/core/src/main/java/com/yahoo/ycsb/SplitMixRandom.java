@@ -0,0 +1,143 @@
+/**
+ * Copyright (c) 2010 Yahoo! Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.yahoo.ycsb;
+
+import java.util.Random;
+
+/**
+ * A SplitMix64 generator: a 64-bit counter advanced by a fixed odd constant and scrambled on output. It is
+ * several times faster than java.util.Random, which updates its seed with a compare-and-set on every draw,
+ * and passes BigCrush.
+ *
+ * Not thread-safe: each thread has its own, see {@link Utils#random()}. It extends Random only so that it can
+ * be used wherever a Random is expected.
+ */
+public class SplitMixRandom extends Random
+{
+	private static final long serialVersionUID=1L;
+
+	private static final long GOLDEN_GAMMA=0x9e3779b97f4a7c15L;
+
+	private long state;
+
+	public SplitMixRandom(long seed)
+	{
+		super(0);
+		state=seed;
+	}
+
+	/**
+	 * Create the stream with the given index out of those derived from a seed. Streams start at unrelated
+	 * points of the generator's 2^64 cycle, so they do not overlap in practice.
+	 */
+	public static SplitMixRandom stream(long seed, long index)
+	{
+		return new SplitMixRandom(mix64(seed^mix64(index)));
+	}
+
+	/**
+	 * The SplitMix64 output function (Stafford's variant 13), a bijective 64-bit mix.
+	 */
+	public static long mix64(long z)
+	{
+		z=(z^(z>>>30))*0xbf58476d1ce4e5b9L;
+		z=(z^(z>>>27))*0x94d049bb133111ebL;
+		return z^(z>>>31);
+	}
+
+	@Override
+	public void setSeed(long seed)
+	{
+		state=seed;
+	}
+
+	@Override
+	protected int next(int bits)
+	{
+		return (int)(nextLong()>>>(64-bits));
+	}
+
+	@Override
+	public long nextLong()
+	{
+		return mix64(state+=GOLDEN_GAMMA);
+	}
+
+	@Override
+	public int nextInt()
+	{
+		return (int)(nextLong()>>>32);
+	}
+
+	/**
+	 * Lemire's multiply-and-shift, with the rejection step that keeps it unbiased.
+	 */
+	@Override
+	public int nextInt(int bound)
+	{
+		if (bound<=0)
+		{
+			throw new IllegalArgumentException("bound must be positive");
+		}
+		long m=(nextLong()>>>32)*bound;
+		long l=m&0xffffffffL;
+		if (l<bound)
+		{
+			long t=(1L<<32)%bound;
+			while (l<t)
+			{
+				m=(nextLong()>>>32)*bound;
+				l=m&0xffffffffL;
+			}
+		}
+		return (int)(m>>>32);
+	}
+
+	@Override
+	public double nextDouble()
+	{
+		return (nextLong()>>>11)*0x1.0p-53;
+	}
+
+	@Override
+	public float nextFloat()
+	{
+		return (nextLong()>>>40)*0x1.0p-24f;
+	}
+
+	@Override
+	public boolean nextBoolean()
+	{
+		return nextLong()<0;
+	}
+
+	@Override
+	public void nextBytes(byte[] bytes)
+	{
+		int i=0;
+		int n=bytes.length;
+		while (i<n)
+		{
+			long r=nextLong();
+			for (int k=Math.min(n-i,8); k>0; k--, r>>>=8)
+			{
+				bytes[i++]=(byte)r;
+			}
+		}
+	}
+}
@@ -0,0 +1,129 @@
+/**
+ * Copyright (c) 2011 Yahoo! Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+package com.yahoo.ycsb;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Paces operations to a target rate on a System.nanoTime() schedule.
+ * 
+ * Operation n is due at a fixed offset of n intervals from the start of the schedule, rather than one interval
+ * after operation n-1 finished. This is more accurate than sleeping for (1/target throughput)-operation latency,
+ * because lateness in waking up for one operation is made up by the following ones instead of accumulating,
+ * so the long term rate holds even when each interval is shorter than the timer resolution.
+ * 
+ * Waiting parks the thread until the deadline is as close as LockSupport.parkNanos() can be trusted to wake it
+ * up, then yields, then spins for the last couple of microseconds, so a paced thread only uses the CPU close to
+ * its deadlines. How late parkNanos() wakes up is measured as the throttles run, rather than assumed. Virtual
+ * threads always park, since spinning would hold on to a carrier thread other virtual threads are waiting for.
+ */
+public class Throttle
+{
+	/**
+	 * Don't park for less than this: closer to the deadline than the park slack plus this, yield instead.
+	 */
+	static final long MIN_PARK_NS=10000;
+
+	/**
+	 * Yield while the deadline is further away than this, then spin.
+	 */
+	static final long SPIN_THRESHOLD_NS=2000;
+
+	/**
+	 * The largest park slack assumed, so that one very late wakeup doesn't turn into a long spin.
+	 */
+	static final long MAX_PARK_SLACK_NS=200000;
+
+	/**
+	 * A moving average of how much later than asked LockSupport.parkNanos() wakes up, shared by every thread.
+	 * Updates from concurrent threads may be lost, which only delays the average a little.
+	 */
+	static volatile long parkslack=50000;
+
+	private final double intervalns;
+	private final long start;
+
+	/**
+	 * @param opspersecond The target rate.
+	 * @param stagger True to start the schedule at a random point within the first interval, so that many
+	 * throttles created at the same time don't issue their operations in lockstep.
+	 */
+	public Throttle(double opspersecond, boolean stagger)
+	{
+		intervalns=1000000000.0/opspersecond;
+		long now=System.nanoTime();
+		if (stagger)
+		{
+			now+=(long)(Utils.random().nextDouble()*intervalns);
+		}
+		start=now;
+	}
+
+	/**
+	 * Return the System.nanoTime() at which operation n (counting from 0) is due.
+	 */
+	public long deadline(long n)
+	{
+		return start+(long)(n*intervalns);
+	}
+
+	/**
+	 * Wait until System.nanoTime() reaches deadline. Returns immediately if it already has.
+	 */
+	public static void waitUntil(long deadline)
+	{
+		boolean virtual=Thread.currentThread().isVirtual();
+		long remaining;
+		while ((remaining=deadline-System.nanoTime())>0)
+		{
+			if (virtual)
+			{
+				LockSupport.parkNanos(remaining);
+			}
+			else if (remaining>parkslack+MIN_PARK_NS)
+			{
+				park(remaining-parkslack);
+			}
+			else if (remaining>SPIN_THRESHOLD_NS)
+			{
+				Thread.yield();
+			}
+			else
+			{
+				Thread.onSpinWait();
+			}
+		}
+	}
+
+	/**
+	 * Park for the given time and fold how late the thread woke up into parkslack.
+	 */
+	private static void park(long ns)
+	{
+		long wake=System.nanoTime()+ns;
+		LockSupport.parkNanos(ns);
+		long late=System.nanoTime()-wake;
+		if (late<0)
+		{
+			//an early return, e.g. a spurious wakeup, says nothing about the slack
+			return;
+		}
+		late=Math.min(late,MAX_PARK_SLACK_NS);
+		long slack=parkslack;
+		parkslack=slack+(late-slack)/8;
+	}
+}
@@ -0,0 +1,289 @@
+/**
+ * Copyright (c) 2010 Yahoo! Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.yahoo.ycsb;
+
+import java.io.IOException;
+import java.text.DecimalFormat;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Vector;
+
+import com.yahoo.ycsb.measurements.Measurements;
+import com.yahoo.ycsb.measurements.OneMeasurement;
+import com.yahoo.ycsb.measurements.exporter.MeasurementsExporter;
+
+/**
+ * Searches for the highest target throughput the DB sustains while keeping a latency percentile under a
+ * service level objective (SLO). Enabled by setting "search.slo".
+ * 
+ * The search runs a series of short steps, each a transaction phase at a fixed target for "search.steptime"
+ * seconds. A step passes if it achieves at least "search.sustained" of its target, and the "search.percentile"
+ * latency of every operation is within the SLO. Latencies are read from the "Intended-" series when they are
+ * measured, so that an overloaded DB cannot hide its queueing delay; the search measures both by default.
+ * The target doubles from "search.start" until a step fails (or starts from "search.max" if set), and is then
+ * bisected between the best passing and the lowest failing target until they are within "search.precision"
+ * of each other.
+ * 
+ * Every step is reported on stderr as it ends. The export lists the steps, the highest passing target, and for
+ * each operation the highest target at which it met the SLO.
+ */
+public class ThroughputSearch
+{
+	/**
+	 * The SLO, in milliseconds. Unset by default, which runs the client normally.
+	 */
+	public static final String SLO_PROPERTY="search.slo";
+
+	public static final String PERCENTILE_PROPERTY="search.percentile";
+
+	public static final String PERCENTILE_PROPERTY_DEFAULT="99";
+
+	public static final String STEP_TIME_PROPERTY="search.steptime";
+
+	public static final String STEP_TIME_PROPERTY_DEFAULT="30";
+
+	public static final String START_PROPERTY="search.start";
+
+	public static final String START_PROPERTY_DEFAULT="1000";
+
+	/**
+	 * A target known to fail, to bisect from at once. 0 (the default) doubles the target until a step fails.
+	 */
+	public static final String MAX_PROPERTY="search.max";
+
+	public static final String MAX_PROPERTY_DEFAULT="0";
+
+	public static final String PRECISION_PROPERTY="search.precision";
+
+	public static final String PRECISION_PROPERTY_DEFAULT="0.05";
+
+	public static final String MAX_STEPS_PROPERTY="search.maxsteps";
+
+	public static final String MAX_STEPS_PROPERTY_DEFAULT="20";
+
+	public static final String SUSTAINED_PROPERTY="search.sustained";
+
+	public static final String SUSTAINED_PROPERTY_DEFAULT="0.95";
+
+	/**
+	 * The operations the SLO applies to, when they occur.
+	 */
+	public static final String OPERATIONS_PROPERTY="search.operations";
+
+	public static final String OPERATIONS_PROPERTY_DEFAULT="READ,UPDATE,INSERT,SCAN,DELETE,READ-MODIFY-WRITE";
+
+	/**
+	 * The outcome of one step.
+	 */
+	static class Step
+	{
+		int target;
+		double throughput;
+		/** The percentile latency of each operation, in microseconds. */
+		LinkedHashMap<String,Long> latencies=new LinkedHashMap<String,Long>();
+		boolean sustained;
+		boolean pass;
+	}
+
+	Properties _props;
+	long _slo;
+	double _percentile;
+	long _steptime;
+	int _start;
+	int _max;
+	double _precision;
+	int _maxsteps;
+	double _sustained;
+	String[] _operations;
+
+	Vector<Step> _steps=new Vector<Step>();
+
+	public ThroughputSearch(Properties props)
+	{
+		_props=props;
+		_slo=(long)(Double.parseDouble(props.getProperty(SLO_PROPERTY))*1000);
+		_percentile=Double.parseDouble(props.getProperty(PERCENTILE_PROPERTY,PERCENTILE_PROPERTY_DEFAULT));
+		_steptime=Long.parseLong(props.getProperty(STEP_TIME_PROPERTY,STEP_TIME_PROPERTY_DEFAULT));
+		_start=Integer.parseInt(props.getProperty(START_PROPERTY,START_PROPERTY_DEFAULT));
+		_max=Integer.parseInt(props.getProperty(MAX_PROPERTY,MAX_PROPERTY_DEFAULT));
+		_precision=Double.parseDouble(props.getProperty(PRECISION_PROPERTY,PRECISION_PROPERTY_DEFAULT));
+		_maxsteps=Integer.parseInt(props.getProperty(MAX_STEPS_PROPERTY,MAX_STEPS_PROPERTY_DEFAULT));
+		_sustained=Double.parseDouble(props.getProperty(SUSTAINED_PROPERTY,SUSTAINED_PROPERTY_DEFAULT));
+		_operations=props.getProperty(OPERATIONS_PROPERTY,OPERATIONS_PROPERTY_DEFAULT).split(",");
+		if ( (_percentile<=0) || (_percentile>100) )
+		{
+			throw new IllegalArgumentException(PERCENTILE_PROPERTY+" must be in (0,100], got "+_percentile);
+		}
+		if ( (_start<=0) || (_steptime<=0) )
+		{
+			throw new IllegalArgumentException(START_PROPERTY+" and "+STEP_TIME_PROPERTY+" must be positive");
+		}
+		//any other type is measured as a time series, which has no percentiles
+		String type=props.getProperty("measurementtype","histogram");
+		if ( (type.compareTo("histogram")!=0) && (type.compareTo("hdrhistogram")!=0) )
+		{
+			throw new IllegalArgumentException("The search needs latency percentiles, use measurementtype=hdrhistogram or histogram");
+		}
+	}
+
+	/**
+	 * Run the search.
+	 * 
+	 * @return The highest target that passed, or 0 if none did.
+	 */
+	@SuppressWarnings("unchecked")
+	public int run(boolean status, String label)
+	{
+		int lo=0;
+		int hi=_max;
+		int target=(hi>0) ? hi : _start;
+		while (_steps.size()<_maxsteps)
+		{
+			Properties props=new Properties();
+			for (Enumeration e=_props.propertyNames(); e.hasMoreElements(); )
+			{
+				String prop=(String)e.nextElement();
+				props.setProperty(prop,_props.getProperty(prop));
+			}
+			props.setProperty("target",""+target);
+			props.setProperty(Client.MAX_EXECUTION_TIME,""+_steptime);
+			props.setProperty(Client.OPERATION_COUNT_PROPERTY,"0");
+			if (props.getProperty(Measurements.MEASUREMENT_INTERVAL)==null)
+			{
+				props.setProperty(Measurements.MEASUREMENT_INTERVAL,"both");
+			}
+
+			Phase phase=new Phase("step"+(_steps.size()+1),_steps.size(),props,true,true);
+			phase.run(status,label);
+			Step step=evaluate(target,phase);
+			_steps.add(step);
+			report(step);
+
+			if (step.pass)
+			{
+				lo=target;
+			}
+			else
+			{
+				hi=target;
+			}
+			if (hi==0)
+			{
+				target*=2;
+			}
+			else if (hi-lo<=Math.max(1,_precision*hi))
+			{
+				break;
+			}
+			else
+			{
+				target=lo+(hi-lo)/2;
+			}
+		}
+		return lo;
+	}
+
+	/**
+	 * Judge a step from the measurements of its phase.
+	 */
+	Step evaluate(int target, Phase phase)
+	{
+		Step step=new Step();
+		step.target=target;
+		step.throughput=(phase._runtime>0) ? 1000.0*phase._opsdone/phase._runtime : 0;
+		step.sustained=step.throughput>=_sustained*target;
+		step.pass=step.sustained;
+		Measurements measurements=Measurements.getMeasurements();
+		for (String op : _operations)
+		{
+			OneMeasurement m=measurements.getSnapshot(Measurements.INTENDED_PREFIX+op);
+			if (m==null)
+			{
+				m=measurements.getSnapshot(op);
+			}
+			if ( (m==null) || (m.getOperations()==0) )
+			{
+				continue;
+			}
+			long latency=m.getPercentileLatency(_percentile);
+			if (latency<0)
+			{
+				throw new IllegalArgumentException("The search needs latency percentiles, use measurementtype=hdrhistogram or histogram");
+			}
+			step.latencies.put(op,latency);
+			if (latency>_slo)
+			{
+				step.pass=false;
+			}
+		}
+		return step;
+	}
+
+	void report(Step step)
+	{
+		DecimalFormat d=new DecimalFormat("#.##");
+		String line="Step "+_steps.size()+": target "+step.target+" ops/sec, "+d.format(step.throughput)+" ops/sec";
+		for (Map.Entry<String,Long> e : step.latencies.entrySet())
+		{
+			line+=", "+e.getKey()+" "+d.format(_percentile)+"th="+e.getValue()+"us";
+		}
+		System.err.println(line+": "+(step.pass ? "pass" : (step.sustained ? "fail" : "fail, not sustained")));
+	}
+
+	/**
+	 * Export the steps and the outcome of the search, as metrics prefixed with "SEARCH/".
+	 */
+	public void export(MeasurementsExporter exporter) throws IOException
+	{
+		String label=new DecimalFormat("#.####").format(_percentile)+"thPercentileLatency(us)";
+		int best=0;
+		LinkedHashMap<String,Integer> bestop=new LinkedHashMap<String,Integer>();
+		for (int i=0; i<_steps.size(); i++)
+		{
+			Step step=_steps.get(i);
+			String metric="SEARCH/STEP-"+(i+1);
+			exporter.write(metric,"Target(ops/sec)",step.target);
+			exporter.write(metric,"Throughput(ops/sec)",step.throughput);
+			for (Map.Entry<String,Long> e : step.latencies.entrySet())
+			{
+				exporter.write(metric,e.getKey()+"-"+label,e.getValue());
+				if (!bestop.containsKey(e.getKey()))
+				{
+					bestop.put(e.getKey(),0);
+				}
+				if ( step.sustained && (e.getValue()<=_slo) && (step.target>bestop.get(e.getKey())) )
+				{
+					bestop.put(e.getKey(),step.target);
+				}
+			}
+			exporter.write(metric,"Pass",step.pass ? 1 : 0);
+			if ( step.pass && (step.target>best) )
+			{
+				best=step.target;
+			}
+		}
+		exporter.write("SEARCH","SLO(us)",_slo);
+		exporter.write("SEARCH","MaxSustainableThroughput(ops/sec)",best);
+		for (Map.Entry<String,Integer> e : bestop.entrySet())
+		{
+			exporter.write("SEARCH/"+e.getKey(),"MaxSustainableThroughput(ops/sec)",e.getValue());
+		}
+	}
+}
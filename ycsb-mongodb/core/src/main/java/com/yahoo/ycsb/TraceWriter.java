@@ -0,0 +1,270 @@
+/**
+ * Copyright (c) 2010 Yahoo! Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.yahoo.ycsb;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * Records every operation the client threads issue into a binary trace file, which
+ * com.yahoo.ycsb.workloads.TraceWorkload replays. Enabled by setting "trace.record" to the path of the file.
+ * 
+ * Each thread encodes its operations into a block of its own, and appends the block to the file once it is
+ * full, so threads only synchronize once per block. The file is the magic "YCSBTRC1" followed by blocks; all
+ * numbers are little-endian.
+ * <ul>
+ * <li>block: int length of the records in bytes, int number of records, long time of the first record, records</li>
+ * <li>record: byte operation, zigzag varint time relative to the block's, string table, string key, then
+ * <ul>
+ * <li>READ: field set</li>
+ * <li>SCAN: varint record count, field set</li>
+ * <li>UPDATE, INSERT: varint number of fields, then for each a string name and a varint value size</li>
+ * <li>DELETE: nothing</li>
+ * </ul></li>
+ * <li>field set: varint number of fields plus one, 0 for all fields, then the string names</li>
+ * <li>string: varint length, UTF-8 bytes</li>
+ * </ul>
+ * Times are the intended start times of the operations, in nanoseconds since recording started. Values are
+ * recorded by size only.
+ */
+public class TraceWriter
+{
+	/**
+	 * The file to record the trace into. Unset by default, which records nothing.
+	 */
+	public static final String TRACE_RECORD_PROPERTY="trace.record";
+
+	public static final byte[] MAGIC="YCSBTRC1".getBytes(StandardCharsets.US_ASCII);
+
+	public static final int BLOCK_HEADER=16;
+
+	public static final byte READ=1;
+	public static final byte SCAN=2;
+	public static final byte UPDATE=3;
+	public static final byte INSERT=4;
+	public static final byte DELETE=5;
+
+	/** Records in a block before it is appended to the file. */
+	static final int BLOCK_SIZE=64*1024;
+
+	static TraceWriter singleton=null;
+
+	/**
+	 * Start recording, if the properties ask for it. Called once, in the main client thread, before any
+	 * operations are started.
+	 */
+	public static synchronized void open(Properties props) throws IOException
+	{
+		String file=props.getProperty(TRACE_RECORD_PROPERTY);
+		singleton=(file==null) ? null : new TraceWriter(FileChannel.open(Paths.get(file),StandardOpenOption.CREATE,StandardOpenOption.WRITE,StandardOpenOption.TRUNCATE_EXISTING));
+	}
+
+	/**
+	 * Return the writer, or null if no trace is being recorded.
+	 */
+	public static TraceWriter getTraceWriter()
+	{
+		return singleton;
+	}
+
+	/**
+	 * The block a thread is encoding into.
+	 */
+	static final class Block
+	{
+		byte[] buf=new byte[BLOCK_HEADER+BLOCK_SIZE];
+		int pos=BLOCK_HEADER;
+		int count=0;
+		long base;
+
+		void ensure(int n)
+		{
+			if (pos+n>buf.length)
+			{
+				buf=Arrays.copyOf(buf,Math.max(buf.length*2,pos+n));
+			}
+		}
+
+		void putByte(int b)
+		{
+			ensure(1);
+			buf[pos++]=(byte)b;
+		}
+
+		void putVarLong(long v)
+		{
+			ensure(10);
+			while ((v&~0x7fL)!=0)
+			{
+				buf[pos++]=(byte)((v&0x7f)|0x80);
+				v>>>=7;
+			}
+			buf[pos++]=(byte)v;
+		}
+
+		void putString(String s)
+		{
+			byte[] b=s.getBytes(StandardCharsets.UTF_8);
+			putVarLong(b.length);
+			ensure(b.length);
+			System.arraycopy(b,0,buf,pos,b.length);
+			pos+=b.length;
+		}
+
+		void putFields(Set<String> fields)
+		{
+			if (fields==null)
+			{
+				putVarLong(0);
+				return;
+			}
+			putVarLong(fields.size()+1);
+			for (String f : fields)
+			{
+				putString(f);
+			}
+		}
+	}
+
+	private final FileChannel channel;
+	private final long start=System.nanoTime();
+	private final ThreadLocal<Block> blocks;
+	private final ArrayList<Block> all=new ArrayList<Block>();
+	private boolean closed=false;
+
+	TraceWriter(FileChannel channel) throws IOException
+	{
+		this.channel=channel;
+		channel.write(ByteBuffer.wrap(MAGIC));
+		blocks=ThreadLocal.withInitial(() ->
+		{
+			Block b=new Block();
+			synchronized (TraceWriter.this)
+			{
+				all.add(b);
+			}
+			return b;
+		});
+	}
+
+	/**
+	 * Record an operation.
+	 *
+	 * @param op The operation: READ, SCAN, UPDATE, INSERT or DELETE.
+	 * @param time The System.nanoTime() at which the operation was scheduled to start.
+	 * @param recordcount The number of records, for a SCAN.
+	 * @param fields The fields to read, for a READ or SCAN.
+	 * @param values The values to write, for an UPDATE or INSERT. They are not consumed.
+	 */
+	public void record(byte op, long time, String table, String key, int recordcount, Set<String> fields, Map<String,ByteIterator> values)
+	{
+		Block b=blocks.get();
+		long t=time-start;
+		if (b.count==0)
+		{
+			b.base=t;
+		}
+		long delta=t-b.base;
+		b.putByte(op);
+		b.putVarLong((delta<<1)^(delta>>63));
+		b.putString(table);
+		b.putString(key);
+		switch (op)
+		{
+		case SCAN:
+			b.putVarLong(recordcount);
+			b.putFields(fields);
+			break;
+		case READ:
+			b.putFields(fields);
+			break;
+		case UPDATE:
+		case INSERT:
+			b.putVarLong(values.size());
+			for (Map.Entry<String,ByteIterator> e : values.entrySet())
+			{
+				b.putString(e.getKey());
+				b.putVarLong(e.getValue().bytesLeft());
+			}
+			break;
+		default:
+			break;
+		}
+		b.count++;
+		if (b.pos-BLOCK_HEADER>=BLOCK_SIZE)
+		{
+			flush(b);
+		}
+	}
+
+	private synchronized void flush(Block b)
+	{
+		if (b.count==0)
+		{
+			return;
+		}
+		if (closed)
+		{
+			b.pos=BLOCK_HEADER;
+			b.count=0;
+			return;
+		}
+		ByteBuffer buf=ByteBuffer.wrap(b.buf,0,b.pos).order(ByteOrder.LITTLE_ENDIAN);
+		buf.putInt(0,b.pos-BLOCK_HEADER);
+		buf.putInt(4,b.count);
+		buf.putLong(8,b.base);
+		try
+		{
+			while (buf.hasRemaining())
+			{
+				channel.write(buf);
+			}
+		}
+		catch (IOException e)
+		{
+			System.err.println("Could not write to "+TRACE_RECORD_PROPERTY+" file, recording stopped: "+e.getMessage());
+			closed=true;
+		}
+		b.pos=BLOCK_HEADER;
+		b.count=0;
+	}
+
+	/**
+	 * Append the blocks that are not full yet and close the file. Called once, in the main client thread, after
+	 * all operations have completed.
+	 */
+	public synchronized void close() throws IOException
+	{
+		for (Block b : all)
+		{
+			flush(b);
+		}
+		closed=true;
+		channel.close();
+	}
+}
@@ -18,23 +18,67 @@
 package com.yahoo.ycsb;
 
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Utility functions.
  */
 public class Utils
 {
-  private static final Random rand = new Random();
+  /**
+   * The seed from which every thread's random stream is derived. Unset by default, in which case each run
+   * draws different values. The seed only fixes what each thread draws from its own stream: keys handed out by
+   * the counters the threads share, such as the inserts of a load or of a run and the range the run's reads
+   * are drawn from, still depend on how the threads interleave.
+   */
+  public static final String SEED_PROPERTY = "randomseed";
+
+  /** Stream indexes handed to threads that were not given one by {@link #initThread(int)}, above any thread id. */
+  private static final long UNNAMED_STREAMS = 1L << 32;
+
+  private static volatile long seed = System.nanoTime() ^ SplitMixRandom.mix64(System.currentTimeMillis());
+  private static final AtomicLong unnamed = new AtomicLong(UNNAMED_STREAMS);
   private static final ThreadLocal<Random> rng = new ThreadLocal<Random>();
 
+  /**
+   * The calling thread's random stream. Every generator draws from this, so a run with {@link #SEED_PROPERTY}
+   * set makes the same random draws in each client thread every time.
+   */
   public static Random random() {
     Random ret = rng.get();
     if(ret == null) {
-      ret = new Random(rand.nextLong());
+      ret = SplitMixRandom.stream(seed, unnamed.getAndIncrement());
       rng.set(ret);
     }
     return ret;
   }
+
+  /**
+   * Derive the streams of all threads from now on from the given seed, including the calling thread's.
+   */
+  public static void setSeed(long s) {
+    seed = s;
+    unnamed.set(UNNAMED_STREAMS);
+    rng.remove();
+  }
+
+  /**
+   * Give the calling thread the stream for a client thread id, so that its random draws depend only on the seed
+   * and the id, not on the order in which threads happen to start. Values taken from shared counters do not.
+   */
+  public static void initThread(int threadid) {
+    rng.set(SplitMixRandom.stream(seed, threadid));
+  }
+
+  /**
+   * Return a uniformly distributed value in [0, bound). Bounds that fit in an int draw a single int.
+   */
+  public static long randomLong(long bound) {
+    if (bound <= Integer.MAX_VALUE) {
+      return random().nextInt((int)bound);
+    }
+    return random().nextLong(bound);
+  }
       /**
        * Generate a random ASCII string of a given length.
        */
@@ -0,0 +1,130 @@
+/**
+ * Copyright (c) 2010 Yahoo! Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.yahoo.ycsb;
+
+import java.nio.ByteBuffer;
+import java.util.Properties;
+
+/**
+ * A slab of random printable bytes, generated once, that field values are handed out from as slices at random
+ * offsets, so that building a value costs a random offset and a small iterator instead of generating its bytes.
+ * Values overlap and repeat across records, so the pool is meant for phases where the entropy of the data
+ * does not matter, such as a load whose throughput should measure the database rather than the generator.
+ * 
+ * Properties:
+ * <UL>
+ * <LI><b>valuepool</b>: the size of the slab in bytes, or 0 to generate every value (default: 0)
+ * <LI><b>valuepool.offheap</b>: keep the slab in a direct buffer, outside the Java heap (default: false)
+ * <LI><b>compressibility</b>: the ratio the slab compresses by, see CompressibleByteIterator (default: 1)
+ * </UL>
+ */
+public class ValuePool
+{
+	public static final String VALUE_POOL_PROPERTY="valuepool";
+	public static final String VALUE_POOL_PROPERTY_DEFAULT="0";
+
+	public static final String VALUE_POOL_OFFHEAP_PROPERTY="valuepool.offheap";
+	public static final String VALUE_POOL_OFFHEAP_PROPERTY_DEFAULT="false";
+
+	/**
+	 * The slab, in one of these.
+	 */
+	final byte[] heap;
+	final ByteBuffer direct;
+
+	final int size;
+
+	/**
+	 * Generate a slab of the given size.
+	 * 
+	 * @param offheap True to keep it in a direct buffer.
+	 * @param compressibility The ratio the slab compresses by; 1 or less for random printable bytes.
+	 */
+	public ValuePool(int size, boolean offheap, double compressibility)
+	{
+		if (size<=0)
+		{
+			throw new IllegalArgumentException("The size of a value pool must be positive, got "+size);
+		}
+		this.size=size;
+		if (offheap)
+		{
+			heap=null;
+			direct=ByteBuffer.allocateDirect(size);
+			if (compressibility<=1)
+			{
+				RandomByteIterator.fill(direct,size);
+			}
+			else
+			{
+				ByteIterator data=new CompressibleByteIterator(size,compressibility);
+				byte[] chunk=new byte[65536];
+				while (data.hasNext())
+				{
+					direct.put(chunk,0,data.nextBuf(chunk,0));
+				}
+			}
+			direct.clear();
+		}
+		else
+		{
+			heap=new byte[size];
+			direct=null;
+			CompressibleByteIterator.create(size,compressibility).nextBuf(heap,0);
+		}
+	}
+
+	/**
+	 * Create the pool described by the properties.
+	 * 
+	 * @return The pool, or null if none is wanted.
+	 */
+	public static ValuePool create(Properties p) throws WorkloadException
+	{
+		long size=Long.parseLong(p.getProperty(VALUE_POOL_PROPERTY,VALUE_POOL_PROPERTY_DEFAULT));
+		if (size==0)
+		{
+			return null;
+		}
+		//the largest array the JVM will allocate
+		if ( (size<0) || (size>Integer.MAX_VALUE-8) )
+		{
+			throw new WorkloadException(VALUE_POOL_PROPERTY+" must be between 0 and "+(Integer.MAX_VALUE-8)+" bytes, got "+size);
+		}
+		return new ValuePool((int)size,Boolean.parseBoolean(p.getProperty(VALUE_POOL_OFFHEAP_PROPERTY,VALUE_POOL_OFFHEAP_PROPERTY_DEFAULT)),
+				Double.parseDouble(p.getProperty(CompressibleByteIterator.COMPRESSIBILITY_PROPERTY,CompressibleByteIterator.COMPRESSIBILITY_PROPERTY_DEFAULT)));
+	}
+
+	/**
+	 * Return a value of the given length: a slice of the slab at a random offset, or random bytes if it is
+	 * longer than the slab.
+	 */
+	public ByteIterator value(int len)
+	{
+		if (len>size)
+		{
+			return new RandomByteIterator(len);
+		}
+		int off=Utils.random().nextInt(size-len+1);
+		if (heap!=null)
+		{
+			return new ByteArrayByteIterator(heap,off,len);
+		}
+		return new ByteBufferByteIterator(direct,off,len);
+	}
+}
@@ -0,0 +1,44 @@
+/**
+ * Copyright (c) 2010 Yahoo! Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.yahoo.ycsb.generator;
+
+/**
+ * A generator of a zipfian distribution over a number of items that can change between draws, whatever the
+ * sampling algorithm: see ZipfianGenerator and RejectionInversionZipfianGenerator.
+ */
+public abstract class AbstractZipfianGenerator extends IntegerGenerator
+{
+	/**
+	 * Generate the next item. This distribution will be skewed toward lower integers.
+	 * 
+	 * @param itemcount The number of items in the distribution.
+	 * @return The next item in the sequence.
+	 */
+	public abstract long nextLong(long itemcount);
+
+	/**
+	 * Generate the next item, for item counts that fit in an int.
+	 * 
+	 * @param itemcount The number of items in the distribution.
+	 * @return The next item in the sequence.
+	 */
+	public int nextInt(int itemcount)
+	{
+		return (int)nextLong(itemcount);
+	}
+}
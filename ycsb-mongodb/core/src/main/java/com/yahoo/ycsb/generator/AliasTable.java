@@ -0,0 +1,108 @@
+/**
+ * Copyright (c) 2010 Yahoo! Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.yahoo.ycsb.generator;
+
+import com.yahoo.ycsb.Utils;
+
+/**
+ * Draws indexes with probabilities proportional to a set of weights, with Walker's alias method: the table is
+ * built once, and each draw then takes one random number and one table lookup however many weights there are.
+ * The table is only read while drawing, so it can be shared between threads once built.
+ */
+final class AliasTable
+{
+	/**
+	 * Column i is chosen uniformly; it yields index i with probability probability[i], and index alias[i]
+	 * otherwise.
+	 */
+	final double[] probability;
+	final int[] alias;
+
+	/**
+	 * Build the table with Vose's algorithm. The weights need not be normalized, but they must not be negative
+	 * and at least one must be positive.
+	 */
+	AliasTable(double[] weights)
+	{
+		int n=weights.length;
+		double sum=0;
+		for (double w : weights)
+		{
+			sum+=w;
+		}
+
+		probability=new double[n];
+		alias=new int[n];
+		double[] scaled=new double[n];
+		int[] small=new int[n];
+		int[] large=new int[n];
+		int smallcount=0;
+		int largecount=0;
+		for (int i=0; i<n; i++)
+		{
+			scaled[i]=weights[i]*n/sum;
+			alias[i]=i;
+			if (scaled[i]<1.0)
+			{
+				small[smallcount++]=i;
+			}
+			else
+			{
+				large[largecount++]=i;
+			}
+		}
+
+		//pair each underfull column with an overfull one that tops it up
+		while (smallcount>0 && largecount>0)
+		{
+			int s=small[--smallcount];
+			int l=large[--largecount];
+			probability[s]=scaled[s];
+			alias[s]=l;
+			scaled[l]=(scaled[l]+scaled[s])-1.0;
+			if (scaled[l]<1.0)
+			{
+				small[smallcount++]=l;
+			}
+			else
+			{
+				large[largecount++]=l;
+			}
+		}
+
+		//whatever is left is full, up to rounding errors
+		while (largecount>0)
+		{
+			probability[large[--largecount]]=1.0;
+		}
+		while (smallcount>0)
+		{
+			probability[small[--smallcount]]=1.0;
+		}
+	}
+
+	/**
+	 * Draw the next index from the calling thread's random stream.
+	 */
+	int next()
+	{
+		double u=Utils.random().nextDouble()*probability.length;
+		int column=(int)u;
+		return (u-column)<probability[column] ? column : alias[column];
+	}
+}
@@ -17,68 +17,48 @@
 
 package com.yahoo.ycsb.generator;
 
-import java.util.Vector;
-import java.util.Random;
+import java.util.ArrayList;
 
-import com.yahoo.ycsb.Utils;
 import com.yahoo.ycsb.WorkloadException;
 
 /**
  * Generates a distribution by choosing from a discrete set of values.
+ * 
+ * Values are drawn with Walker's alias method: the weights are turned into a table once, when values are
+ * added, and each draw then takes one random number and one table lookup however many values there are.
+ * The table is only read while drawing, so draws need no locking; add all the values before sharing the
+ * generator between threads.
  */
 public class DiscreteGenerator extends Generator
 {
-	class Pair
-	{
-		public double _weight;
-		public String _value;
-
-		Pair(double weight, String value)
-		{
-			_weight=weight;
-			_value=value;
-		}
-	}
-
-	Vector<Pair> _values;
+	ArrayList<Double> _weights;
+	ArrayList<String> _values;
 	String _lastvalue;
 
+	AliasTable _alias;
+	String[] _table;
+
 	public DiscreteGenerator()
 	{
-		_values=new Vector<Pair>();
+		_weights=new ArrayList<Double>();
+		_values=new ArrayList<String>();
 		_lastvalue=null;
 	}
 
+	/**
+	 * Generate the index of the next value in the distribution, in the order the values were added.
+	 */
+	public int nextIndex()
+	{
+		return _alias.next();
+	}
+
 	/**
 	 * Generate the next string in the distribution.
 	 */
 	public String nextString()
 	{
-		double sum=0;
-
-		for (Pair p : _values)
-		{
-			sum+=p._weight;
-		}
-
-		double val=Utils.random().nextDouble();
-
-		for (Pair p : _values)
-		{
-			if (val<p._weight/sum)
-			{
-				return p._value;
-			}
-
-			val-=p._weight/sum;
-		}
-
-		//should never get here.
-		System.out.println("oops. should not get here.");
-
-		System.exit(0);
-
-		return null;
+		return _table[nextIndex()];
 	}
 
 	/**
@@ -106,9 +86,28 @@ public class DiscreteGenerator extends Generator
 		return _lastvalue;
 	}
 
-	public void addValue(double weight, String value)
+	/**
+	 * Add a value with the given weight, and return its index, as returned by nextIndex().
+	 */
+	public int addValue(double weight, String value)
 	{
-		_values.add(new Pair(weight,value));
+		_weights.add(weight);
+		_values.add(value);
+		buildTable();
+		return _values.size()-1;
 	}
 
+	/**
+	 * Rebuild the alias table from the weights added so far.
+	 */
+	void buildTable()
+	{
+		double[] weights=new double[_weights.size()];
+		for (int i=0; i<weights.length; i++)
+		{
+			weights[i]=_weights.get(i);
+		}
+		_alias=new AliasTable(weights);
+		_table=_values.toArray(new String[weights.length]);
+	}
 }
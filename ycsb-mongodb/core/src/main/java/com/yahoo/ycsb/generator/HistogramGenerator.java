@@ -18,21 +18,26 @@ package com.yahoo.ycsb.generator;
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Random;
-
-import com.yahoo.ycsb.Utils;
-import com.yahoo.ycsb.generator.IntegerGenerator;
+import java.util.Arrays;
 
 /**
  * Generate integers according to a histogram distribution.  The histogram
  * buckets are of width one, but the values are multiplied by a block size.
  * Therefore, instead of drawing sizes uniformly at random within each
  * bucket, we always draw the largest value in the current bucket, so the value
- * drawn is always a multiple of block_size.
+ * drawn is always a multiple of block_size: bucket i yields (i+1)*block_size.
  * 
  * The minimum value this distribution returns is block_size (not zero).
  * 
+ * The histogram file starts with a "BlockSize" line, followed by one line per
+ * bucket with the bucket number and its count, separated by a tab or spaces.
+ * Buckets may come in any order, buckets left out have a count of zero, and
+ * blank lines and lines starting with # are skipped, so a size distribution
+ * exported from production can be used as it is, however many buckets it has.
+ * 
+ * Buckets are drawn from an alias table, so a draw costs the same whatever the
+ * number of buckets.
+ * 
  * Modified Nov 19 2010 by sears
  * 
  * @author snjones
@@ -43,39 +48,63 @@ public class HistogramGenerator extends IntegerGenerator {
 	long block_size;
 	long[] buckets;
 	long area;
-	long weighted_area = 0;
+	double weighted_area = 0;
 	double mean_size = 0;
+
+	/** cumulative[i] is the count of buckets 0 to i, for percentiles. */
+	long[] cumulative;
+	AliasTable table;
 	
 	public HistogramGenerator(String histogramfile) throws IOException {
-	BufferedReader in = new BufferedReader(new FileReader(histogramfile));
-	String str;
-	String[] line;
-	
-	ArrayList<Integer> a = new ArrayList<Integer>();
+		try (BufferedReader in = new BufferedReader(new FileReader(histogramfile))) {
+			String str;
+			String[] line;
 
-	str = in.readLine();
-	if(str == null) {
-		throw new IOException("Empty input file!\n");
-	}
-	line = str.split("\t");
-	if(line[0].compareTo("BlockSize") != 0) {
-		throw new IOException("First line of histogram is not the BlockSize!\n");
-	}
-	block_size = Integer.parseInt(line[1]);
-	
-	while((str = in.readLine()) != null){
-		// [0] is the bucket, [1] is the value
-		line = str.split("\t");
-		
-		a.add(Integer.parseInt(line[0]), Integer.parseInt(line[1]));
-	}
-	buckets = new long[a.size()];
-	for(int i = 0; i < a.size(); i++) {
-		buckets[i] = a.get(i);
-	}
+			str = in.readLine();
+			if(str == null) {
+				throw new IOException("Empty input file!\n");
+			}
+			line = str.trim().split("\\s+");
+			if(line[0].compareTo("BlockSize") != 0 || line.length < 2) {
+				throw new IOException("First line of histogram is not the BlockSize!\n");
+			}
+			block_size = Long.parseLong(line[1]);
 
-	in.close();
-	init();
+			long[] counts = new long[1024];
+			int n = 0;
+			int lineno = 1;
+			while((str = in.readLine()) != null){
+				lineno++;
+				str = str.trim();
+				if(str.isEmpty() || str.charAt(0) == '#') {
+					continue;
+				}
+				// [0] is the bucket, [1] is the value
+				line = str.split("\\s+");
+				int bucket;
+				long count;
+				try {
+					bucket = Integer.parseInt(line[0]);
+					count = Long.parseLong(line[1]);
+				} catch(NumberFormatException | ArrayIndexOutOfBoundsException e) {
+					throw new IOException("Line "+lineno+" of histogram is not a bucket and a count: "+str);
+				}
+				if(bucket < 0 || count < 0) {
+					throw new IOException("Line "+lineno+" of histogram has a negative bucket or count: "+str);
+				}
+				if(bucket >= counts.length) {
+					counts = Arrays.copyOf(counts, Math.max(counts.length * 2, bucket + 1));
+				}
+				counts[bucket] += count;
+				n = Math.max(n, bucket + 1);
+			}
+			buckets = Arrays.copyOf(counts, n);
+		}
+		try {
+			init();
+		} catch(IllegalArgumentException e) {
+			throw new IOException(e.getMessage());
+		}
 	}
 
 	public HistogramGenerator(long[] buckets, int block_size) {
@@ -83,32 +112,56 @@ public class HistogramGenerator extends IntegerGenerator {
 		this.buckets = buckets;
 		init();
 	}
+
 	private void init() {
+		cumulative = new long[buckets.length];
+		double[] weights = new double[buckets.length];
 		for(int i = 0; i < buckets.length; i++) {
+			if(buckets[i] < 0) {
+				throw new IllegalArgumentException("Histogram bucket "+i+" has a negative count");
+			}
 			area += buckets[i];
-			weighted_area = i * buckets[i];
+			weighted_area += (i+1) * (double)buckets[i];
+			cumulative[i] = area;
+			weights[i] = buckets[i];
+		}
+		if(area <= 0) {
+			throw new IllegalArgumentException("Histogram has no values");
 		}
 		// calculate average file size
-		mean_size = ((double)block_size) * ((double)weighted_area) / (double)(area);
+		mean_size = ((double)block_size) * weighted_area / (double)(area);
+		table = new AliasTable(weights);
 	}
 
 	@Override
-	public int nextInt() {
-		int number = Utils.random().nextInt((int)area);
-		int i;
-		
-		for(i = 0; i < (buckets.length - 1); i++){
-			number -= buckets[i];
-			if(number <= 0){
-				return (int)((i+1)*block_size);
-			}
-		}
-		
-		return (int)(i * block_size);
+	public long nextLong() {
+		long value = (table.next() + 1) * block_size;
+		setLastLong(value);
+		return value;
 	}
 
 	@Override
 	public double mean() {
 		return mean_size;
 	}
+
+	/**
+	 * Return the smallest value that at least the given percentage of the values this generator returns
+	 * are at or below.
+	 */
+	public long percentile(double percent) {
+		// the rank of that value among all of them, counting from 1
+		long rank = Math.max(1, (long)Math.ceil(percent / 100 * area));
+		int lo = 0;
+		int hi = cumulative.length - 1;
+		while(lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if(cumulative[mid] < rank) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return (lo + 1) * block_size;
+	}
 }
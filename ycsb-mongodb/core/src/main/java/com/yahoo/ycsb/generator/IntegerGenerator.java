@@ -18,35 +18,44 @@
 package com.yahoo.ycsb.generator;
 
 /**
- * A generator that is capable of generating ints as well as strings
+ * A generator that is capable of generating integers as well as strings. Values are 64-bit; nextInt() and lastInt()
+ * are shorthands for generators whose values are known to fit in an int.
  * 
  * @author cooperb
  *
  */
 public abstract class IntegerGenerator extends Generator 
 {
-	int lastint;
+	long lastint;
 	
 	/**
 	 * Set the last value generated. IntegerGenerator subclasses must use this call
-	 * to properly set the last string value, or the lastString() and lastInt() calls won't work.
+	 * to properly set the last string value, or the lastString() and lastLong() calls won't work.
 	 */
-	protected void setLastInt(int last)
+	protected void setLastLong(long last)
 	{
 		lastint=last;
 	}
 	
 	/**
-	 * Return the next value as an int. When overriding this method, be sure to call setLastString() properly, or the lastString() call won't work.
+	 * Return the next value as a long. When overriding this method, be sure to call setLastLong() properly, or the lastString() call won't work.
 	 */
-	public abstract int nextInt();
+	public abstract long nextLong();
+
+	/**
+	 * Return the next value as an int, for generators whose values fit in an int.
+	 */
+	public int nextInt()
+	{
+		return (int)nextLong();
+	}
 	
 	/**
 	 * Generate the next string in the distribution.
 	 */
 	public String nextString()
 	{
-		return ""+nextInt();
+		return ""+nextLong();
 	}
 	
 	/**
@@ -57,17 +66,25 @@ public abstract class IntegerGenerator extends Generator
 	@Override
 	public String lastString()
 	{
-		return ""+lastInt();
+		return ""+lastLong();
 	}
 	
 	/**
-	 * Return the previous int generated by the distribution. This call is unique to IntegerGenerator subclasses, and assumes
-	 * IntegerGenerator subclasses always return ints for nextInt() (e.g. not arbitrary strings).
+	 * Return the previous value generated by the distribution. This call is unique to IntegerGenerator subclasses, and assumes
+	 * IntegerGenerator subclasses always return integers for nextLong() (e.g. not arbitrary strings).
 	 */
-	public int lastInt()
+	public long lastLong()
 	{
 		return lastint;
 	}
+
+	/**
+	 * Return the previous value generated by the distribution as an int, for generators whose values fit in an int.
+	 */
+	public int lastInt()
+	{
+		return (int)lastLong();
+	}
 	/**
 	 * Return the expected value (mean) of the values this generator will return.
 	 */
@@ -0,0 +1,283 @@
+/**
+ * Copyright (c) 2010 Yahoo! Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.yahoo.ycsb.generator;
+
+import com.yahoo.ycsb.Utils;
+
+/**
+ * A generator of a zipfian distribution that takes constant time to construct and to sample, for any number of items
+ * and any zipfian constant (including 1). Item i (counting from 0) is drawn with probability proportional to
+ * 1/(i+1)^theta.
+ * 
+ * Unlike ZipfianGenerator, no zeta constant is needed, so there is no O(n) setup, and changing the number of items
+ * with nextLong(itemcount) only recomputes one constant. Samples are drawn by rejection-inversion: invert the
+ * integral of a continuous hat function that bounds the distribution, and accept the rounded result with the ratio
+ * of the two; on average a sample needs very few more than one attempt.
+ *
+ * The algorithm is from "Rejection-Inversion to Generate Variates from Monotone Discrete Distributions",
+ * Wolfgang Hormann and Gerhard Derflinger, ACM TOMACS 6(3), 1996.
+ */
+public class RejectionInversionZipfianGenerator extends AbstractZipfianGenerator
+{
+	/**
+	 * The parameters that depend on the number of items. Replaced as a whole when the item count changes, so
+	 * threads sampling concurrently always see a consistent pair.
+	 */
+	static class Range
+	{
+		final long n;
+		final double hintegraln;
+
+		Range(long n, double hintegraln)
+		{
+			this.n=n;
+			this.hintegraln=hintegraln;
+		}
+	}
+
+	/**
+	 * H(1.5)-1, the lower end of the range the hat integral is inverted over.
+	 */
+	final double hintegralx1;
+
+	/**
+	 * Rounded results within this distance above x are accepted without evaluating the hat integral.
+	 */
+	final double s;
+
+	volatile Range range;
+
+	/**
+	 * Min item to generate.
+	 */
+	final long base;
+
+	/**
+	 * The zipfian constant.
+	 */
+	final double theta;
+
+	/**
+	 * The number of items nextLong() draws from.
+	 */
+	final long items;
+
+	/**
+	 * Whether a smaller item count passed to nextLong(itemcount) is kept for the following draws, as for
+	 * ZipfianGenerator.
+	 */
+	boolean allowitemcountdecrease=false;
+
+	/**
+	 * Create a zipfian generator for the specified number of items.
+	 * @param _items The number of items in the distribution.
+	 */
+	public RejectionInversionZipfianGenerator(long _items)
+	{
+		this(0,_items-1);
+	}
+
+	/**
+	 * Create a zipfian generator for items between min and max.
+	 * @param _min The smallest integer to generate in the sequence.
+	 * @param _max The largest integer to generate in the sequence.
+	 */
+	public RejectionInversionZipfianGenerator(long _min, long _max)
+	{
+		this(_min,_max,ZipfianGenerator.ZIPFIAN_CONSTANT);
+	}
+
+	/**
+	 * Create a zipfian generator for items between min and max (inclusive) for the specified zipfian constant.
+	 * @param min The smallest integer to generate in the sequence.
+	 * @param max The largest integer to generate in the sequence.
+	 * @param _zipfianconstant The zipfian constant to use; any positive value.
+	 */
+	public RejectionInversionZipfianGenerator(long min, long max, double _zipfianconstant)
+	{
+		if (_zipfianconstant<=0)
+		{
+			throw new IllegalArgumentException("The zipfian constant must be positive, not "+_zipfianconstant);
+		}
+		items=max-min+1;
+		base=min;
+		theta=_zipfianconstant;
+		hintegralx1=hIntegral(1.5)-1.0;
+		s=2.0-hIntegralInverse(hIntegral(2.5)-h(2.0));
+		range=new Range(items,hIntegral(items+0.5));
+		nextLong();
+	}
+
+	/**
+	 * Generate the next item as a long.
+	 * 
+	 * @param itemcount The number of items in the distribution.
+	 * @return The next item in the sequence.
+	 */
+	@Override
+	public long nextLong(long itemcount)
+	{
+		Range r=range;
+		if (r.n!=itemcount)
+		{
+			//cheap enough to do per call, but keep the larger count for the next caller, since item counts
+			//normally only grow and a caller with a stale smaller count shouldn't make everyone recompute
+			r=new Range(itemcount,hIntegral(itemcount+0.5));
+			if ( (itemcount>range.n) || allowitemcountdecrease )
+			{
+				range=r;
+			}
+		}
+
+		long k;
+		while (true)
+		{
+			double u=r.hintegraln+Utils.random().nextDouble()*(hintegralx1-r.hintegraln);
+			double x=hIntegralInverse(u);
+			k=(long)(x+0.5);
+			if (k<1)
+			{
+				k=1;
+			}
+			else if (k>r.n)
+			{
+				k=r.n;
+			}
+			if ( (k-x<=s) || (u>=hIntegral(k+0.5)-h(k)) )
+			{
+				break;
+			}
+		}
+
+		long ret=base+k-1;
+		setLastLong(ret);
+		return ret;
+	}
+
+	/**
+	 * Return the next value, skewed by the Zipfian distribution: min is the most popular.
+	 */
+	@Override
+	public long nextLong()
+	{
+		return nextLong(items);
+	}
+
+	/**
+	 * The mean of the items nextLong() draws: base-1 plus sum(k^(1-theta))/sum(k^-theta) over k=1..items. The
+	 * sums are approximated in constant time, like the sampling.
+	 */
+	@Override
+	public double mean()
+	{
+		return base-1+powerSum(items,theta-1.0)/powerSum(items,theta);
+	}
+
+	/**
+	 * The number of leading terms of a power sum that are added up directly. From there on the Euler-Maclaurin
+	 * approximation of the rest is accurate to about 1e-10 relative.
+	 */
+	static final int POWER_SUM_TERMS=10;
+
+	/**
+	 * sum(k^-e) for k=1..n: the first POWER_SUM_TERMS terms directly, then the integral of the rest with the
+	 * Euler-Maclaurin corrections up to the third derivative.
+	 */
+	static double powerSum(long n, double e)
+	{
+		double sum=0;
+		long m=Math.min(n,POWER_SUM_TERMS);
+		for (long k=1; k<=m; k++)
+		{
+			sum+=Math.exp(-e*Math.log(k));
+		}
+		if (n<=m)
+		{
+			return sum;
+		}
+		double a=m+1;
+		double b=n;
+		double loga=Math.log(a);
+		double logb=Math.log(b);
+		double fa=Math.exp(-e*loga);
+		double fb=Math.exp(-e*logb);
+		//the integral of x^-e from a to b
+		sum+=helper2((1.0-e)*logb)*logb-helper2((1.0-e)*loga)*loga;
+		sum+=(fa+fb)/2.0;
+		//B2/2! (f'(b)-f'(a)), with f'(x)=-e*x^(-e-1) and B2=1/6
+		sum+=-e*(fb/b-fa/a)/12.0;
+		//B4/4! (f'''(b)-f'''(a)), with f'''(x)=-e(e+1)(e+2)*x^(-e-3) and B4=-1/30
+		sum-=-e*(e+1.0)*(e+2.0)*(fb/(b*b*b)-fa/(a*a*a))/720.0;
+		return sum;
+	}
+
+	/**
+	 * The hat function, h(x) = 1/x^theta.
+	 */
+	double h(double x)
+	{
+		return Math.exp(-theta*Math.log(x));
+	}
+
+	/**
+	 * H(x), the integral of h, up to a constant: (x^(1-theta)-1)/(1-theta), or log(x) when theta is 1.
+	 */
+	double hIntegral(double x)
+	{
+		double logx=Math.log(x);
+		return helper2((1.0-theta)*logx)*logx;
+	}
+
+	/**
+	 * The inverse of H.
+	 */
+	double hIntegralInverse(double x)
+	{
+		double t=x*(1.0-theta);
+		if (t<-1.0)
+		{
+			//only reachable through rounding errors
+			t=-1.0;
+		}
+		return Math.exp(helper1(t)*x);
+	}
+
+	/**
+	 * log(1+x)/x, continuous at 0.
+	 */
+	static double helper1(double x)
+	{
+		if (Math.abs(x)>1e-8)
+		{
+			return Math.log1p(x)/x;
+		}
+		return 1.0-x*(0.5-x*(1.0/3.0-0.25*x));
+	}
+
+	/**
+	 * (exp(x)-1)/x, continuous at 0.
+	 */
+	static double helper2(double x)
+	{
+		if (Math.abs(x)>1e-8)
+		{
+			return Math.expm1(x)/x;
+		}
+		return 1.0+x*0.5*(1.0+x*1.0/3.0*(1.0+0.25*x));
+	}
+}
@@ -34,7 +34,7 @@ public class ScrambledZipfianGenerator extends IntegerGenerator
         public static final double USED_ZIPFIAN_CONSTANT=0.99;
 	public static final long ITEM_COUNT=10000000000L;
 	
-	ZipfianGenerator gen;
+	AbstractZipfianGenerator gen;
 	long _min,_max,_itemcount;
 	
 	/******************************* Constructors **************************************/
@@ -80,11 +80,27 @@ public class ScrambledZipfianGenerator extends IntegerGenerator
 	 * @param _zipfianconstant The zipfian constant to use.
 	 */
         public ScrambledZipfianGenerator(long min, long max, double _zipfianconstant)
+	{
+		this(min,max,_zipfianconstant,false);
+	}
+
+	/**
+	 * Create a zipfian generator for items between min and max (inclusive) for the specified zipfian constant,
+	 * optionally sampling with a RejectionInversionZipfianGenerator, which is quick for any zipfian constant.
+	 * @param min The smallest integer to generate in the sequence.
+	 * @param max The largest integer to generate in the sequence.
+	 * @param _zipfianconstant The zipfian constant to use.
+	 * @param rejectioninversion True to sample by rejection-inversion.
+	 */
+	public ScrambledZipfianGenerator(long min, long max, double _zipfianconstant, boolean rejectioninversion)
 	{
 		_min=min;
 		_max=max;
 		_itemcount=_max-_min+1;
-		if (_zipfianconstant == USED_ZIPFIAN_CONSTANT) 
+		if (rejectioninversion)
+		{
+		    gen=new RejectionInversionZipfianGenerator(0,ITEM_COUNT,_zipfianconstant);
+		} else if (_zipfianconstant == USED_ZIPFIAN_CONSTANT) 
 		{
 		    gen=new ZipfianGenerator(0,ITEM_COUNT,_zipfianconstant,ZETAN);
 		} else {
@@ -94,22 +110,15 @@ public class ScrambledZipfianGenerator extends IntegerGenerator
 	
 	/**************************************************************************************************/
 	
-	/**
-	 * Return the next int in the sequence.
-	 */
-	@Override
-	public int nextInt() {
-		return (int)nextLong();
-	}
-
 	/**
 	 * Return the next long in the sequence.
 	 */
+	@Override
 	public long nextLong()
 	{
 		long ret=gen.nextLong();
 		ret=_min+Utils.FNVhash64(ret)%_itemcount;
-		setLastInt((int)ret);
+		setLastLong(ret);
 		return ret;
 	}
 	
@@ -132,6 +141,6 @@ public class ScrambledZipfianGenerator extends IntegerGenerator
 	 */
 	@Override
 	public double mean() {
-		return ((double)(((long)_min) +(long)_max))/2.0;
+		return (_min+(double)_max)/2.0;
 	}
 }
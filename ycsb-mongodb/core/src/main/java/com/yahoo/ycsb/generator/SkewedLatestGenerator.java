@@ -23,24 +23,40 @@ package com.yahoo.ycsb.generator;
 public class SkewedLatestGenerator extends IntegerGenerator
 {
 	CounterGenerator _basis;
-	ZipfianGenerator _zipfian;
+	AbstractZipfianGenerator _zipfian;
 
 	public SkewedLatestGenerator(CounterGenerator basis)
+	{
+		this(basis,false);
+	}
+
+	/**
+	 * @param rejectioninversion True to sample with a RejectionInversionZipfianGenerator, which needs no O(n) setup
+	 * or incremental work as the basis grows.
+	 */
+	public SkewedLatestGenerator(CounterGenerator basis, boolean rejectioninversion)
 	{
 		_basis=basis;
-		_zipfian=new ZipfianGenerator(_basis.lastInt());
-		nextInt();
+		if (rejectioninversion)
+		{
+			_zipfian=new RejectionInversionZipfianGenerator(_basis.lastLong());
+		}
+		else
+		{
+			_zipfian=new ZipfianGenerator(_basis.lastLong());
+		}
+		nextLong();
 	}
 
 	/**
 	 * Generate the next string in the distribution, skewed Zipfian favoring the items most recently returned by the basis generator.
 	 */
-	public int nextInt()
+	public long nextLong()
 	{
-		int max=_basis.lastInt();
-		int nextint=max-_zipfian.nextInt(max);
-		setLastInt(nextint);
-		return nextint;
+		long max=_basis.lastLong();
+		long next=max-_zipfian.nextLong(max);
+		setLastLong(next);
+		return next;
 	}
 
 	public static void main(String[] args)
@@ -0,0 +1,244 @@
+/**
+ * Copyright (c) 2010 Yahoo! Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.yahoo.ycsb.generator;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * A persistent cache of the zeta constants computed by ZipfianGenerator, zeta(n,theta) = sum of 1/i^theta for i
+ * from 1 to n. Computing zeta takes time proportional to n, which is minutes for billions of items, so each value
+ * computed is appended to a file and reused by later runs. A value that isn't cached is computed incrementally
+ * from the largest cached value with the same theta and a smaller n, which gives exactly the same result as
+ * computing it from scratch.
+ * 
+ * Each line of the file holds "theta n zeta crc", where crc is a CRC32 of the rest of the line. Lines are
+ * appended under an exclusive file lock and read under a shared one, so several clients can share the file.
+ * A line whose checksum does not match, or whose zeta is outside the bounds given by the integral of
+ * 1/x^theta, is ignored, so a torn or corrupted entry is recomputed rather than trusted.
+ * 
+ * The cache is off unless a file is set.
+ */
+public class ZetaCache
+{
+	/**
+	 * Item counts below this are computed directly; they take well under a millisecond.
+	 */
+	public static final long MIN_CACHED_ITEMS=100000;
+
+	static String file=null;
+
+	/**
+	 * The cached values, by theta and then n. Loaded from the file on first use.
+	 */
+	static HashMap<Double,TreeMap<Long,Double>> values=null;
+
+	/**
+	 * Set the file backing the cache, or null to keep values in memory only.
+	 */
+	public static synchronized void setFile(String path)
+	{
+		file=path;
+		values=null;
+	}
+
+	/**
+	 * Return zeta(n,theta), computing and caching it if needed.
+	 */
+	public static synchronized double zeta(long n, double theta)
+	{
+		if (values==null)
+		{
+			load();
+		}
+
+		TreeMap<Long,Double> cached=values.get(theta);
+		if (cached==null)
+		{
+			cached=new TreeMap<Long,Double>();
+			values.put(theta,cached);
+		}
+
+		Map.Entry<Long,Double> floor=cached.floorEntry(n);
+		if (floor!=null && floor.getKey()==n)
+		{
+			return floor.getValue();
+		}
+
+		double zeta;
+		if (floor==null)
+		{
+			zeta=ZipfianGenerator.zetastatic(0,n,theta,0);
+		}
+		else
+		{
+			zeta=ZipfianGenerator.zetastatic(floor.getKey(),n,theta,floor.getValue());
+		}
+		cached.put(n,zeta);
+		save(theta,n,zeta);
+		return zeta;
+	}
+
+	static void load()
+	{
+		values=new HashMap<Double,TreeMap<Long,Double>>();
+		if (file==null)
+		{
+			return;
+		}
+
+		try (FileChannel channel=FileChannel.open(Paths.get(file),StandardOpenOption.READ))
+		{
+			channel.lock(0,Long.MAX_VALUE,true);
+			BufferedReader in=new BufferedReader(Channels.newReader(channel,StandardCharsets.US_ASCII));
+			String line;
+			int rejected=0;
+			while ((line=in.readLine())!=null)
+			{
+				if (!parse(line.trim()))
+				{
+					rejected++;
+				}
+			}
+			if (rejected>0)
+			{
+				System.err.println("Ignored "+rejected+" invalid entries of zeta cache "+file);
+			}
+		}
+		catch (NoSuchFileException e)
+		{
+			//no cache yet
+		}
+		catch (IOException e)
+		{
+			System.err.println("Could not read zeta cache "+file+": "+e.getMessage());
+		}
+	}
+
+	/**
+	 * Add the value on one line of the file to the cache, returning false if the line is not valid.
+	 */
+	static boolean parse(String line)
+	{
+		String[] parts=line.split(" ");
+		if (parts.length!=4)
+		{
+			return false;
+		}
+		double theta;
+		long n;
+		double zeta;
+		try
+		{
+			if (Long.parseLong(parts[3],16)!=checksum(parts[0]+" "+parts[1]+" "+parts[2]))
+			{
+				return false;
+			}
+			theta=Double.parseDouble(parts[0]);
+			n=Long.parseLong(parts[1]);
+			zeta=Double.parseDouble(parts[2]);
+		}
+		catch (NumberFormatException e)
+		{
+			return false;
+		}
+		if (!plausible(theta,n,zeta))
+		{
+			return false;
+		}
+		TreeMap<Long,Double> cached=values.get(theta);
+		if (cached==null)
+		{
+			cached=new TreeMap<Long,Double>();
+			values.put(theta,cached);
+		}
+		cached.put(n,zeta);
+		return true;
+	}
+
+	/**
+	 * Check zeta(n,theta) against the integral of 1/x^theta, which bounds the sum from below between 1 and n+1,
+	 * and from above, after the first term, between 1 and n. The bounds are less than one apart, which is
+	 * enough to reject a torn number or an entry for another n.
+	 */
+	static boolean plausible(double theta, long n, double zeta)
+	{
+		if (!(theta>0) || Double.isInfinite(theta) || n<1)
+		{
+			return false;
+		}
+		double lower=integral(n+1.0,theta);
+		double upper=1.0+integral(n,theta);
+		return (zeta>=lower*(1-1e-9)) && (zeta<=upper*(1+1e-9));
+	}
+
+	/**
+	 * The integral of 1/x^theta from 1 to x.
+	 */
+	static double integral(double x, double theta)
+	{
+		double logx=Math.log(x);
+		if (theta==1.0)
+		{
+			return logx;
+		}
+		return Math.expm1((1.0-theta)*logx)/(1.0-theta);
+	}
+
+	static long checksum(String s)
+	{
+		CRC32 crc=new CRC32();
+		crc.update(s.getBytes(StandardCharsets.US_ASCII));
+		return crc.getValue();
+	}
+
+	static void save(double theta, long n, double zeta)
+	{
+		if (file==null)
+		{
+			return;
+		}
+
+		String entry=theta+" "+n+" "+zeta;
+		ByteBuffer line=ByteBuffer.wrap((entry+" "+Long.toHexString(checksum(entry))+"\n").getBytes(StandardCharsets.US_ASCII));
+		try (FileChannel channel=FileChannel.open(Paths.get(file),StandardOpenOption.CREATE,StandardOpenOption.WRITE,StandardOpenOption.APPEND))
+		{
+			//whole lines only, even with other clients appending at the same time
+			channel.lock();
+			while (line.hasRemaining())
+			{
+				channel.write(line);
+			}
+		}
+		catch (IOException e)
+		{
+			System.err.println("Could not write zeta cache "+file+": "+e.getMessage());
+		}
+	}
+}
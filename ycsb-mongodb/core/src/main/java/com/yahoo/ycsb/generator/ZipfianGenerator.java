@@ -35,11 +35,14 @@ import com.yahoo.ycsb.Utils;
  * for 100 million objects). This is because certain mathematical values need to be computed to properly generate a zipfian skew, and one of those
  * values (zeta) is a sum sequence from 1 to n, where n is the itemcount. Note that if you increase the number of items in the set, we can compute
  * a new zeta incrementally, so it should be fast unless you have added millions of items. However, if you decrease the number of items, we recompute
- * zeta from scratch, so this can take a long time. 
+ * zeta from scratch, so this can take a long time. Zeta values for large item counts are kept in a {@link ZetaCache}, so this only
+ * happens the first time a given item count and zipfian constant are used.
+ *
+ * {@link RejectionInversionZipfianGenerator} samples the same distribution without computing zeta at all.
  *
  * The algorithm used here is from "Quickly Generating Billion-Record Synthetic Databases", Jim Gray et al, SIGMOD 1994.
  */
-public class ZipfianGenerator extends IntegerGenerator
+public class ZipfianGenerator extends AbstractZipfianGenerator
 {     
 	public static final double ZIPFIAN_CONSTANT=0.99;
 
@@ -148,7 +151,7 @@ public class ZipfianGenerator extends IntegerGenerator
 		eta=(1-Math.pow(2.0/items,1-theta))/(1-zeta2theta/zetan);
 		
 		//System.out.println("XXXX 3 XXXX");
-		nextInt();
+		nextLong();
 		//System.out.println("XXXX 4 XXXX");
 	}
 	
@@ -175,6 +178,10 @@ public class ZipfianGenerator extends IntegerGenerator
 	 */
 	static double zetastatic(long n, double theta)
 	{
+		if (n>=ZetaCache.MIN_CACHED_ITEMS)
+		{
+			return ZetaCache.zeta(n,theta);
+		}
 		return zetastatic(0,n,theta,0);
 	}
 	
@@ -285,7 +292,7 @@ public class ZipfianGenerator extends IntegerGenerator
 		}
 
 		long ret=base+(long)((itemcount) * Math.pow(eta*u - eta + 1, alpha));
-		setLastInt((int)ret);
+		setLastLong(ret);
 		return ret;
 	}
 
@@ -295,16 +302,6 @@ public class ZipfianGenerator extends IntegerGenerator
 	 * popular items scattered throughout the item space, use ScrambledZipfianGenerator instead.
 	 */
 	@Override
-	public int nextInt() 
-	{
-		return (int)nextLong(items);
-	}
-
-	/**
-	 * Return the next value, skewed by the Zipfian distribution. The 0th item will be the most popular, followed by the 1st, followed
-	 * by the 2nd, etc. (Or, if min != 0, the min-th item is the most popular, the min+1th item the next most popular, etc.) If you want the
-	 * popular items scattered throughout the item space, use ScrambledZipfianGenerator instead.
-	 */
 	public long nextLong()
 	{
 		return nextLong(items);
@@ -0,0 +1,185 @@
+/**
+ * Copyright (c) 2010 Yahoo! Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.yahoo.ycsb.measurements;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.DecimalFormat;
+import java.util.HashMap;
+import java.util.Properties;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A thread that logs the latency distribution of every metric over each interval of the run, to a gzipped
+ * CSV file, so that latency spikes can be lined up with events on the server such as checkpoints or elections.
+ * 
+ * Every interval the thread takes a snapshot of each metric and subtracts the previous one, so it only keeps
+ * one snapshot per metric however long the run. Each line has the wall clock time at the end of the interval,
+ * the metric, the number of operations and the throughput in the interval, and the 50th, 99th and 99.9th
+ * percentile and maximum latencies in microseconds. The percentiles are left empty for measurement types that
+ * do not keep the distribution (timeseries). The file is flushed after each interval, so it can be read while
+ * the run goes on, with e.g. zcat. Each phase of a plan is measured from scratch: the partial interval at
+ * the end of a phase other than the last is not logged, and the throughput of the first interval of a phase is
+ * computed from the start of the phase.
+ */
+public class IntervalLog extends Thread
+{
+	/**
+	 * The file to log to. Unset by default, which logs nothing.
+	 */
+	public static final String INTERVAL_LOG_PROPERTY="measurement.intervallog";
+
+	/**
+	 * The length of an interval, in milliseconds.
+	 */
+	public static final String INTERVAL_PROPERTY="measurement.intervallog.interval";
+
+	public static final String INTERVAL_PROPERTY_DEFAULT="1000";
+
+	static final double[] PERCENTILES={50,99,99.9,100};
+
+	private final Writer out;
+	private final long intervalns;
+	private final HashMap<String,OneMeasurement> previous=new HashMap<String,OneMeasurement>();
+	private Measurements current;
+	private long last;
+	private final DecimalFormat d=new DecimalFormat("#.##");
+
+	/**
+	 * Start logging, if the properties ask for it.
+	 * 
+	 * @return The running thread, to close at the end of the run, or null.
+	 */
+	public static IntervalLog start(Properties props) throws IOException
+	{
+		String file=props.getProperty(INTERVAL_LOG_PROPERTY);
+		if (file==null)
+		{
+			return null;
+		}
+		long interval=Long.parseLong(props.getProperty(INTERVAL_PROPERTY,INTERVAL_PROPERTY_DEFAULT));
+		if (interval<=0)
+		{
+			throw new IllegalArgumentException(INTERVAL_PROPERTY+" must be positive, got "+interval);
+		}
+		IntervalLog log=new IntervalLog(new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(file),true),StandardCharsets.UTF_8)),interval);
+		log.start();
+		return log;
+	}
+
+	IntervalLog(Writer out, long interval) throws IOException
+	{
+		super("IntervalLog");
+		setDaemon(true);
+		this.out=out;
+		this.intervalns=interval*1000000;
+		last=System.currentTimeMillis();
+		out.write("#Interval(ms): "+interval+"\n");
+		out.write("Timestamp(ms),Metric,Operations,Throughput(ops/sec),50thPercentileLatency(us),99thPercentileLatency(us),99.9thPercentileLatency(us),MaxLatency(us)\n");
+	}
+
+	@Override
+	public void run()
+	{
+		long next=System.nanoTime()+intervalns;
+		try
+		{
+			while (true)
+			{
+				long wait=next-System.nanoTime();
+				if (wait>0)
+				{
+					Thread.sleep(wait/1000000,(int)(wait%1000000));
+				}
+				next+=intervalns;
+				log();
+			}
+		}
+		catch (InterruptedException e)
+		{
+			//closing
+		}
+		catch (IOException e)
+		{
+			System.err.println("Could not write to "+INTERVAL_LOG_PROPERTY+" file, logging stopped: "+e.getMessage());
+		}
+	}
+
+	/**
+	 * Log the interval since the previous one.
+	 */
+	void log() throws IOException
+	{
+		Measurements measurements=Measurements.getMeasurements();
+		if (measurements!=current)
+		{
+			//a new phase, measured from scratch
+			previous.clear();
+			current=measurements;
+		}
+		long now=System.currentTimeMillis();
+		//the first interval of a phase starts with the phase, not with the last interval of the one before
+		long start=Math.max(last,measurements.starttime);
+		double seconds=Math.max(now-start,1)/1000.0;
+		last=now;
+		for (String metric : measurements.getMetricNames())
+		{
+			OneMeasurement snapshot=measurements.getSnapshot(metric);
+			OneMeasurement before=previous.put(metric,snapshot);
+			long operations=snapshot.getOperations()-((before==null) ? 0 : before.getOperations());
+			if (operations<=0)
+			{
+				continue;
+			}
+			StringBuilder line=new StringBuilder();
+			line.append(now).append(',').append(metric).append(',').append(operations).append(',').append(d.format(operations/seconds));
+			long[] latencies=snapshot.getPercentileLatencies(before,PERCENTILES);
+			for (int i=0; i<PERCENTILES.length; i++)
+			{
+				line.append(',');
+				if (latencies!=null)
+				{
+					line.append(latencies[i]);
+				}
+			}
+			out.write(line.append('\n').toString());
+		}
+		out.flush();
+	}
+
+	/**
+	 * Stop the thread, log the last, partial interval and close the file.
+	 */
+	public void close() throws IOException
+	{
+		interrupt();
+		try
+		{
+			join();
+		}
+		catch (InterruptedException e)
+		{
+		}
+		log();
+		out.close();
+	}
+}
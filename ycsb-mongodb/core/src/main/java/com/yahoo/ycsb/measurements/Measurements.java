@@ -20,12 +20,28 @@ package com.yahoo.ycsb.measurements;
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantLock;
 
 import com.yahoo.ycsb.measurements.exporter.MeasurementsExporter;
 
 /**
  * Collects latency measurements, and reports them when requested.
  * 
+ * Each thread records into its own set of OneMeasurement objects, so measure() and reportReturnCode()
+ * never take a lock on the hot path. The per-thread recorders are merged on demand by getSummary() and
+ * exportMeasurements(). Virtual threads are too numerous to each have their own recorders, so they share a
+ * fixed number of stripes of recorders instead, locking the stripe while they record.
+ * 
+ * When the client is throttled, the time an operation should have started according to the throttle
+ * schedule can be set with setIntendedStartTimeNs(). Depending on the "measurement.interval" property,
+ * latency is then measured from the actual start of the operation ("op", the default), from its intended
+ * start ("intended"), or both. Intended latencies are reported as "Intended-" series; they include any time
+ * the operation spent waiting behind earlier slow operations, which the plain series hides.
+ * 
  * @author cooperb
  *
  */
@@ -35,7 +51,21 @@ public class Measurements
 
 	private static final String MEASUREMENT_TYPE_DEFAULT = "histogram";
 
-	static Measurements singleton=null;
+	public static final String MEASUREMENT_INTERVAL = "measurement.interval";
+
+	private static final String MEASUREMENT_INTERVAL_DEFAULT = "op";
+
+	/**
+	 * Prefix of the metric names used for latencies measured from the intended start time.
+	 */
+	public static final String INTENDED_PREFIX = "Intended-";
+
+	/**
+	 * The number of stripes of recorders shared by virtual threads. Defaults to 4 per processor.
+	 */
+	public static final String MEASUREMENT_STRIPES = "measurement.stripes";
+
+	static volatile Measurements singleton=null;
 	
 	static Properties measurementproperties=null;
 	
@@ -47,17 +77,101 @@ public class Measurements
       /**
        * Return the singleton Measurements object.
        */
-	public synchronized static Measurements getMeasurements()
+	public static Measurements getMeasurements()
 	{
-		if (singleton==null)
+		Measurements m=singleton;
+		if (m==null)
 		{
-			singleton=new Measurements(measurementproperties);
+			synchronized (Measurements.class)
+			{
+				if (singleton==null)
+				{
+					singleton=new Measurements(measurementproperties);
+				}
+				m=singleton;
+			}
 		}
+		return m;
+	}
+
+	/**
+	 * Replace the singleton with a new, empty Measurements object, created with the properties last set. Used
+	 * to measure each phase of a run separately; whoever still holds the previous object keeps recording
+	 * into it.
+	 */
+	public static synchronized Measurements reset()
+	{
+		singleton=new Measurements(measurementproperties);
 		return singleton;
 	}
 
-	HashMap<String,OneMeasurement> data;
-	boolean histogram=true;
+	/**
+	 * All the recorders created so far for each operation, one per thread that has reported that operation.
+	 */
+	ConcurrentMap<String,CopyOnWriteArrayList<OneMeasurement>> data;
+
+	/**
+	 * The completed units of each metric, when measuring time series.
+	 */
+	ConcurrentMap<String,TimeSeries> series;
+
+	/**
+	 * Where the units of the time series are written as they complete, or null to keep them for the export.
+	 */
+	MeasurementsExporter seriesstream=null;
+
+	/**
+	 * The state owned by one recording thread.
+	 */
+	static class ThreadMeasurements
+	{
+		/**
+		 * Recorders keyed by operation.
+		 */
+		HashMap<String,OneMeasurement> op=new HashMap<String,OneMeasurement>();
+
+		/**
+		 * Recorders for latencies measured from the intended start, keyed by operation (without the prefix).
+		 */
+		HashMap<String,OneMeasurement> intended=new HashMap<String,OneMeasurement>();
+
+		/**
+		 * System.nanoTime() at which the current operation was scheduled to start, or 0 if not scheduled.
+		 */
+		long intendedstart=0;
+
+		/**
+		 * The recorders this thread writes to: its own, or a stripe shared with other virtual threads.
+		 */
+		ThreadMeasurements recorders=this;
+
+		/**
+		 * Held while recording into a stripe, or null for the recorders of a single thread. Not a monitor, so
+		 * that virtual threads contending for a stripe don't pin their carrier threads.
+		 */
+		ReentrantLock lock=null;
+	}
+
+	ThreadLocal<ThreadMeasurements> threaddata;
+
+	ThreadMeasurements[] stripes;
+
+	/**
+	 * The snapshots used for the previous status line, so getSummary() can report per-window averages.
+	 */
+	HashMap<String,OneMeasurement> summaries;
+
+	String measurementtype;
+
+	/**
+	 * When the operations measured here started, from System.currentTimeMillis(); when the object was created
+	 * until setStartTime() says otherwise.
+	 */
+	volatile long starttime=System.currentTimeMillis();
+
+	boolean measureop;
+
+	boolean measureintended;
 
 	private Properties _props;
 	
@@ -66,50 +180,305 @@ public class Measurements
        */
 	public Measurements(Properties props)
 	{
-		data=new HashMap<String,OneMeasurement>();
+		data=new ConcurrentHashMap<String,CopyOnWriteArrayList<OneMeasurement>>();
+		series=new ConcurrentHashMap<String,TimeSeries>();
+		threaddata=new ThreadLocal<ThreadMeasurements>()
+		{
+			@Override
+			protected ThreadMeasurements initialValue()
+			{
+				ThreadMeasurements tm=new ThreadMeasurements();
+				Thread t=Thread.currentThread();
+				if (t.isVirtual())
+				{
+					tm.recorders=stripes[(int)(t.threadId()%stripes.length)];
+				}
+				return tm;
+			}
+		};
+		summaries=new HashMap<String,OneMeasurement>();
 		
 		_props=props;
+
+		int stripecount=Integer.parseInt(_props.getProperty(MEASUREMENT_STRIPES, ""+(4*Runtime.getRuntime().availableProcessors())));
+		stripes=new ThreadMeasurements[stripecount];
+		for (int i=0; i<stripecount; i++)
+		{
+			stripes[i]=new ThreadMeasurements();
+			stripes[i].lock=new ReentrantLock();
+		}
 		
-		if (_props.getProperty(MEASUREMENT_TYPE, MEASUREMENT_TYPE_DEFAULT).compareTo("histogram")==0)
+		measurementtype=_props.getProperty(MEASUREMENT_TYPE, MEASUREMENT_TYPE_DEFAULT);
+
+		String interval=_props.getProperty(MEASUREMENT_INTERVAL, MEASUREMENT_INTERVAL_DEFAULT);
+		if (interval.compareTo("op")==0)
 		{
-			histogram=true;
+			measureop=true;
+			measureintended=false;
+		}
+		else if (interval.compareTo("intended")==0)
+		{
+			measureop=false;
+			measureintended=true;
+		}
+		else if (interval.compareTo("both")==0)
+		{
+			measureop=true;
+			measureintended=true;
 		}
 		else
 		{
-			histogram=false;
+			throw new IllegalArgumentException("Unknown "+MEASUREMENT_INTERVAL+" \""+interval+"\", must be op, intended or both");
 		}
 	}
 	
 	OneMeasurement constructOneMeasurement(String name)
 	{
-		if (histogram)
+		if (measurementtype.compareTo("histogram")==0)
 		{
 			return new OneMeasurementHistogram(name,_props);
 		}
+		else if (measurementtype.compareTo("hdrhistogram")==0)
+		{
+			return new OneMeasurementHdrHistogram(name,_props);
+		}
 		else
 		{
-			return new OneMeasurementTimeSeries(name,_props);
+			return new OneMeasurementTimeSeries(name,_props,getTimeSeries(name));
+		}
+	}
+
+	/**
+	 * Return the list of the recorders of the given metric, creating it if needed.
+	 */
+	CopyOnWriteArrayList<OneMeasurement> getRecorders(String name)
+	{
+		CopyOnWriteArrayList<OneMeasurement> recorders=data.get(name);
+		if (recorders==null)
+		{
+			CopyOnWriteArrayList<OneMeasurement> fresh=new CopyOnWriteArrayList<OneMeasurement>();
+			recorders=data.putIfAbsent(name,fresh);
+			if (recorders==null)
+			{
+				recorders=fresh;
+			}
 		}
+		return recorders;
+	}
+
+	/**
+	 * Return the time series of the given metric, creating it if needed.
+	 */
+	TimeSeries getTimeSeries(String name)
+	{
+		TimeSeries s=series.get(name);
+		if (s==null)
+		{
+			TimeSeries fresh=new TimeSeries(name,
+					Integer.parseInt(_props.getProperty(OneMeasurementTimeSeries.GRANULARITY,OneMeasurementTimeSeries.GRANULARITY_DEFAULT)),
+					Integer.parseInt(_props.getProperty(OneMeasurementTimeSeries.BUFFER,OneMeasurementTimeSeries.BUFFER_DEFAULT)),
+					getRecorders(name));
+			synchronized(series)
+			{
+				fresh.stream=seriesstream;
+				s=series.putIfAbsent(name,fresh);
+			}
+			if (s==null)
+			{
+				s=fresh;
+			}
+		}
+		return s;
+	}
+
+	/**
+	 * Write the units of the time series to the given exporter as they complete, rather than keeping the last
+	 * "timeseries.buffer" of them for exportMeasurements(). Has no effect unless measuring time series.
+	 * 
+	 * @param exporter The exporter, which must not be written to by anything else until the measurements are
+	 *        exported, or null to stop streaming.
+	 */
+	public void streamTimeSeries(MeasurementsExporter exporter)
+	{
+		synchronized(series)
+		{
+			seriesstream=exporter;
+			for (TimeSeries s : series.values())
+			{
+				s.stream=exporter;
+			}
+		}
+	}
+
+	/**
+	 * Mark when the operations measured here started, e.g. once the workload of a phase is loaded and its client
+	 * threads start, so that throughput over an interval is not diluted by the time before.
+	 * 
+	 * @param ms The start, from System.currentTimeMillis().
+	 */
+	public void setStartTime(long ms)
+	{
+		starttime=ms;
+	}
+
+	/**
+	 * Return one of the calling thread's recorders for the given operation, creating and registering it on first use.
+	 * 
+	 * @param mine The calling thread's recorders of the wanted kind.
+	 * @param operation The operation, used as the key in mine.
+	 * @param prefix Prepended to operation to form the name of the metric.
+	 */
+	OneMeasurement getThreadMeasurement(HashMap<String,OneMeasurement> mine, String operation, String prefix)
+	{
+		OneMeasurement m=mine.get(operation);
+		if (m==null)
+		{
+			String name=prefix+operation;
+			m=constructOneMeasurement(name);
+			mine.put(operation,m);
+			getRecorders(name).add(m);
+		}
+		return m;
+	}
+
+	/**
+	 * Record a latency, or a return code if code is true, into the given recorders of the calling thread,
+	 * locking them if they are a shared stripe.
+	 */
+	void record(ThreadMeasurements recorders, boolean intended, String operation, int value, boolean code)
+	{
+		ReentrantLock lock=recorders.lock;
+		if (lock!=null)
+		{
+			lock.lock();
+			try
+			{
+				recordUnlocked(recorders,intended,operation,value,code);
+			}
+			finally
+			{
+				lock.unlock();
+			}
+		}
+		else
+		{
+			recordUnlocked(recorders,intended,operation,value,code);
+		}
+	}
+
+	private void recordUnlocked(ThreadMeasurements recorders, boolean intended, String operation, int value, boolean code)
+	{
+		OneMeasurement m=intended ? getThreadMeasurement(recorders.intended,operation,INTENDED_PREFIX) : getThreadMeasurement(recorders.op,operation,"");
+		if (code)
+		{
+			m.reportReturnCode(value);
+		}
+		else
+		{
+			m.measure(value);
+		}
+	}
+
+	/**
+	 * Merge every thread's recorder for the given operation into a new OneMeasurement.
+	 */
+	OneMeasurement snapshot(String operation)
+	{
+		OneMeasurement merged=constructOneMeasurement(operation);
+		for (OneMeasurement m : data.get(operation))
+		{
+			merged.merge(m);
+		}
+		return merged;
+	}
+
+	/**
+	 * Return the names of the metrics recorded so far.
+	 */
+	public Set<String> getMetricNames()
+	{
+		return data.keySet();
+	}
+
+	/**
+	 * Merge every thread's recorder of the given metric into a new OneMeasurement, e.g. to read its percentiles
+	 * while the threads are still recording, or null if nothing was recorded under that name.
+	 */
+	public OneMeasurement getSnapshot(String metric)
+	{
+		if (!data.containsKey(metric))
+		{
+			return null;
+		}
+		return snapshot(metric);
+	}
+
+	/**
+	 * Set the time at which the calling thread's next operations were scheduled to start, as a System.nanoTime()
+	 * value. Pass 0 if the operations are not scheduled, so they are measured from their actual start.
+	 */
+	public void setIntendedStartTimeNs(long time)
+	{
+		if (!measureintended)
+		{
+			return;
+		}
+		threaddata.get().intendedstart=time;
+	}
+
+	/**
+	 * Return the time at which the calling thread's current operation was scheduled to start, or 0 if it was
+	 * not scheduled or intended latencies are not being measured. Callers should measure from the actual
+	 * start of the operation in that case.
+	 */
+	public long getIntendedStartTimeNs()
+	{
+		if (!measureintended)
+		{
+			return 0;
+		}
+		return threaddata.get().intendedstart;
 	}
 
       /**
        * Report a single value of a single metric. E.g. for read latency, operation="READ" and latency is the measured value.
        */
-	public synchronized void measure(String operation, int latency)
+	public void measure(String operation, int latency)
 	{
-		if (!data.containsKey(operation))
+		if (!measureop)
 		{
-			synchronized(this)
-			{
-				if (!data.containsKey(operation))
-				{
-					data.put(operation,constructOneMeasurement(operation));
-				}
-			}
+			return;
 		}
+		measureValue(false,operation,latency);
+	}
+
+	/**
+	 * Report a value that is not the latency of an operation, such as the time an operation waited for its
+	 * thread. It is recorded under the given name whatever "measurement.interval" is set to.
+	 */
+	public void measureMetric(String metric, int value)
+	{
+		measureValue(false,metric,value);
+	}
+
+	/**
+	 * Report a latency measured from the intended start time of an operation. It is recorded under
+	 * INTENDED_PREFIX+operation.
+	 */
+	public void measureIntended(String operation, int latency)
+	{
+		if (!measureintended)
+		{
+			return;
+		}
+		measureValue(true,operation,latency);
+	}
+
+	private void measureValue(boolean intended, String operation, int latency)
+	{
 		try
 		{
-			data.get(operation).measure(latency);
+			record(threaddata.get().recorders,intended,operation,latency,false);
 		}
 		catch (java.lang.ArrayIndexOutOfBoundsException e)
 		{
@@ -124,17 +493,7 @@ public class Measurements
        */
 	public void reportReturnCode(String operation, int code)
 	{
-		if (!data.containsKey(operation))
-		{
-			synchronized(this)
-			{
-				if (!data.containsKey(operation))
-				{
-					data.put(operation,constructOneMeasurement(operation));
-				}
-			}
-		}
-		data.get(operation).reportReturnCode(code);
+		record(threaddata.get().recorders,!measureop,operation,code,true);
 	}
 	
   /**
@@ -145,9 +504,9 @@ public class Measurements
    */
   public void exportMeasurements(MeasurementsExporter exporter) throws IOException
   {
-    for (OneMeasurement measurement : data.values())
+    for (String operation : data.keySet())
     {
-      measurement.exportMeasurements(exporter);
+      snapshot(operation).exportMeasurements(exporter);
     }
   }
 	
@@ -157,9 +516,13 @@ public class Measurements
 	public String getSummary()
 	{
 		String ret="";
-		for (OneMeasurement m : data.values())
+		synchronized(summaries)
 		{
-			ret+=m.getSummary()+" ";
+			for (String operation : data.keySet())
+			{
+				OneMeasurement m=snapshot(operation);
+				ret+=m.getSummary(summaries.put(operation,m))+" ";
+			}
 		}
 		
 		return ret;
@@ -23,6 +23,9 @@ import com.yahoo.ycsb.measurements.exporter.MeasurementsExporter;
 
 /**
  * A single measured metric (such as READ LATENCY)
+ * 
+ * Instances are written by a single thread, so measure() and reportReturnCode() need not be synchronized.
+ * Measurements keeps one instance per thread and merges them into a fresh instance for reporting.
  */
 public abstract class OneMeasurement {
 
@@ -43,7 +46,50 @@ public abstract class OneMeasurement {
 
 	public abstract void measure(int latency);
 
-	public abstract String getSummary();
+	/**
+	 * Return a one line summary of the values recorded since an earlier snapshot of this metric was taken.
+	 * 
+	 * @param previous The earlier snapshot, or null to summarize everything recorded so far.
+	 */
+	public abstract String getSummary(OneMeasurement previous);
+
+	/**
+	 * Fold the values recorded by another instance of the same type into this one. The other instance may
+	 * still be recording, in which case the result reflects some point during the merge.
+	 * 
+	 * @param other The measurement to add to this one.
+	 */
+	public abstract void merge(OneMeasurement other);
+
+	/**
+	 * Return the number of latencies recorded.
+	 */
+	public abstract long getOperations();
+
+	/**
+	 * Return the latency, in microseconds, that the given percentage of the recorded latencies do not exceed, or
+	 * -1 if this kind of measurement does not keep the distribution or nothing was recorded.
+	 * 
+	 * @param percentile The percentage, in (0,100].
+	 */
+	public long getPercentileLatency(double percentile)
+	{
+		long[] ret=getPercentileLatencies(null,new double[] {percentile});
+		return (ret==null) ? -1 : ret[0];
+	}
+
+	/**
+	 * Return the latencies, in microseconds, at the given ascending percentiles of the values recorded since an
+	 * earlier snapshot of this metric, or null if this kind of measurement does not keep the distribution or
+	 * nothing was recorded since.
+	 * 
+	 * @param previous The earlier snapshot, or null for everything recorded so far.
+	 * @param percentiles The percentages, in (0,100]; 100 gives the largest latency.
+	 */
+	public long[] getPercentileLatencies(OneMeasurement previous, double[] percentiles)
+	{
+		return null;
+	}
 
   /**
    * Export the current measurements to a suitable format.
@@ -0,0 +1,349 @@
+/**
+ * Copyright (c) 2010 Yahoo! Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.yahoo.ycsb.measurements;
+
+import java.io.IOException;
+import java.text.DecimalFormat;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.yahoo.ycsb.measurements.exporter.MeasurementsExporter;
+
+/**
+ * Take measurements and maintain a high dynamic range histogram of a given metric, such as READ LATENCY.
+ * 
+ * Latencies are kept in log-linear buckets: values below the sub-bucket count are recorded exactly, and each
+ * power of two above that is split into the same number of linear buckets. The relative error of any reported
+ * value is therefore bounded by the configured precision for every latency from 1 us to the largest int, and
+ * memory is a few thousand counters per metric regardless of the range. Recording a value is a couple of
+ * shifts and an array increment.
+ * 
+ * Properties:
+ * <UL>
+ * <LI><b>hdrhistogram.precision</b>: number of significant decimal digits to keep, 1 to 3 (default: 2)
+ * <LI><b>hdrhistogram.percentiles</b>: comma separated list of extra percentiles to report, in addition to
+ * 50, 90, 99, 99.9 and 99.99 (default: none)
+ * </UL>
+ */
+public class OneMeasurementHdrHistogram extends OneMeasurement
+{
+	public static final String PRECISION="hdrhistogram.precision";
+	public static final String PRECISION_DEFAULT="2";
+
+	public static final String PERCENTILES="hdrhistogram.percentiles";
+	public static final String PERCENTILES_DEFAULT="";
+
+	/**
+	 * The percentiles that are always reported.
+	 */
+	static final double[] STANDARD_PERCENTILES={50,90,99,99.9,99.99};
+
+	/**
+	 * log2 of the number of sub-buckets; values below 1<<subbucketbits are recorded exactly.
+	 */
+	final int subbucketbits;
+	final int subbucketcount;
+	final int subbuckethalfcount;
+
+	long[] counts;
+	double[] percentiles;
+
+	long operations;
+	long totallatency;
+	
+	int min;
+	int max;
+	ConcurrentHashMap<Integer,long[]> returncodes;
+
+	public OneMeasurementHdrHistogram(String name, Properties props)
+	{
+		super(name);
+		int precision=Integer.parseInt(props.getProperty(PRECISION, PRECISION_DEFAULT));
+		if ( (precision<1) || (precision>3) )
+		{
+			throw new IllegalArgumentException(PRECISION+" must be between 1 and 3, got "+precision);
+		}
+
+		//enough sub-buckets to tell apart two values that differ by one unit in the last significant digit
+		long largestexact=2*(long)Math.pow(10,precision);
+		subbucketbits=64-Long.numberOfLeadingZeros(largestexact-1);
+		subbucketcount=1<<subbucketbits;
+		subbuckethalfcount=subbucketcount/2;
+		counts=new long[bucketIndex(Integer.MAX_VALUE)+1];
+
+		TreeSet<Double> p=new TreeSet<Double>();
+		for (double d : STANDARD_PERCENTILES)
+		{
+			p.add(d);
+		}
+		for (String s : props.getProperty(PERCENTILES, PERCENTILES_DEFAULT).split(","))
+		{
+			if (s.trim().length()>0)
+			{
+				double d=Double.parseDouble(s.trim());
+				if ( (d<=0) || (d>100) )
+				{
+					throw new IllegalArgumentException(PERCENTILES+" entries must be in (0,100], got "+s);
+				}
+				p.add(d);
+			}
+		}
+		percentiles=new double[p.size()];
+		int i=0;
+		for (Double d : p)
+		{
+			percentiles[i++]=d;
+		}
+
+		operations=0;
+		totallatency=0;
+		min=-1;
+		max=-1;
+		returncodes=new ConcurrentHashMap<Integer,long[]>();
+	}
+
+	/**
+	 * Return the index of the bucket holding value, which must not be negative.
+	 */
+	int bucketIndex(int value)
+	{
+		if (value<subbucketcount)
+		{
+			return value;
+		}
+		//value is in [2^e, 2^(e+1)), which is split into subbuckethalfcount buckets of width 2^(e-subbucketbits+1)
+		int e=31-Integer.numberOfLeadingZeros(value);
+		int shift=e-subbucketbits+1;
+		return subbucketcount+(e-subbucketbits)*subbuckethalfcount+((value>>>shift)-subbuckethalfcount);
+	}
+
+	/**
+	 * Return the largest value that is recorded in the bucket at index.
+	 */
+	long highestValueInBucket(int index)
+	{
+		if (index<subbucketcount)
+		{
+			return index;
+		}
+		int k=(index-subbucketcount)/subbuckethalfcount;
+		int sub=(index-subbucketcount)%subbuckethalfcount;
+		int shift=k+1;
+		return (((long)(sub+subbuckethalfcount+1))<<shift)-1;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.yahoo.ycsb.OneMeasurement#reportReturnCode(int)
+	 */
+	public void reportReturnCode(int code)
+	{
+		Integer Icode=code;
+		long[] val=returncodes.get(Icode);
+		if (val==null)
+		{
+			val=new long[1];
+			returncodes.put(Icode,val);
+		}
+		val[0]++;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.yahoo.ycsb.OneMeasurement#measure(int)
+	 */
+	public void measure(int latency)
+	{
+		if (latency<0)
+		{
+			latency=0;
+		}
+		counts[bucketIndex(latency)]++;
+		operations++;
+		totallatency+=latency;
+
+		if ( (min<0) || (latency<min) )
+		{
+			min=latency;
+		}
+
+		if ( (max<0) || (latency>max) )
+		{
+			max=latency;
+		}
+	}
+
+	/**
+	 * Compute the value at each of the requested percentiles of the given bucket counts, in one pass.
+	 * 
+	 * @param c The bucket counts.
+	 * @param total The sum of c.
+	 * @param ceiling The largest value recorded, used to cap the result to something that was actually seen.
+	 * @return The value at each entry of percentiles.
+	 */
+	long[] valuesAtPercentiles(long[] c, long total, long ceiling)
+	{
+		return valuesAtPercentiles(percentiles,c,total,ceiling);
+	}
+
+	/**
+	 * Compute the value at each of the given ascending percentiles of the given bucket counts, in one pass.
+	 */
+	long[] valuesAtPercentiles(double[] percentiles, long[] c, long total, long ceiling)
+	{
+		long[] ret=new long[percentiles.length];
+		long seen=0;
+		int bucket=0;
+		for (int i=0; i<percentiles.length; i++)
+		{
+			long rank=Math.max(1,(long)Math.ceil(percentiles[i]/100.0*total));
+			while ( (seen<rank) && (bucket<c.length) )
+			{
+				seen+=c[bucket];
+				bucket++;
+			}
+			ret[i]=Math.min(highestValueInBucket(Math.max(bucket-1,0)),ceiling);
+		}
+		return ret;
+	}
+
+	static String percentileLabel(double p)
+	{
+		return new DecimalFormat("#.####").format(p)+"thPercentileLatency(us)";
+	}
+
+  @Override
+  public void exportMeasurements(MeasurementsExporter exporter) throws IOException
+  {
+    exporter.write(getName(), "Operations", operations);
+    exporter.write(getName(), "AverageLatency(us)", (((double)totallatency)/((double)operations)));
+    exporter.write(getName(), "MinLatency(us)", min);
+    exporter.write(getName(), "MaxLatency(us)", max);
+
+    if (operations>0)
+    {
+      long[] values=valuesAtPercentiles(counts,operations,max);
+      for (int i=0; i<percentiles.length; i++)
+      {
+        exporter.write(getName(), percentileLabel(percentiles[i]), (int)values[i]);
+      }
+    }
+
+    for (Integer I : returncodes.keySet())
+    {
+      long[] val=returncodes.get(I);
+      exporter.write(getName(), "Return="+I, val[0]);
+    }
+  }
+
+	@Override
+	public long getOperations()
+	{
+		return operations;
+	}
+
+	@Override
+	public long[] getPercentileLatencies(OneMeasurement previous, double[] percentiles)
+	{
+		//count from the buckets themselves: a snapshot taken while recording may not agree with its operations
+		long[] window=new long[counts.length];
+		long windowoperations=0;
+		for (int i=0; i<window.length; i++)
+		{
+			window[i]=counts[i]-((previous==null) ? 0 : ((OneMeasurementHdrHistogram)previous).counts[i]);
+			windowoperations+=window[i];
+		}
+		if (windowoperations<=0)
+		{
+			return null;
+		}
+		return valuesAtPercentiles(percentiles,window,windowoperations,max);
+	}
+
+	@Override
+	public String getSummary(OneMeasurement previous) {
+		long[] window=counts;
+		long windowoperations=operations;
+		long windowtotallatency=totallatency;
+		if (previous!=null)
+		{
+			OneMeasurementHdrHistogram p=(OneMeasurementHdrHistogram)previous;
+			window=Arrays.copyOf(counts,counts.length);
+			for (int i=0; i<window.length; i++)
+			{
+				window[i]-=p.counts[i];
+			}
+			windowoperations-=p.operations;
+			windowtotallatency-=p.totallatency;
+		}
+		if (windowoperations<=0)
+		{
+			return "";
+		}
+		DecimalFormat d = new DecimalFormat("#.##");
+		double report=((double)windowtotallatency)/((double)windowoperations);
+		long[] values=valuesAtPercentiles(window,windowoperations,max);
+		String ret="["+getName()+" AverageLatency(us)="+d.format(report);
+		for (int i=0; i<percentiles.length; i++)
+		{
+			if (percentiles[i]==99)
+			{
+				ret+=" "+percentileLabel(99)+"="+values[i];
+			}
+		}
+		return ret+"]";
+	}
+
+	@Override
+	public void merge(OneMeasurement other) {
+		OneMeasurementHdrHistogram h=(OneMeasurementHdrHistogram)other;
+		if (h.subbucketbits!=subbucketbits)
+		{
+			throw new IllegalArgumentException("Can't merge histograms with different precision");
+		}
+		for (int i=0; i<counts.length; i++)
+		{
+			counts[i]+=h.counts[i];
+		}
+		operations+=h.operations;
+		totallatency+=h.totallatency;
+
+		if ( (h.min>=0) && ( (min<0) || (h.min<min) ) )
+		{
+			min=h.min;
+		}
+
+		if ( (h.max>=0) && ( (max<0) || (h.max>max) ) )
+		{
+			max=h.max;
+		}
+
+		for (Map.Entry<Integer,long[]> e : h.returncodes.entrySet())
+		{
+			long[] val=returncodes.get(e.getKey());
+			if (val==null)
+			{
+				val=new long[1];
+				returncodes.put(e.getKey(),val);
+			}
+			val[0]+=e.getValue()[0];
+		}
+	}
+
+}
@@ -19,8 +19,9 @@ package com.yahoo.ycsb.measurements;
 
 import java.io.IOException;
 import java.text.DecimalFormat;
-import java.util.HashMap;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.yahoo.ycsb.measurements.exporter.MeasurementsExporter;
 
@@ -37,43 +38,37 @@ public class OneMeasurementHistogram extends OneMeasurement
 	public static final String BUCKETS_DEFAULT="1000";
 
 	int _buckets;
-	int[] histogram;
-	int histogramoverflow;
-	int operations;
+	long[] histogram;
+	long histogramoverflow;
+	long operations;
 	long totallatency;
 	
-	//keep a windowed version of these stats for printing status
-	int windowoperations;
-	long windowtotallatency;
-	
 	int min;
 	int max;
-	HashMap<Integer,int[]> returncodes;
+	ConcurrentHashMap<Integer,long[]> returncodes;
 
 	public OneMeasurementHistogram(String name, Properties props)
 	{
 		super(name);
 		_buckets=Integer.parseInt(props.getProperty(BUCKETS, BUCKETS_DEFAULT));
-		histogram=new int[_buckets];
+		histogram=new long[_buckets];
 		histogramoverflow=0;
 		operations=0;
 		totallatency=0;
-		windowoperations=0;
-		windowtotallatency=0;
 		min=-1;
 		max=-1;
-		returncodes=new HashMap<Integer,int[]>();
+		returncodes=new ConcurrentHashMap<Integer,long[]>();
 	}
 
 	/* (non-Javadoc)
 	 * @see com.yahoo.ycsb.OneMeasurement#reportReturnCode(int)
 	 */
-	public synchronized void reportReturnCode(int code)
+	public void reportReturnCode(int code)
 	{
 		Integer Icode=code;
 		if (!returncodes.containsKey(Icode))
 		{
-			int[] val=new int[1];
+			long[] val=new long[1];
 			val[0]=0;
 			returncodes.put(Icode,val);
 		}
@@ -84,7 +79,7 @@ public class OneMeasurementHistogram extends OneMeasurement
 	/* (non-Javadoc)
 	 * @see com.yahoo.ycsb.OneMeasurement#measure(int)
 	 */
-	public synchronized void measure(int latency)
+	public void measure(int latency)
 	{
 		if (latency/1000>=_buckets)
 		{
@@ -96,8 +91,6 @@ public class OneMeasurementHistogram extends OneMeasurement
 		}
 		operations++;
 		totallatency+=latency;
-		windowoperations++;
-		windowtotallatency+=latency;
 
 		if ( (min<0) || (latency<min) )
 		{
@@ -119,7 +112,7 @@ public class OneMeasurementHistogram extends OneMeasurement
     exporter.write(getName(), "MinLatency(us)", min);
     exporter.write(getName(), "MaxLatency(us)", max);
     
-    int opcounter=0;
+    long opcounter=0;
     boolean done95th=false;
     for (int i=0; i<_buckets; i++)
     {
@@ -138,7 +131,7 @@ public class OneMeasurementHistogram extends OneMeasurement
 
     for (Integer I : returncodes.keySet())
     {
-      int[] val=returncodes.get(I);
+      long[] val=returncodes.get(I);
       exporter.write(getName(), "Return="+I, val[0]);
     }     
 
@@ -150,16 +143,95 @@ public class OneMeasurementHistogram extends OneMeasurement
   }
 
 	@Override
-	public String getSummary() {
+	public long getOperations()
+	{
+		return operations;
+	}
+
+	/**
+	 * Latencies are only known to the millisecond bucket, so this returns the top of the bucket, capped at the
+	 * largest latency recorded.
+	 */
+	@Override
+	public long[] getPercentileLatencies(OneMeasurement previous, double[] percentiles)
+	{
+		OneMeasurementHistogram p=(OneMeasurementHistogram)previous;
+		//count from the buckets themselves: a snapshot taken while recording may not agree with its operations
+		long windowoperations=histogramoverflow-((p==null) ? 0 : p.histogramoverflow);
+		for (int i=0; i<_buckets; i++)
+		{
+			windowoperations+=histogram[i]-((p==null) ? 0 : p.histogram[i]);
+		}
+		if (windowoperations<=0)
+		{
+			return null;
+		}
+		long[] ret=new long[percentiles.length];
+		long seen=0;
+		int bucket=0;
+		for (int i=0; i<percentiles.length; i++)
+		{
+			long rank=Math.max(1,(long)Math.ceil(percentiles[i]/100.0*windowoperations));
+			while ( (seen<rank) && (bucket<_buckets) )
+			{
+				seen+=histogram[bucket]-((p==null) ? 0 : p.histogram[bucket]);
+				bucket++;
+			}
+			ret[i]=(seen<rank) ? max : Math.min(bucket*1000L-1,max);
+		}
+		return ret;
+	}
+
+	@Override
+	public String getSummary(OneMeasurement previous) {
+		long windowoperations=operations;
+		long windowtotallatency=totallatency;
+		if (previous!=null)
+		{
+			OneMeasurementHistogram p=(OneMeasurementHistogram)previous;
+			windowoperations-=p.operations;
+			windowtotallatency-=p.totallatency;
+		}
 		if (windowoperations==0)
 		{
 			return "";
 		}
 		DecimalFormat d = new DecimalFormat("#.##");
 		double report=((double)windowtotallatency)/((double)windowoperations);
-		windowtotallatency=0;
-		windowoperations=0;
 		return "["+getName()+" AverageLatency(us)="+d.format(report)+"]";
 	}
 
+	@Override
+	public void merge(OneMeasurement other) {
+		OneMeasurementHistogram h=(OneMeasurementHistogram)other;
+		for (int i=0; i<_buckets && i<h._buckets; i++)
+		{
+			histogram[i]+=h.histogram[i];
+		}
+		histogramoverflow+=h.histogramoverflow;
+		operations+=h.operations;
+		totallatency+=h.totallatency;
+
+		if ( (h.min>=0) && ( (min<0) || (h.min<min) ) )
+		{
+			min=h.min;
+		}
+
+		if ( (h.max>=0) && ( (max<0) || (h.max>max) ) )
+		{
+			max=h.max;
+		}
+
+		for (Map.Entry<Integer,long[]> e : h.returncodes.entrySet())
+		{
+			long[] val=returncodes.get(e.getKey());
+			if (val==null)
+			{
+				val=new long[1];
+				returncodes.put(e.getKey(),val);
+			}
+			val[0]+=e.getValue()[0];
+		}
+	}
+
 }
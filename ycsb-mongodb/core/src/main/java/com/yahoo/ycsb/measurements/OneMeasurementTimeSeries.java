@@ -19,28 +19,21 @@ package com.yahoo.ycsb.measurements;
 
 import java.io.IOException;
 import java.text.DecimalFormat;
-import java.util.HashMap;
+import java.util.Map;
 import java.util.Properties;
-import java.util.Vector;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.yahoo.ycsb.measurements.exporter.MeasurementsExporter;
 
-class SeriesUnit
-{
-	/**
-	 * @param time
-	 * @param average
-	 */
-	public SeriesUnit(long time, double average) {
-		this.time = time;
-		this.average = average;
-	}
-	public long time;
-	public double average; 
-}
-
 /**
  * A time series measurement of a metric, such as READ LATENCY.
+ * 
+ * Units are aligned to multiples of the granularity in wall clock time, so that the units recorded by
+ * different threads line up. Each thread's recorder keeps only the last few units it recorded, which the
+ * TimeSeries shared by all the threads of the metric rolls up into interval summaries as they complete.
+ * Memory is therefore fixed per thread and per metric, however long the run, and no latency is lost: one
+ * recorded after its unit was rolled up is counted in the next unit instead.
  */
 public class OneMeasurementTimeSeries extends OneMeasurement 
 {
@@ -50,86 +43,161 @@ public class OneMeasurementTimeSeries extends OneMeasurement
 	public static final String GRANULARITY="timeseries.granularity";
 	
 	public static final String GRANULARITY_DEFAULT="1000";
+
+	/**
+	 * The number of completed units kept for the export when they are not streamed to the exporter as they
+	 * complete. The oldest are dropped beyond that.
+	 */
+	public static final String BUFFER="timeseries.buffer";
+
+	public static final String BUFFER_DEFAULT="3600";
+
+	/**
+	 * The number of units a recorder keeps. A unit is rolled up two units after it starts, so its slot is free
+	 * again by the time it is reused.
+	 */
+	static final int SLOTS=4;
+
+	/**
+	 * Layout of a slot: the start of its unit, the number of latencies and their sum.
+	 */
+	static final int UNIT=0;
+	static final int COUNT=1;
+	static final int SUM=2;
+	static final int CELLS=3;
 	
 	int _granularity;
-	Vector<SeriesUnit> _measurements;
-	
-	long start=-1;
-	long currentunit=-1;
-	int count=0;
-	int sum=0;
-	int operations=0;
+	TimeSeries _series;
+
+	/**
+	 * The slots, written by the recording thread and read by whichever thread rolls the series up, both holding
+	 * the lock of this object. It is only ever contended by a roll-up, once per unit.
+	 */
+	final long[] slots;
+
+	/**
+	 * The unit being recorded and the index of its slot.
+	 */
+	long currentunit=Long.MIN_VALUE;
+	int current=0;
+
+	long operations=0;
 	long totallatency=0;
 	
-	//keep a windowed version of these stats for printing status
-	int windowoperations=0;
-	long windowtotallatency=0;
-	
 	int min=-1;
 	int max=-1;
 
-	private HashMap<Integer, int[]> returncodes;
+	private ConcurrentHashMap<Integer, long[]> returncodes;
 	
-	public OneMeasurementTimeSeries(String name, Properties props)
+	OneMeasurementTimeSeries(String name, Properties props, TimeSeries series)
 	{
 		super(name);
 		_granularity=Integer.parseInt(props.getProperty(GRANULARITY,GRANULARITY_DEFAULT));
-		_measurements=new Vector<SeriesUnit>();
-		returncodes=new HashMap<Integer,int[]>();
-	}
-	
-	void checkEndOfUnit(boolean forceend)
-	{
-		long now=System.currentTimeMillis();
-		
-		if (start<0)
+		_series=series;
+		slots=new long[SLOTS*CELLS];
+		for (int i=0; i<SLOTS; i++)
 		{
-			currentunit=0;
-			start=now;
+			slots[i*CELLS+UNIT]=Long.MIN_VALUE;
 		}
-		
-		long unit=((now-start)/_granularity)*_granularity;
-		
-		if ( (unit>currentunit) || (forceend) )
+		returncodes=new ConcurrentHashMap<Integer,long[]>();
+	}
+
+	/**
+	 * Add the count and sum of each unit in (after,upto] held by the slots to units.
+	 */
+	synchronized void takeUnits(long after, long upto, TreeMap<Long,long[]> units)
+	{
+		for (int i=0; i<SLOTS; i++)
 		{
-			double avg=((double)sum)/((double)count);
-			_measurements.add(new SeriesUnit(currentunit,avg));
-			
-			currentunit=unit;
-			
-			count=0;
-			sum=0;
+			long unit=slots[i*CELLS+UNIT];
+			if ( (unit>after) && (unit<=upto) )
+			{
+				long[] u=units.get(unit);
+				if (u==null)
+				{
+					u=new long[2];
+					units.put(unit,u);
+				}
+				u[0]+=slots[i*CELLS+COUNT];
+				u[1]+=slots[i*CELLS+SUM];
+			}
 		}
 	}
 	
 	@Override
 	public void measure(int latency) 
 	{
-		checkEndOfUnit(false);
-		
-		count++;
-		sum+=latency;
-		totallatency+=latency;
-		operations++;
-		windowoperations++;
-		windowtotallatency+=latency;
-		
-		if (latency>max)
-		{
-			max=latency;
-		}
-		
-		if ( (latency<min) || (min<0) )
+		long now=System.currentTimeMillis();
+		long unit=(now/_granularity)*_granularity;
+		for (;;)
 		{
-			min=latency;
+			if (unit>currentunit)
+			{
+				//roll up the units that are complete by now, so the slot about to be reused is free; not while
+				//holding the lock of this object, which the roll-up takes
+				_series.roll(unit);
+			}
+			synchronized(this)
+			{
+				if (unit<currentunit)
+				{
+					//the clock stepped back
+					unit=currentunit;
+				}
+				long limit=_series.rolling;
+				if (limit==Long.MAX_VALUE)
+				{
+					//the series was flushed for the export, so only the totals are kept
+				}
+				else if (unit<=limit)
+				{
+					//the clock was read before the unit was rolled up, so the latency goes in the next one instead
+					unit=limit+_granularity;
+					continue;
+				}
+				else
+				{
+					if (unit>currentunit)
+					{
+						int s=(int)Math.floorMod(unit/_granularity,(long)SLOTS)*CELLS;
+						slots[s+UNIT]=unit;
+						slots[s+COUNT]=0;
+						slots[s+SUM]=0;
+						current=s;
+						currentunit=unit;
+					}
+					slots[current+COUNT]++;
+					slots[current+SUM]+=latency;
+				}
+
+				totallatency+=latency;
+				operations++;
+
+				if (latency>max)
+				{
+					max=latency;
+				}
+
+				if ( (latency<min) || (min<0) )
+				{
+					min=latency;
+				}
+				return;
+			}
 		}
 	}
 
 
+	@Override
+	public long getOperations()
+	{
+		return operations;
+	}
+
   @Override
   public void exportMeasurements(MeasurementsExporter exporter) throws IOException
   {
-    checkEndOfUnit(true);
+    _series.flush();
 
     exporter.write(getName(), "Operations", operations);
     exporter.write(getName(), "AverageLatency(us)", (((double)totallatency)/((double)operations)));
@@ -140,14 +208,12 @@ public class OneMeasurementTimeSeries extends OneMeasurement
 
     for (Integer I : returncodes.keySet())
     {
-      int[] val=returncodes.get(I);
+      long[] val=returncodes.get(I);
       exporter.write(getName(), "Return="+I, val[0]);
     }     
 
-    for (SeriesUnit unit : _measurements)
-    {
-      exporter.write(getName(), Long.toString(unit.time), unit.average);
-    }
+    //the units that were not streamed as they completed
+    _series.writeUnits(exporter);
   }
 	
 	@Override
@@ -155,7 +221,7 @@ public class OneMeasurementTimeSeries extends OneMeasurement
 		Integer Icode=code;
 		if (!returncodes.containsKey(Icode))
 		{
-			int[] val=new int[1];
+			long[] val=new long[1];
 			val[0]=0;
 			returncodes.put(Icode,val);
 		}
@@ -164,16 +230,52 @@ public class OneMeasurementTimeSeries extends OneMeasurement
 	}
 
 	@Override
-	public String getSummary() {
+	public String getSummary(OneMeasurement previous) {
+		long windowoperations=operations;
+		long windowtotallatency=totallatency;
+		if (previous!=null)
+		{
+			OneMeasurementTimeSeries p=(OneMeasurementTimeSeries)previous;
+			windowoperations-=p.operations;
+			windowtotallatency-=p.totallatency;
+		}
 		if (windowoperations==0)
 		{
 			return "";
 		}
 		DecimalFormat d = new DecimalFormat("#.##");
 		double report=((double)windowtotallatency)/((double)windowoperations);
-		windowtotallatency=0;
-		windowoperations=0;
 		return "["+getName()+" AverageLatency(us)="+d.format(report)+"]";
 	}
 
+	@Override
+	public void merge(OneMeasurement other) {
+		OneMeasurementTimeSeries t=(OneMeasurementTimeSeries)other;
+
+		//the units are in the shared series, so only the totals are merged
+		operations+=t.operations;
+		totallatency+=t.totallatency;
+
+		if ( (t.min>=0) && ( (min<0) || (t.min<min) ) )
+		{
+			min=t.min;
+		}
+
+		if (t.max>max)
+		{
+			max=t.max;
+		}
+
+		for (Map.Entry<Integer,long[]> e : t.returncodes.entrySet())
+		{
+			long[] val=returncodes.get(e.getKey());
+			if (val==null)
+			{
+				val=new long[1];
+				returncodes.put(e.getKey(),val);
+			}
+			val[0]+=e.getValue()[0];
+		}
+	}
+
 }
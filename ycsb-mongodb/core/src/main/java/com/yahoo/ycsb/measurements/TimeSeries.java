@@ -0,0 +1,204 @@
+/**
+ * Copyright (c) 2010 Yahoo! Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.yahoo.ycsb.measurements;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.yahoo.ycsb.measurements.exporter.MeasurementsExporter;
+
+/**
+ * The completed units of the time series of one metric, shared by all the threads recording it.
+ * 
+ * Each thread accumulates the units it is recording in a few slots of its own OneMeasurementTimeSeries. When a
+ * thread enters a new unit, it rolls up every unit that ended at least a whole unit ago, summing the slots of
+ * all the threads, into a ring buffer of interval summaries. The unit of grace lets threads that read the clock
+ * just before the boundary finish recording into the unit they are in; any later than that record into the
+ * next unit not rolled up yet. The summaries are then streamed to
+ * the exporter, if one was set, or else kept for the export; the ring holds the last "timeseries.buffer" of
+ * them, so memory stays bounded however long the run.
+ */
+class TimeSeries
+{
+	final String _name;
+	final int _granularity;
+
+	/**
+	 * The recorders of the metric, each a OneMeasurementTimeSeries.
+	 */
+	final List<OneMeasurement> _recorders;
+
+	/**
+	 * The completed units, oldest at head.
+	 */
+	final long[] times;
+	final long[] counts;
+	final long[] sums;
+	int head=0;
+	int size=0;
+	long dropped=0;
+
+	/**
+	 * The time of the first unit rolled up, which the exported times are relative to.
+	 */
+	long start=-1;
+
+	/**
+	 * Every unit up to and including this one has been rolled up.
+	 */
+	volatile long rolled=Long.MIN_VALUE;
+
+	/**
+	 * The unit up to which the roll-up in progress, or the last one, takes the units. Recorders no longer record
+	 * into those.
+	 */
+	volatile long rolling=Long.MIN_VALUE;
+
+	volatile MeasurementsExporter stream=null;
+
+	TimeSeries(String name, int granularity, int capacity, List<OneMeasurement> recorders)
+	{
+		if ( (granularity<=0) || (capacity<=0) )
+		{
+			throw new IllegalArgumentException(OneMeasurementTimeSeries.GRANULARITY+" and "+OneMeasurementTimeSeries.BUFFER+" must be positive");
+		}
+		_name=name;
+		_granularity=granularity;
+		_recorders=recorders;
+		times=new long[capacity];
+		counts=new long[capacity];
+		sums=new long[capacity];
+	}
+
+	/**
+	 * Roll up the units that are complete once a thread enters the given unit: those that ended a unit before it.
+	 */
+	void roll(long unit)
+	{
+		rollUpTo(unit-2L*_granularity);
+	}
+
+	/**
+	 * Roll up every unit, including those still being recorded. Used for the final export, after which
+	 * the series records nothing more.
+	 */
+	void flush()
+	{
+		rollUpTo(Long.MAX_VALUE);
+	}
+
+	void rollUpTo(long upto)
+	{
+		if (upto<=rolled)
+		{
+			return;
+		}
+		synchronized(this)
+		{
+			if (upto<=rolled)
+			{
+				return;
+			}
+			//published before taking the units, so that a recorder taken already, or registered too late to be
+			//taken, sees that it must not record into them any more
+			rolling=upto;
+			TreeMap<Long,long[]> units=new TreeMap<Long,long[]>();
+			for (OneMeasurement m : _recorders)
+			{
+				((OneMeasurementTimeSeries)m).takeUnits(rolled,upto,units);
+			}
+			for (Map.Entry<Long,long[]> e : units.entrySet())
+			{
+				if (e.getValue()[0]>0)
+				{
+					add(e.getKey(),e.getValue()[0],e.getValue()[1]);
+				}
+			}
+			rolled=upto;
+		}
+		drain();
+	}
+
+	private void add(long time, long count, long sum)
+	{
+		if (start<0)
+		{
+			start=time;
+		}
+		if (size==times.length)
+		{
+			head=(head+1)%times.length;
+			size--;
+			dropped++;
+		}
+		int i=(head+size)%times.length;
+		times[i]=time;
+		counts[i]=count;
+		sums[i]=sum;
+		size++;
+	}
+
+	/**
+	 * Write the completed units to the stream, if there is one. If it fails, the units are kept for the export
+	 * instead.
+	 */
+	void drain()
+	{
+		MeasurementsExporter s=stream;
+		if (s==null)
+		{
+			return;
+		}
+		//the exporter is shared by every metric
+		synchronized(s)
+		{
+			synchronized(this)
+			{
+				try
+				{
+					writeUnits(s);
+				}
+				catch (IOException e)
+				{
+					System.err.println("Could not stream the time series of "+_name+", keeping it for the export: "+e.getMessage());
+					stream=null;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Write the completed units not written yet, and forget them.
+	 */
+	synchronized void writeUnits(MeasurementsExporter exporter) throws IOException
+	{
+		if (dropped>0)
+		{
+			exporter.write(_name,"DroppedUnits",dropped);
+			dropped=0;
+		}
+		while (size>0)
+		{
+			exporter.write(_name,Long.toString(times[head]-start),((double)sums[head])/((double)counts[head]));
+			head=(head+1)%times.length;
+			size--;
+		}
+	}
+}
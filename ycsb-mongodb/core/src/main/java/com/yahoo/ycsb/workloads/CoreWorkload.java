@@ -30,6 +30,7 @@ import com.yahoo.ycsb.generator.IntegerGenerator;
 import com.yahoo.ycsb.generator.ScrambledZipfianGenerator;
 import com.yahoo.ycsb.generator.SkewedLatestGenerator;
 import com.yahoo.ycsb.generator.UniformIntegerGenerator;
+import com.yahoo.ycsb.generator.ZetaCache;
 import com.yahoo.ycsb.generator.ZipfianGenerator;
 import com.yahoo.ycsb.measurements.Measurements;
 
@@ -53,11 +54,17 @@ import java.util.Vector;
  * <LI><b>updateproportion</b>: what proportion of operations should be updates (default: 0.05)
  * <LI><b>insertproportion</b>: what proportion of operations should be inserts (default: 0)
  * <LI><b>scanproportion</b>: what proportion of operations should be scans (default: 0)
- * <LI><b>readmodifywriteproportion</b>: what proportion of operations should be read a record, modify it, write it back (default: 0)
+ * <LI><b>readmodifywriteproportion</b>: what proportion of operations should be read a record, modify it, write it back (default: 0). Not supported with pipeline.depth>1
  * <LI><b>requestdistribution</b>: what distribution should be used to select the records to operate on - uniform, zipfian, hotspot, or latest (default: uniform)
+ * <LI><b>zipfianconstant</b>: the skew of the zipfian request distribution (default: 0.99)
+ * <LI><b>zipfiangenerator</b>: how to sample the zipfian and latest request distributions - gray or rejectioninversion (default: gray)
+ * <LI><b>zipfian.zetacache</b>: the file caching zeta constants for the gray zipfian generator between runs (default: none, computed every run)
  * <LI><b>maxscanlength</b>: for scans, what is the maximum number of records to scan (default: 1000)
  * <LI><b>scanlengthdistribution</b>: for scans, what distribution should be used to choose the number of records to scan, for each scan, between 1 and maxscanlength (default: uniform)
  * <LI><b>insertorder</b>: should records be inserted in order by key ("ordered"), or in hashed order ("hashed") (default: hashed)
+ * <LI><b>compressibility</b>: the ratio the field values compress by, with repeated n-grams between random bytes; see CompressibleByteIterator (default: 1, random printable bytes)
+ * <LI><b>valuepool</b>: the size in bytes of a slab of random bytes generated at startup, which field values are sliced from instead of being generated each time (default: 0, no slab)
+ * <LI><b>valuepool.offheap</b>: keep the valuepool slab outside the Java heap (default: false)
  * </ul> 
  */
 public class CoreWorkload extends Workload
@@ -122,6 +129,16 @@ public class CoreWorkload extends Workload
 	 * Generator object that produces field lengths.  The value of this depends on the properties that start with "FIELD_LENGTH_".
 	 */
 	IntegerGenerator fieldlengthgenerator;
+
+	/**
+	 * The slab that field values are sliced from, or null to generate each value. See {@link ValuePool}.
+	 */
+	ValuePool valuepool;
+
+	/**
+	 * The ratio field values compress by. See {@link CompressibleByteIterator}.
+	 */
+	double compressibility;
 	
 	/**
 	 * The name of the property for deciding whether to read one field (false) or all fields (true) of a record.
@@ -208,6 +225,34 @@ public class CoreWorkload extends Workload
 	 */
 	public static final String REQUEST_DISTRIBUTION_PROPERTY_DEFAULT="uniform";
 
+	/**
+	 * The name of the property for the zipfian constant of the "zipfian" request distribution.
+	 */
+	public static final String ZIPFIAN_CONSTANT_PROPERTY="zipfianconstant";
+
+	/**
+	 * The default zipfian constant.
+	 */
+	public static final String ZIPFIAN_CONSTANT_PROPERTY_DEFAULT="0.99";
+
+	/**
+	 * The name of the property for the algorithm sampling the "zipfian" and "latest" request distributions: "gray" (the
+	 * algorithm from Gray et al., which needs a zeta constant that takes O(n) to compute for a new item count or zipfian
+	 * constant) or "rejectioninversion" (constant time for any item count and zipfian constant).
+	 */
+	public static final String ZIPFIAN_GENERATOR_PROPERTY="zipfiangenerator";
+
+	/**
+	 * The default zipfian sampling algorithm.
+	 */
+	public static final String ZIPFIAN_GENERATOR_PROPERTY_DEFAULT="gray";
+
+	/**
+	 * The name of the property for the file caching the zeta constants computed by the "gray" algorithm between runs.
+	 * Unset or empty (the default) to keep them in memory only.
+	 */
+	public static final String ZETA_CACHE_PROPERTY="zipfian.zetacache";
+
 	/**
 	 * The name of the property for the max scan length (number of records)
 	 */
@@ -260,11 +305,56 @@ public class CoreWorkload extends Workload
 	
 	IntegerGenerator keysequence;
 
+	/**
+	 * The kinds of transaction operations.
+	 */
+	enum Operation
+	{
+		READ, UPDATE, INSERT, SCAN, READMODIFYWRITE
+	}
+
 	DiscreteGenerator operationchooser;
 
+	/**
+	 * The operations chosen by operationchooser, by index.
+	 */
+	Operation[] operations;
+
 	IntegerGenerator keychooser;
 
-	Generator fieldchooser;
+	IntegerGenerator fieldchooser;
+
+	/**
+	 * The field names, "field0" to "field"+(fieldcount-1), built once rather than on every operation.
+	 */
+	String[] fieldnames;
+
+	/**
+	 * Whether the read and scan result containers can be reused from one operation to the next. They can't
+	 * if operations are pipelined, because the DB fills them in after the call returns.
+	 */
+	boolean reuseresults;
+
+	/**
+	 * The containers a client thread reuses for its operations, so that reads and scans don't allocate
+	 * a new field set and result map every time.
+	 */
+	static class ThreadState
+	{
+		/**
+		 * A set holding just that field for each field, made on first use, so that choosing the field to read
+		 * doesn't refill a set.
+		 */
+		final HashSet<String>[] fields;
+		HashMap<String,ByteIterator> result=new HashMap<String,ByteIterator>();
+		Vector<HashMap<String,ByteIterator>> scanresult=new Vector<HashMap<String,ByteIterator>>();
+
+		@SuppressWarnings("unchecked")
+		ThreadState(int fieldcount)
+		{
+			fields=new HashSet[fieldcount];
+		}
+	}
 
 	CounterGenerator transactioninsertkeysequence;
 	
@@ -272,7 +362,7 @@ public class CoreWorkload extends Workload
 	
 	boolean orderedinserts;
 
-	int recordcount;
+	long recordcount;
 	
 	protected static IntegerGenerator getFieldLengthGenerator(Properties p) throws WorkloadException{
 		IntegerGenerator fieldlengthgenerator;
@@ -307,18 +397,35 @@ public class CoreWorkload extends Workload
 		
 		fieldcount=Integer.parseInt(p.getProperty(FIELD_COUNT_PROPERTY,FIELD_COUNT_PROPERTY_DEFAULT));
 		fieldlengthgenerator = CoreWorkload.getFieldLengthGenerator(p);
+		compressibility = Double.parseDouble(p.getProperty(CompressibleByteIterator.COMPRESSIBILITY_PROPERTY,CompressibleByteIterator.COMPRESSIBILITY_PROPERTY_DEFAULT));
+		valuepool = ValuePool.create(p);
+		fieldnames=new String[fieldcount];
+		for (int i=0; i<fieldcount; i++)
+		{
+			fieldnames[i]="field"+i;
+		}
+		reuseresults=Integer.parseInt(p.getProperty(AsyncDB.PIPELINE_DEPTH_PROPERTY,AsyncDB.PIPELINE_DEPTH_PROPERTY_DEFAULT))<=1;
 		
 		double readproportion=Double.parseDouble(p.getProperty(READ_PROPORTION_PROPERTY,READ_PROPORTION_PROPERTY_DEFAULT));
 		double updateproportion=Double.parseDouble(p.getProperty(UPDATE_PROPORTION_PROPERTY,UPDATE_PROPORTION_PROPERTY_DEFAULT));
 		double insertproportion=Double.parseDouble(p.getProperty(INSERT_PROPORTION_PROPERTY,INSERT_PROPORTION_PROPERTY_DEFAULT));
 		double scanproportion=Double.parseDouble(p.getProperty(SCAN_PROPORTION_PROPERTY,SCAN_PROPORTION_PROPERTY_DEFAULT));
 		double readmodifywriteproportion=Double.parseDouble(p.getProperty(READMODIFYWRITE_PROPORTION_PROPERTY,READMODIFYWRITE_PROPORTION_PROPERTY_DEFAULT));
-		recordcount=Integer.parseInt(p.getProperty(Client.RECORD_COUNT_PROPERTY));
+		recordcount=Long.parseLong(p.getProperty(Client.RECORD_COUNT_PROPERTY));
 		String requestdistrib=p.getProperty(REQUEST_DISTRIBUTION_PROPERTY,REQUEST_DISTRIBUTION_PROPERTY_DEFAULT);
 		int maxscanlength=Integer.parseInt(p.getProperty(MAX_SCAN_LENGTH_PROPERTY,MAX_SCAN_LENGTH_PROPERTY_DEFAULT));
 		String scanlengthdistrib=p.getProperty(SCAN_LENGTH_DISTRIBUTION_PROPERTY,SCAN_LENGTH_DISTRIBUTION_PROPERTY_DEFAULT);
+		double zipfianconstant=Double.parseDouble(p.getProperty(ZIPFIAN_CONSTANT_PROPERTY,ZIPFIAN_CONSTANT_PROPERTY_DEFAULT));
+		String zipfiangenerator=p.getProperty(ZIPFIAN_GENERATOR_PROPERTY,ZIPFIAN_GENERATOR_PROPERTY_DEFAULT);
+		if ( (zipfiangenerator.compareTo("gray")!=0) && (zipfiangenerator.compareTo("rejectioninversion")!=0) )
+		{
+			throw new WorkloadException("Unknown zipfian generator \""+zipfiangenerator+"\"");
+		}
+		boolean rejectioninversion=zipfiangenerator.compareTo("rejectioninversion")==0;
+		String zetacache=p.getProperty(ZETA_CACHE_PROPERTY);
+		ZetaCache.setFile((zetacache==null || zetacache.length()==0) ? null : zetacache);
 		
-		int insertstart=Integer.parseInt(p.getProperty(INSERT_START_PROPERTY,INSERT_START_PROPERTY_DEFAULT));
+		long insertstart=Long.parseLong(p.getProperty(INSERT_START_PROPERTY,INSERT_START_PROPERTY_DEFAULT));
 		
 		readallfields=Boolean.parseBoolean(p.getProperty(READ_ALL_FIELDS_PROPERTY,READ_ALL_FIELDS_PROPERTY_DEFAULT));
 		writeallfields=Boolean.parseBoolean(p.getProperty(WRITE_ALL_FIELDS_PROPERTY,WRITE_ALL_FIELDS_PROPERTY_DEFAULT));
@@ -342,29 +449,35 @@ public class CoreWorkload extends Workload
 
 		keysequence=new CounterGenerator(insertstart);
 		operationchooser=new DiscreteGenerator();
+		operations=new Operation[Operation.values().length];
 		if (readproportion>0)
 		{
-			operationchooser.addValue(readproportion,"READ");
+			addOperation(readproportion,Operation.READ);
 		}
 
 		if (updateproportion>0)
 		{
-			operationchooser.addValue(updateproportion,"UPDATE");
+			addOperation(updateproportion,Operation.UPDATE);
 		}
 
 		if (insertproportion>0)
 		{
-			operationchooser.addValue(insertproportion,"INSERT");
+			addOperation(insertproportion,Operation.INSERT);
 		}
 		
 		if (scanproportion>0)
 		{
-			operationchooser.addValue(scanproportion,"SCAN");
+			addOperation(scanproportion,Operation.SCAN);
 		}
 		
 		if (readmodifywriteproportion>0)
 		{
-			operationchooser.addValue(readmodifywriteproportion,"READMODIFYWRITE");
+			if (!reuseresults)
+			{
+				//a pipelined read returns before it is done, so the write would not follow it
+				throw new WorkloadException(READMODIFYWRITE_PROPORTION_PROPERTY+" is not supported with "+AsyncDB.PIPELINE_DEPTH_PROPERTY+">1");
+			}
+			addOperation(readmodifywriteproportion,Operation.READMODIFYWRITE);
 		}
 
 		transactioninsertkeysequence=new CounterGenerator(recordcount);
@@ -381,14 +494,14 @@ public class CoreWorkload extends Workload
 			//plus the number of predicted keys as the total keyspace. then, if the generator picks a key that hasn't been inserted yet, will
 			//just ignore it and pick another key. this way, the size of the keyspace doesn't change from the perspective of the scrambled zipfian generator
 			
-			int opcount=Integer.parseInt(p.getProperty(Client.OPERATION_COUNT_PROPERTY));
-			int expectednewkeys=(int)(((double)opcount)*insertproportion*2.0); //2 is fudge factor
+			long opcount=Long.parseLong(p.getProperty(Client.OPERATION_COUNT_PROPERTY));
+			long expectednewkeys=(long)(((double)opcount)*insertproportion*2.0); //2 is fudge factor
 			
-			keychooser=new ScrambledZipfianGenerator(recordcount+expectednewkeys);
+			keychooser=new ScrambledZipfianGenerator(0,recordcount+expectednewkeys-1,zipfianconstant,rejectioninversion);
 		}
 		else if (requestdistrib.compareTo("latest")==0)
 		{
-			keychooser=new SkewedLatestGenerator(transactioninsertkeysequence);
+			keychooser=new SkewedLatestGenerator(transactioninsertkeysequence,rejectioninversion);
 		}
 		else if (requestdistrib.equals("hotspot")) 
 		{
@@ -420,6 +533,23 @@ public class CoreWorkload extends Workload
 		}
 	}
 
+	void addOperation(double proportion, Operation op)
+	{
+		operations[operationchooser.addValue(proportion,op.name())]=op;
+	}
+
+	/**
+	 * Create the per-thread containers reused by the operations of one client thread.
+	 */
+	public Object initThread(Properties p, int mythreadid, int threadcount) throws WorkloadException
+	{
+		return new ThreadState(fieldcount);
+	}
+
+	/**
+	 * Return the key of the given record. This allocates a new String for every operation, which cannot be
+	 * avoided as the DB interface takes keys as Strings; everything else an operation needs is reused.
+	 */
 	public String buildKeyName(long keynum) {
  		if (!orderedinserts)
  		{
@@ -427,13 +557,25 @@ public class CoreWorkload extends Workload
  		}
 		return "user"+keynum;
 	}
+
+
+	/**
+	 * Return a new field value of the given length.
+	 */
+	ByteIterator buildValue(int len) {
+		if (valuepool!=null)
+		{
+			return valuepool.value(len);
+		}
+		return CompressibleByteIterator.create(len,compressibility);
+	}
 	HashMap<String, ByteIterator> buildValues() {
  		HashMap<String,ByteIterator> values=new HashMap<String,ByteIterator>();
 
  		for (int i=0; i<fieldcount; i++)
  		{
- 			String fieldkey="field"+i;
- 			ByteIterator data= new RandomByteIterator(fieldlengthgenerator.nextInt());
+ 			String fieldkey=fieldnames[i];
+ 			ByteIterator data= buildValue(fieldlengthgenerator.nextInt());
  			values.put(fieldkey,data);
  		}
 		return values;
@@ -441,8 +583,8 @@ public class CoreWorkload extends Workload
 	HashMap<String, ByteIterator> buildUpdate() {
 		//update a random field
 		HashMap<String, ByteIterator> values=new HashMap<String,ByteIterator>();
-		String fieldname="field"+fieldchooser.nextString();
-		ByteIterator data = new RandomByteIterator(fieldlengthgenerator.nextInt());
+		String fieldname=fieldnames[fieldchooser.nextInt()];
+		ByteIterator data = buildValue(fieldlengthgenerator.nextInt());
 		values.put(fieldname,data);
 		return values;
 	}
@@ -455,13 +597,12 @@ public class CoreWorkload extends Workload
 	 */
 	public boolean doInsert(DB db, Object threadstate)
 	{
-		int keynum=keysequence.nextInt();
+		long keynum=keysequence.nextLong();
 		String dbkey = buildKeyName(keynum);
 		HashMap<String, ByteIterator> values = buildValues();
-		if (db.insert(table,dbkey,values) == 0)
-			return true;
-		else
-			return false;
+		int res=db.insert(table,dbkey,values);
+		//a pipelined insert has not failed yet; if it does, its return code is counted when it completes
+		return res==0 || res==DB.PENDING;
 	}
 
 	/**
@@ -472,88 +613,103 @@ public class CoreWorkload extends Workload
 	 */
 	public boolean doTransaction(DB db, Object threadstate)
 	{
-		String op=operationchooser.nextString();
+		ThreadState state=(ThreadState)threadstate;
 
-		if (op.compareTo("READ")==0)
-		{
-			doTransactionRead(db);
-		}
-		else if (op.compareTo("UPDATE")==0)
+		switch (operations[operationchooser.nextIndex()])
 		{
+		case READ:
+			doTransactionRead(db,state);
+			break;
+		case UPDATE:
 			doTransactionUpdate(db);
-		}
-		else if (op.compareTo("INSERT")==0)
-		{
+			break;
+		case INSERT:
 			doTransactionInsert(db);
-		}
-		else if (op.compareTo("SCAN")==0)
-		{
-			doTransactionScan(db);
-		}
-		else
-		{
-			doTransactionReadModifyWrite(db);
+			break;
+		case SCAN:
+			doTransactionScan(db,state);
+			break;
+		default:
+			doTransactionReadModifyWrite(db,state);
+			break;
 		}
 		
 		return true;
 	}
 
-    int nextKeynum() {
-        int keynum;
+    long nextKeynum() {
+        long keynum;
         if(keychooser instanceof ExponentialGenerator) {
             do
                 {
-                    keynum=transactioninsertkeysequence.lastInt() - keychooser.nextInt();
+                    keynum=transactioninsertkeysequence.lastLong() - keychooser.nextLong();
                 }
             while(keynum < 0);
         } else {
             do
                 {
-                    keynum=keychooser.nextInt();
+                    keynum=keychooser.nextLong();
                 }
-            while (keynum > transactioninsertkeysequence.lastInt());
+            while (keynum > transactioninsertkeysequence.lastLong());
         }
         return keynum;
     }
 
-	public void doTransactionRead(DB db)
+	/**
+	 * Return the field set to read: null to read all the fields, or a set holding one random field.
+	 */
+	HashSet<String> chooseFields(ThreadState state)
 	{
-		//choose a random key
-		int keynum = nextKeynum();
-		
-		String keyname = buildKeyName(keynum);
-		
-		HashSet<String> fields=null;
-
-		if (!readallfields)
+		if (readallfields)
 		{
-			//read a random field  
-			String fieldname="field"+fieldchooser.nextString();
+			return null;
+		}
 
+		//read a random field  
+		int field=fieldchooser.nextInt();
+		HashSet<String> fields=reuseresults ? state.fields[field] : null;
+		if (fields==null)
+		{
 			fields=new HashSet<String>();
-			fields.add(fieldname);
+			fields.add(fieldnames[field]);
+			if (reuseresults)
+			{
+				state.fields[field]=fields;
+			}
 		}
+		return fields;
+	}
 
-		db.read(table,keyname,fields,new HashMap<String,ByteIterator>());
+	HashMap<String,ByteIterator> resultMap(ThreadState state)
+	{
+		if (!reuseresults)
+		{
+			return new HashMap<String,ByteIterator>();
+		}
+		state.result.clear();
+		return state.result;
 	}
-	
-	public void doTransactionReadModifyWrite(DB db)
+
+	public void doTransactionRead(DB db, ThreadState state)
 	{
 		//choose a random key
-		int keynum = nextKeynum();
-
+		long keynum = nextKeynum();
+		
 		String keyname = buildKeyName(keynum);
+		
+		HashSet<String> fields=chooseFields(state);
 
-		HashSet<String> fields=null;
+		db.read(table,keyname,fields,resultMap(state));
+	}
+	
+	public void doTransactionReadModifyWrite(DB db, ThreadState state)
+	{
+		//choose a random key
+		long keynum = nextKeynum();
 
-		if (!readallfields)
-		{
-			//read a random field  
-			String fieldname="field"+fieldchooser.nextString();
+		String keyname = buildKeyName(keynum);
 
-			fields=new HashSet<String>();
-			fields.add(fieldname);
-		}
+		HashSet<String> fields=chooseFields(state);
 		
 		HashMap<String,ByteIterator> values;
 
@@ -570,45 +726,55 @@ public class CoreWorkload extends Workload
 
 		//do the transaction
 		
+		Measurements measurements=Measurements.getMeasurements();
+
+		long ist=measurements.getIntendedStartTimeNs();
+
 		long st=System.nanoTime();
 
-		db.read(table,keyname,fields,new HashMap<String,ByteIterator>());
-		
+		db.read(table,keyname,fields,resultMap(state));
+
+		//the update cannot start before the read is done (init() rejects pipelining, where it could), so it is
+		//measured from its actual start; only the read and the whole transaction are behind the schedule
+		measurements.setIntendedStartTimeNs(0);
 		db.update(table,keyname,values);
+		measurements.setIntendedStartTimeNs(ist);
 
 		long en=System.nanoTime();
 		
-		Measurements.getMeasurements().measure("READ-MODIFY-WRITE", (int)((en-st)/1000));
+		measurements.measure("READ-MODIFY-WRITE", (int)((en-st)/1000));
+		measurements.measureIntended("READ-MODIFY-WRITE", (int)((en-(ist==0 ? st : ist))/1000));
 	}
 	
-	public void doTransactionScan(DB db)
+	public void doTransactionScan(DB db, ThreadState state)
 	{
 		//choose a random key
-		int keynum = nextKeynum();
+		long keynum = nextKeynum();
 
 		String startkeyname = buildKeyName(keynum);
 		
 		//choose a random scan length
 		int len=scanlength.nextInt();
 
-		HashSet<String> fields=null;
+		HashSet<String> fields=chooseFields(state);
 
-		if (!readallfields)
+		Vector<HashMap<String,ByteIterator>> result;
+		if (reuseresults)
 		{
-			//read a random field  
-			String fieldname="field"+fieldchooser.nextString();
-
-			fields=new HashSet<String>();
-			fields.add(fieldname);
+			result=state.scanresult;
+			result.clear();
 		}
-
-		db.scan(table,startkeyname,len,fields,new Vector<HashMap<String,ByteIterator>>());
+		else
+		{
+			result=new Vector<HashMap<String,ByteIterator>>();
+		}
+		db.scan(table,startkeyname,len,fields,result);
 	}
 
 	public void doTransactionUpdate(DB db)
 	{
 		//choose a random key
-		int keynum = nextKeynum();
+		long keynum = nextKeynum();
 
 		String keyname=buildKeyName(keynum);
 
@@ -631,7 +797,7 @@ public class CoreWorkload extends Workload
 	public void doTransactionInsert(DB db)
 	{
 		//choose the next key
-		int keynum=transactioninsertkeysequence.nextInt();
+		long keynum=transactioninsertkeysequence.nextLong();
 
 		String dbkey = buildKeyName(keynum);
 
@@ -0,0 +1,391 @@
+/**
+ * Copyright (c) 2010 Yahoo! Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.yahoo.ycsb.workloads;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Vector;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import com.yahoo.ycsb.AsyncDB;
+import com.yahoo.ycsb.ByteIterator;
+import com.yahoo.ycsb.DB;
+import com.yahoo.ycsb.CompressibleByteIterator;
+import com.yahoo.ycsb.TraceWriter;
+import com.yahoo.ycsb.Workload;
+import com.yahoo.ycsb.WorkloadException;
+import com.yahoo.ycsb.measurements.Measurements;
+
+/**
+ * Replays a trace recorded with the "trace.record" property, see TraceWriter for the format. Values are
+ * replayed as random bytes of the recorded sizes.
+ * 
+ * The trace is memory-mapped and its blocks are dealt out to the client threads in turn, so each thread
+ * decodes its own part of the file without any locking. A thread is done when its blocks are, so set
+ * operationcount (or insertcount, for the load phase) to 0 to replay the whole trace. Threads replay blocks
+ * recorded by different threads, so an operation may come due before the previous one; it is then issued at once.
+ * Values compress by the ratio given by the "compressibility" property, as with CoreWorkload.
+ * <p>
+ * Properties to control the client:
+ * </p>
+ * <UL>
+ * <LI><b>trace.file</b>: the trace to replay (required)
+ * <LI><b>trace.speed</b>: issue each operation at its recorded time divided by this, counted from the first
+ * operation replayed; 2 replays twice as fast. 0 issues the operations as fast as possible (default: 1)
+ * </ul>
+ */
+public class TraceWorkload extends Workload
+{
+	public static final String TRACE_FILE_PROPERTY="trace.file";
+
+	public static final String TRACE_SPEED_PROPERTY="trace.speed";
+
+	public static final String TRACE_SPEED_PROPERTY_DEFAULT="1";
+
+	/** The start of each block's records in the file. */
+	long[] blockstart;
+
+	/** The number of records in each block. */
+	int[] blockcount;
+
+	/** The time of the first record of each block. */
+	long[] blockbase;
+
+	/** The mappings of the file, each as long as possible. */
+	MappedByteBuffer[] segments;
+
+	/** The offset in the file at which each mapping starts. */
+	long[] segmentstart;
+
+	/** The mapping each block is in. */
+	int[] blocksegment;
+
+	double speed;
+
+	double compressibility;
+
+	/** The System.nanoTime() at which the first operation was replayed, or 0 before that. */
+	final AtomicLong start=new AtomicLong();
+
+	Measurements _measurements;
+
+	/**
+	 * Whether the field set and result containers can be reused from one operation to the next. They cannot when
+	 * operations are pipelined, as an operation may still be using them when the next one starts.
+	 */
+	boolean reuseresults;
+
+	/**
+	 * The replay position of one client thread.
+	 */
+	static final class TraceState
+	{
+		boolean reuse;
+		int block;
+		int stride;
+		ByteBuffer buf;
+		int left;
+		long base;
+		byte[] scratch=new byte[256];
+		HashSet<String> fields=new HashSet<String>();
+		HashMap<String,ByteIterator> result=new HashMap<String,ByteIterator>();
+		Vector<HashMap<String,ByteIterator>> results=new Vector<HashMap<String,ByteIterator>>();
+	}
+
+	@Override
+	public void init(Properties p) throws WorkloadException
+	{
+		String file=p.getProperty(TRACE_FILE_PROPERTY);
+		if (file==null)
+		{
+			throw new WorkloadException("Missing property: "+TRACE_FILE_PROPERTY);
+		}
+		speed=Double.parseDouble(p.getProperty(TRACE_SPEED_PROPERTY,TRACE_SPEED_PROPERTY_DEFAULT));
+		compressibility=Double.parseDouble(p.getProperty(CompressibleByteIterator.COMPRESSIBILITY_PROPERTY,CompressibleByteIterator.COMPRESSIBILITY_PROPERTY_DEFAULT));
+		_measurements=Measurements.getMeasurements();
+		reuseresults=Integer.parseInt(p.getProperty(AsyncDB.PIPELINE_DEPTH_PROPERTY,AsyncDB.PIPELINE_DEPTH_PROPERTY_DEFAULT))<=1;
+
+		try (FileChannel channel=FileChannel.open(Paths.get(file),StandardOpenOption.READ))
+		{
+			long size=channel.size();
+			ByteBuffer header=ByteBuffer.allocate(TraceWriter.BLOCK_HEADER).order(ByteOrder.LITTLE_ENDIAN);
+			readFully(channel,header,0,TraceWriter.MAGIC.length);
+			if (!Arrays.equals(Arrays.copyOf(header.array(),TraceWriter.MAGIC.length),TraceWriter.MAGIC))
+			{
+				throw new WorkloadException(file+" is not a trace");
+			}
+
+			//index the blocks from their headers
+			ArrayList<long[]> blocks=new ArrayList<long[]>();
+			long pos=TraceWriter.MAGIC.length;
+			while (pos<size)
+			{
+				readFully(channel,header,pos,TraceWriter.BLOCK_HEADER);
+				int length=header.getInt(0);
+				if (length<0 || pos+TraceWriter.BLOCK_HEADER+length>size)
+				{
+					System.err.println("Ignoring the truncated end of "+file);
+					break;
+				}
+				blocks.add(new long[] {pos+TraceWriter.BLOCK_HEADER,length,header.getInt(4),header.getLong(8)});
+				pos+=TraceWriter.BLOCK_HEADER+length;
+			}
+
+			int n=blocks.size();
+			blockstart=new long[n];
+			blockcount=new int[n];
+			blockbase=new long[n];
+			blocksegment=new int[n];
+
+			//map runs of whole blocks, as many as fit in one buffer
+			ArrayList<MappedByteBuffer> maps=new ArrayList<MappedByteBuffer>();
+			ArrayList<Long> mapstarts=new ArrayList<Long>();
+			int first=0;
+			for (int i=0; i<n; i++)
+			{
+				long[] b=blocks.get(i);
+				blockstart[i]=b[0];
+				blockcount[i]=(int)b[2];
+				blockbase[i]=b[3];
+				long end=b[0]+b[1];
+				if (i==n-1 || blocks.get(i+1)[0]+blocks.get(i+1)[1]-blocks.get(first)[0]>Integer.MAX_VALUE)
+				{
+					long from=blocks.get(first)[0];
+					MappedByteBuffer map=channel.map(FileChannel.MapMode.READ_ONLY,from,end-from);
+					for (int k=first; k<=i; k++)
+					{
+						blocksegment[k]=maps.size();
+					}
+					maps.add(map);
+					mapstarts.add(from);
+					first=i+1;
+				}
+			}
+			segments=maps.toArray(new MappedByteBuffer[maps.size()]);
+			segmentstart=new long[segments.length];
+			for (int i=0; i<segments.length; i++)
+			{
+				segmentstart[i]=mapstarts.get(i);
+			}
+		}
+		catch (IOException e)
+		{
+			throw new WorkloadException("Could not read "+file+": "+e.getMessage(),e);
+		}
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer buf, long pos, int length) throws IOException
+	{
+		buf.clear().limit(length);
+		while (buf.hasRemaining())
+		{
+			if (channel.read(buf,pos+buf.position())<0)
+			{
+				throw new IOException("unexpected end of file");
+			}
+		}
+	}
+
+	@Override
+	public Object initThread(Properties p, int mythreadid, int threadcount) throws WorkloadException
+	{
+		TraceState state=new TraceState();
+		state.reuse=reuseresults;
+		state.block=mythreadid-threadcount;
+		state.stride=threadcount;
+		return state;
+	}
+
+	/**
+	 * Move on to the thread's next block, if its current one is done.
+	 *
+	 * @return false if the thread has no blocks left.
+	 */
+	boolean advance(TraceState state)
+	{
+		while (state.left==0)
+		{
+			state.block+=state.stride;
+			if (state.block>=blockstart.length)
+			{
+				return false;
+			}
+			int s=blocksegment[state.block];
+			ByteBuffer buf=segments[s].duplicate().order(ByteOrder.LITTLE_ENDIAN);
+			buf.position((int)(blockstart[state.block]-segmentstart[s]));
+			state.buf=buf;
+			state.left=blockcount[state.block];
+			state.base=blockbase[state.block];
+		}
+		return true;
+	}
+
+	static long getVarLong(ByteBuffer buf)
+	{
+		long v=0;
+		int shift=0;
+		byte b;
+		do
+		{
+			b=buf.get();
+			v|=(long)(b&0x7f)<<shift;
+			shift+=7;
+		}
+		while (b<0);
+		return v;
+	}
+
+	static String getString(ByteBuffer buf, TraceState state)
+	{
+		int length=(int)getVarLong(buf);
+		if (length>state.scratch.length)
+		{
+			state.scratch=new byte[Math.max(length,state.scratch.length*2)];
+		}
+		buf.get(state.scratch,0,length);
+		return new String(state.scratch,0,length,StandardCharsets.UTF_8);
+	}
+
+	static HashSet<String> getFields(ByteBuffer buf, TraceState state)
+	{
+		int n=(int)getVarLong(buf);
+		if (n==0)
+		{
+			return null;
+		}
+		HashSet<String> fields=state.reuse ? state.fields : new HashSet<String>();
+		fields.clear();
+		for (int i=1; i<n; i++)
+		{
+			fields.add(getString(buf,state));
+		}
+		return fields;
+	}
+
+	/**
+	 * Wait until the operation recorded at the given time is due, and set it as the intended start.
+	 */
+	void pace(long time)
+	{
+		if (speed<=0)
+		{
+			return;
+		}
+		long st=start.get();
+		if (st==0)
+		{
+			start.compareAndSet(0,System.nanoTime()-(long)(time/speed));
+			st=start.get();
+		}
+		long due=st+(long)(time/speed);
+		long now;
+		while ((now=System.nanoTime())<due)
+		{
+			LockSupport.parkNanos(due-now);
+		}
+		_measurements.setIntendedStartTimeNs(due);
+	}
+
+	@Override
+	public boolean doInsert(DB db, Object threadstate)
+	{
+		return doTransaction(db,threadstate);
+	}
+
+	@Override
+	public boolean doTransaction(DB db, Object threadstate)
+	{
+		TraceState state=(TraceState)threadstate;
+		if (!advance(state))
+		{
+			return false;
+		}
+		ByteBuffer buf=state.buf;
+		state.left--;
+		byte op=buf.get();
+		long delta=getVarLong(buf);
+		long time=state.base+((delta>>>1)^-(delta&1));
+		String table=getString(buf,state);
+		String key=getString(buf,state);
+		switch (op)
+		{
+		case TraceWriter.READ:
+		{
+			HashSet<String> fields=getFields(buf,state);
+			pace(time);
+			HashMap<String,ByteIterator> result=state.reuse ? state.result : new HashMap<String,ByteIterator>();
+			result.clear();
+			db.read(table,key,fields,result);
+			break;
+		}
+		case TraceWriter.SCAN:
+		{
+			int recordcount=(int)getVarLong(buf);
+			HashSet<String> fields=getFields(buf,state);
+			pace(time);
+			Vector<HashMap<String,ByteIterator>> results=state.reuse ? state.results : new Vector<HashMap<String,ByteIterator>>();
+			results.clear();
+			db.scan(table,key,recordcount,fields,results);
+			break;
+		}
+		case TraceWriter.UPDATE:
+		case TraceWriter.INSERT:
+		{
+			//the DB may keep the map, e.g. to batch the write, so it cannot be reused
+			HashMap<String,ByteIterator> values=new HashMap<String,ByteIterator>();
+			int n=(int)getVarLong(buf);
+			for (int i=0; i<n; i++)
+			{
+				String field=getString(buf,state);
+				values.put(field,CompressibleByteIterator.create(getVarLong(buf),compressibility));
+			}
+			pace(time);
+			if (op==TraceWriter.UPDATE)
+			{
+				db.update(table,key,values);
+			}
+			else
+			{
+				db.insert(table,key,values);
+			}
+			break;
+		}
+		case TraceWriter.DELETE:
+			pace(time);
+			db.delete(table,key);
+			break;
+		default:
+			System.err.println("Unknown operation "+op+" in trace, skipping the rest of the block");
+			state.left=0;
+			break;
+		}
+		return true;
+	}
+}
@@ -0,0 +1,308 @@
+package com.yahoo.ycsb;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.Vector;
+
+import org.testng.annotations.Test;
+import static org.testng.AssertJUnit.*;
+
+import com.yahoo.ycsb.measurements.Measurements;
+import com.yahoo.ycsb.measurements.exporter.MeasurementsExporter;
+
+public class TestBatcher {
+  /**
+   * Records the size of each batch, and applies all but the given number of operations of each.
+   */
+  static class ListBatcher extends Batcher<String> {
+    Vector<Integer> batches = new Vector<Integer>();
+    int failures;
+
+    ListBatcher(String operation, Properties p, int failures) throws DBException {
+      super(operation, p);
+      this.failures = failures;
+    }
+
+    protected long execute(String table, List<String> items) {
+      batches.add(items.size());
+      return items.size() - failures;
+    }
+  }
+
+  private static Properties props(String size, String bytes, String interval) {
+    Properties p = new Properties();
+    p.setProperty(Batcher.BATCH_SIZE_PROPERTY, size);
+    p.setProperty(Batcher.BATCH_BYTES_PROPERTY, bytes);
+    p.setProperty(Batcher.BATCH_INTERVAL_PROPERTY, interval);
+    return p;
+  }
+
+  private static HashMap<String,Double> export() throws Exception {
+    final HashMap<String,Double> values = new HashMap<String,Double>();
+    Measurements.getMeasurements().exportMeasurements(new MeasurementsExporter() {
+      public void write(String metric, String measurement, int i) {
+        values.put(metric + " " + measurement, (double) i);
+      }
+
+      public void write(String metric, String measurement, long l) {
+        values.put(metric + " " + measurement, (double) l);
+      }
+
+      public void write(String metric, String measurement, double d) {
+        values.put(metric + " " + measurement, d);
+      }
+
+      public void close() {
+      }
+    });
+    return values;
+  }
+
+  @Test
+  public void testFlushesOnSizeAndClose() throws Exception {
+    Measurements.setProperties(new Properties());
+    ListBatcher b = new ListBatcher("SIZED", props("4", "0", "0"), 0);
+    for (int i = 0; i < 10; i++) {
+      assertEquals(DB.BATCHED, b.add("t", "k" + i, 10));
+    }
+    assertEquals(2, b.batches.size());
+    b.close();
+    assertEquals(3, b.batches.size());
+    assertEquals(2, (int) b.batches.get(2));
+
+    HashMap<String,Double> values = export();
+    assertEquals(10.0, values.get("SIZED Operations"));
+    assertEquals(10.0, values.get("SIZED Return=0"));
+    assertEquals(3.0, values.get("SIZED-BATCH Operations"));
+  }
+
+  @Test
+  public void testFlushesOnBytesAndTable() throws Exception {
+    Measurements.setProperties(new Properties());
+    ListBatcher b = new ListBatcher("BYTES", props("100", "25", "0"), 0);
+    b.add("t", "a", 10);
+    b.add("t", "b", 10);
+    assertEquals(0, b.batches.size());
+    b.add("t", "c", 10);
+    assertEquals(1, b.batches.size());
+    b.add("t", "d", 10);
+    b.add("u", "e", 10);
+    assertEquals(2, b.batches.size());
+    assertEquals(1, (int) b.batches.get(1));
+  }
+
+  @Test
+  public void testFlushesOnInterval() throws Exception {
+    Measurements.setProperties(new Properties());
+    ListBatcher b = new ListBatcher("TIMED", props("100", "0", "20"), 0);
+    b.add("t", "a", 10);
+    b.flushIfDue();
+    assertEquals(0, b.batches.size());
+    Thread.sleep(30);
+    // nothing runs behind the owning thread's back
+    assertEquals(0, b.batches.size());
+    b.add("t", "b", 10);
+    assertEquals(1, b.batches.size());
+    assertEquals(1, (int) b.batches.get(0));
+    Thread.sleep(30);
+    b.flushIfDue();
+    assertEquals(2, b.batches.size());
+    b.close();
+    assertEquals(2, b.batches.size());
+  }
+
+  @Test
+  public void testRejectsBadProperties() {
+    String[][] bad = { {"0", "0", "0"}, {"x", "0", "0"}, {"2", "-1", "0"}, {"2", "0", "-5"} };
+    for (String[] b : bad) {
+      try {
+        new ListBatcher("BAD", props(b[0], b[1], b[2]), 0);
+        fail("accepted " + b[0] + " " + b[1] + " " + b[2]);
+      } catch (DBException e) {
+        // expected
+      }
+    }
+  }
+
+  @Test
+  public void testCountsPartialFailures() throws Exception {
+    Measurements.setProperties(new Properties());
+    ListBatcher b = new ListBatcher("PARTIAL", props("5", "0", "0"), 2);
+    for (int i = 0; i < 10; i++) {
+      b.add("t", "k" + i, 10);
+    }
+    HashMap<String,Double> values = export();
+    assertEquals(6.0, values.get("PARTIAL Return=0"));
+    assertEquals(4.0, values.get("PARTIAL Return=1"));
+    assertEquals(2.0, values.get("PARTIAL-BATCH Return=1"));
+  }
+
+  @Test
+  public void testMeasuresIntendedLatencies() throws Exception {
+    Properties mp = new Properties();
+    mp.setProperty(Measurements.MEASUREMENT_INTERVAL, "intended");
+    Measurements.setProperties(mp);
+    try {
+      Measurements m = Measurements.reset();
+      ListBatcher b = new ListBatcher("INTENDED", props("3", "0", "0"), 0);
+      // two operations 5ms behind schedule, and one that is not scheduled
+      m.setIntendedStartTimeNs(System.nanoTime() - 5000000);
+      b.add("t", "a", 10);
+      b.add("t", "b", 10);
+      m.setIntendedStartTimeNs(0);
+      b.add("t", "c", 10);
+      assertEquals(1, b.batches.size());
+
+      HashMap<String,Double> values = export();
+      assertNull(values.get("INTENDED Operations"));
+      assertEquals(3.0, values.get("Intended-INTENDED Operations"));
+      assertEquals(3.0, values.get("Intended-INTENDED Return=0"));
+      assertTrue(values.get("Intended-INTENDED MaxLatency(us)") >= 5000);
+      assertTrue(values.get("Intended-INTENDED MinLatency(us)") < 5000);
+    } finally {
+      Measurements.setProperties(new Properties());
+      Measurements.reset();
+    }
+  }
+
+  /**
+   * Queues updates and deletes like a DB configured with writebatchsize and writebatch.interval. Updates of keys
+   * starting with "missing" match nothing.
+   */
+  static class WriteBatchDB extends DB {
+    Vector<Integer> updateBatches = new Vector<Integer>();
+    Vector<Integer> deleteBatches = new Vector<Integer>();
+    Batcher<String> updates;
+    Batcher<String> deletes;
+
+    public void init() throws DBException {
+      int size = Integer.parseInt(getProperties().getProperty("writebatchsize", "1"));
+      long interval = Long.parseLong(getProperties().getProperty("writebatch.interval", "10"));
+      updates = new Batcher<String>("UPDATE", size, 0, interval) {
+        protected long execute(String table, List<String> items) {
+          updateBatches.add(items.size());
+          long matched = 0;
+          for (String key : items) {
+            if (!key.startsWith("missing")) {
+              matched++;
+            }
+          }
+          return matched;
+        }
+      };
+      deletes = new Batcher<String>("DELETE", size, 0, interval) {
+        protected long execute(String table, List<String> items) {
+          deleteBatches.add(items.size());
+          return items.size();
+        }
+      };
+    }
+
+    public void cleanup() {
+      updates.close();
+      deletes.close();
+    }
+
+    public int read(String table, String key, Set<String> fields, HashMap<String,ByteIterator> result) {
+      updates.flushIfDue();
+      deletes.flushIfDue();
+      return 0;
+    }
+
+    public int scan(String table, String startkey, int recordcount, Set<String> fields, Vector<HashMap<String,ByteIterator>> result) {
+      return 0;
+    }
+
+    public int update(String table, String key, HashMap<String,ByteIterator> values) {
+      return updates.enabled() ? updates.add(table, key, 0) : 0;
+    }
+
+    public int insert(String table, String key, HashMap<String,ByteIterator> values) {
+      return 0;
+    }
+
+    public int delete(String table, String key) {
+      return deletes.enabled() ? deletes.add(table, key, 0) : 0;
+    }
+  }
+
+  @Test
+  public void testWriteBatchSizeGroupsUpdatesAndDeletes() throws Exception {
+    Measurements.setProperties(new Properties());
+    Measurements.reset();
+    WriteBatchDB db = new WriteBatchDB();
+    Properties p = new Properties();
+    p.setProperty("writebatchsize", "4");
+    p.setProperty("writebatch.interval", "0");
+    DBWrapper wrapper = new DBWrapper(db);
+    wrapper.setProperties(p);
+    wrapper.init();
+    HashMap<String,ByteIterator> values = new HashMap<String,ByteIterator>();
+    for (int i = 0; i < 10; i++) {
+      // the workload sees a queued write as done
+      assertEquals(0, wrapper.update("t", (i == 2 ? "missing" : "k") + i, values));
+      assertEquals(0, wrapper.delete("t", "k" + i));
+    }
+    assertEquals(2, db.updateBatches.size());
+    assertEquals(2, db.deleteBatches.size());
+    wrapper.cleanup();
+    assertEquals(3, db.updateBatches.size());
+    assertEquals(2, (int) db.updateBatches.get(2));
+    assertEquals(3, db.deleteBatches.size());
+
+    HashMap<String,Double> exported = export();
+    assertEquals(10.0, exported.get("UPDATE Operations"));
+    assertEquals(9.0, exported.get("UPDATE Return=0"));
+    assertEquals(1.0, exported.get("UPDATE Return=1"));
+    assertEquals(3.0, exported.get("UPDATE-BATCH Operations"));
+    assertEquals(10.0, exported.get("DELETE Return=0"));
+    assertEquals(3.0, exported.get("DELETE-BATCH Operations"));
+  }
+
+  @Test
+  public void testWriteBatchIntervalReleasesWritesOnTheNextOperation() throws Exception {
+    Measurements.setProperties(new Properties());
+    Measurements.reset();
+    WriteBatchDB db = new WriteBatchDB();
+    Properties p = new Properties();
+    p.setProperty("writebatchsize", "100");
+    p.setProperty("writebatch.interval", "20");
+    DBWrapper wrapper = new DBWrapper(db);
+    wrapper.setProperties(p);
+    wrapper.init();
+    HashMap<String,ByteIterator> values = new HashMap<String,ByteIterator>();
+    wrapper.update("t", "a", values);
+    wrapper.delete("t", "b");
+    wrapper.read("t", "c", null, new HashMap<String,ByteIterator>());
+    assertEquals(0, db.updateBatches.size());
+    Thread.sleep(30);
+    // a read releases both overdue batches
+    wrapper.read("t", "c", null, new HashMap<String,ByteIterator>());
+    assertEquals(1, db.updateBatches.size());
+    assertEquals(1, db.deleteBatches.size());
+    wrapper.update("t", "d", values);
+    Thread.sleep(30);
+    // an update releases the overdue batch before it is queued itself
+    wrapper.update("t", "e", values);
+    assertEquals(2, db.updateBatches.size());
+    wrapper.cleanup();
+    assertEquals(3, db.updateBatches.size());
+  }
+
+  @Test
+  public void testWriteBatchSizeOfOneExecutesEachWrite() throws Exception {
+    Measurements.setProperties(new Properties());
+    Measurements.reset();
+    WriteBatchDB db = new WriteBatchDB();
+    DBWrapper wrapper = new DBWrapper(db);
+    wrapper.setProperties(new Properties());
+    wrapper.init();
+    wrapper.update("t", "a", new HashMap<String,ByteIterator>());
+    wrapper.cleanup();
+    assertEquals(0, db.updateBatches.size());
+    assertEquals(1.0, export().get("UPDATE Operations"));
+    assertNull(export().get("UPDATE-BATCH Operations"));
+  }
+}
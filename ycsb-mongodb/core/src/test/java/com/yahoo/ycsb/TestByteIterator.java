@@ -19,4 +19,50 @@ public class TestByteIterator {
     assertFalse(itor.hasNext());
     assertEquals(0, itor.bytesLeft());
   }
+
+  @Test
+  public void testRandomBytesArePrintableAndStayInBounds() {
+    for (int size = 0; size < 40; size++) {
+      byte[] buf = new byte[size + 10];
+      RandomByteIterator itor = new RandomByteIterator(size);
+      assertEquals(3 + size, itor.nextBuf(buf, 3));
+      assertEquals(0, itor.bytesLeft());
+      for (int i = 0; i < buf.length; i++) {
+        if (i < 3 || i >= 3 + size) {
+          assertEquals(0, buf[i]);
+        } else {
+          assertTrue(buf[i] >= ' ' && buf[i] <= '?');
+        }
+      }
+    }
+
+    //a byte at a time, then the rest in bulk
+    RandomByteIterator itor = new RandomByteIterator(20);
+    for (int i = 0; i < 5; i++) {
+      byte b = itor.nextByte();
+      assertTrue(b >= ' ' && b <= '?');
+    }
+    assertEquals(15, itor.bytesLeft());
+    assertEquals(15, itor.toArray().length);
+    assertFalse(itor.hasNext());
+  }
+
+  @Test
+  public void testValuePoolSlices() {
+    for (int compressibility = 1; compressibility <= 3; compressibility += 2) {
+      for (boolean offheap : new boolean[] {false, true}) {
+        ValuePool pool = new ValuePool(1000, offheap, compressibility);
+        for (int len = 0; len < 1100; len += 50) {
+          ByteIterator itor = pool.value(len);
+          assertEquals(len, itor.bytesLeft());
+          byte[] value = itor.toArray();
+          assertEquals(len, value.length);
+          assertFalse(itor.hasNext());
+          for (byte b : value) {
+            assertTrue(compressibility > 1 || (b >= ' ' && b <= '?'));
+          }
+        }
+      }
+    }
+  }
 }
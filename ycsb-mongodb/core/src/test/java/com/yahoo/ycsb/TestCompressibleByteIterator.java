@@ -0,0 +1,58 @@
+package com.yahoo.ycsb;
+
+import java.util.zip.Deflater;
+
+import org.iq80.snappy.Snappy;
+import org.testng.annotations.Test;
+import static org.testng.AssertJUnit.*;
+
+public class TestCompressibleByteIterator {
+  /** Compress pages of 32 KB filled with values of the given length, and return the ratio achieved. */
+  private static double[] ratios(int valueLength, double compressibility) {
+    byte[] page = new byte[32768];
+    byte[] out = new byte[Snappy.maxCompressedLength(page.length)];
+    long snappy = 0;
+    long zlib = 0;
+    long in = 0;
+    for (int p = 0; p < 50; p++) {
+      for (int pos = 0; pos < page.length; pos += valueLength) {
+        ByteIterator value = CompressibleByteIterator.create(Math.min(valueLength, page.length - pos), compressibility);
+        assertEquals(Math.min(pos + valueLength, page.length), value.nextBuf(page, pos));
+        assertFalse(value.hasNext());
+      }
+      in += page.length;
+      snappy += Snappy.compress(page, 0, page.length, out, 0);
+      Deflater d = new Deflater();
+      d.setInput(page);
+      d.finish();
+      zlib += d.deflate(out);
+      d.end();
+    }
+    return new double[] {(double) in / snappy, (double) in / zlib};
+  }
+
+  @Test
+  public void testRatioMatchesCompressibility() {
+    for (int length : new int[] {100, 1000, 10000}) {
+      for (double c : new double[] {1.5, 2, 3, 5}) {
+        double[] r = ratios(length, c);
+        assertEquals("snappy, " + length + " byte values, compressibility " + c, c, r[0], c * 0.1);
+        assertTrue(r[1] >= r[0]);
+      }
+    }
+    //random printable bytes compress by their missing bits only with an entropy coder
+    assertEquals(1.0, ratios(1000, 1)[0], 0.01);
+  }
+
+  @Test
+  public void testNextByteMatchesLength() {
+    ByteIterator value = new CompressibleByteIterator(300, 3);
+    int n = 0;
+    while (value.hasNext()) {
+      value.nextByte();
+      n++;
+    }
+    assertEquals(300, n);
+    assertEquals(0, value.bytesLeft());
+  }
+}
@@ -0,0 +1,135 @@
+package com.yahoo.ycsb;
+
+import java.util.HashMap;
+import java.util.Properties;
+import java.util.Set;
+import java.util.Vector;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.Test;
+import static org.testng.AssertJUnit.*;
+
+import com.yahoo.ycsb.measurements.Measurements;
+import com.yahoo.ycsb.measurements.exporter.MeasurementsExporter;
+
+public class TestDBPool {
+  /**
+   * Lets the given number of inits succeed, then fails the given number, counts cleanups, and takes 50ms per
+   * read.
+   */
+  public static class SlowDB extends DB {
+    static AtomicInteger successes = new AtomicInteger();
+    static AtomicInteger failures = new AtomicInteger();
+    static AtomicInteger cleanups = new AtomicInteger();
+
+    public void init() throws DBException {
+      if (successes.getAndDecrement() <= 0 && failures.getAndDecrement() > 0) {
+        throw new DBException("no connection");
+      }
+    }
+
+    public void cleanup() {
+      cleanups.incrementAndGet();
+    }
+
+    public int read(String table, String key, Set<String> fields, HashMap<String,ByteIterator> result) {
+      try {
+        Thread.sleep(50);
+      } catch (InterruptedException e) {
+        return 1;
+      }
+      return 0;
+    }
+
+    public int scan(String table, String startkey, int recordcount, Set<String> fields, Vector<HashMap<String,ByteIterator>> result) {
+      return 0;
+    }
+
+    public int update(String table, String key, HashMap<String,ByteIterator> values) {
+      return 0;
+    }
+
+    public int insert(String table, String key, HashMap<String,ByteIterator> values) {
+      return 0;
+    }
+
+    public int delete(String table, String key) {
+      return 0;
+    }
+  }
+
+  @Test
+  public void testFailedInitCleansUpAndFailsLaterClients() throws Exception {
+    SlowDB.successes.set(1);
+    SlowDB.failures.set(1);
+    SlowDB.cleanups.set(0);
+    DBPool pool = new DBPool(SlowDB.class.getName(), new Properties(), 3, false);
+    DB failed = pool.newClient();
+    DB later = pool.newClient();
+    try {
+      failed.init();
+      fail("init should have failed");
+    } catch (DBException e) {
+      assertEquals("no connection", e.getMessage());
+    }
+    // the first instance was initialized before the second failed
+    assertEquals(1, SlowDB.cleanups.get());
+    try {
+      later.init();
+      fail("init should have failed");
+    } catch (DBException e) {
+      assertEquals("no connection", e.getCause().getMessage());
+    }
+    // nothing retried initializing the instances
+    assertEquals(0, SlowDB.failures.get());
+    assertEquals(0, pool._clients);
+    assertEquals(1, SlowDB.cleanups.get());
+  }
+
+  @Test
+  public void testWaitingForAnInstanceCountsInLatency() throws Exception {
+    SlowDB.successes.set(0);
+    SlowDB.failures.set(0);
+    Measurements m = Measurements.reset();
+    final DBPool pool = new DBPool(SlowDB.class.getName(), new Properties(), 1, false);
+    Thread[] threads = new Thread[4];
+    for (int t = 0; t < threads.length; t++) {
+      final DB db = new DBWrapper(pool.newClient());
+      threads[t] = new Thread() {
+        public void run() {
+          try {
+            db.init();
+            db.read("usertable", "user1", null, new HashMap<String,ByteIterator>());
+            db.cleanup();
+          } catch (DBException e) {
+            throw new RuntimeException(e);
+          }
+        }
+      };
+      threads[t].start();
+    }
+    for (Thread t : threads) {
+      t.join();
+    }
+    final HashMap<String,Long> values = new HashMap<String,Long>();
+    m.exportMeasurements(new MeasurementsExporter() {
+      public void write(String metric, String measurement, int i) {
+        values.put(metric + " " + measurement, (long) i);
+      }
+
+      public void write(String metric, String measurement, long l) {
+        values.put(metric + " " + measurement, l);
+      }
+
+      public void write(String metric, String measurement, double d) {
+        values.put(metric + " " + measurement, (long) d);
+      }
+
+      public void close() {
+      }
+    });
+    // the four reads share one instance, so the last one waited for the three before it
+    assertEquals(4L, (long) values.get("READ Operations"));
+    assertTrue(values.get("READ MaxLatency(us)") >= 190000);
+  }
+}
@@ -0,0 +1,87 @@
+package com.yahoo.ycsb;
+
+import java.util.HashMap;
+import java.util.Properties;
+import java.util.Set;
+import java.util.Vector;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.Test;
+import static org.testng.AssertJUnit.*;
+
+import com.yahoo.ycsb.measurements.Measurements;
+
+public class TestDBWrapper {
+  /**
+   * Completes each insert a millisecond after it is submitted, tracking how many are in flight.
+   */
+  static class SlowAsyncDB extends AsyncDB {
+    ScheduledExecutorService completer = Executors.newSingleThreadScheduledExecutor();
+    AtomicInteger inflight = new AtomicInteger();
+    AtomicInteger maxinflight = new AtomicInteger();
+    AtomicInteger completed = new AtomicInteger();
+
+    public CompletableFuture<Integer> insertAsync(String table, String key, HashMap<String,ByteIterator> values) {
+      final CompletableFuture<Integer> future = new CompletableFuture<Integer>();
+      maxinflight.accumulateAndGet(inflight.incrementAndGet(), Math::max);
+      completer.schedule(new Runnable() {
+        public void run() {
+          inflight.decrementAndGet();
+          completed.incrementAndGet();
+          future.complete(0);
+        }
+      }, 1, TimeUnit.MILLISECONDS);
+      return future;
+    }
+
+    public CompletableFuture<Integer> readAsync(String table, String key, Set<String> fields, HashMap<String,ByteIterator> result) {
+      return CompletableFuture.completedFuture(0);
+    }
+
+    public CompletableFuture<Integer> scanAsync(String table, String startkey, int recordcount, Set<String> fields, Vector<HashMap<String,ByteIterator>> result) {
+      return CompletableFuture.completedFuture(0);
+    }
+
+    public CompletableFuture<Integer> updateAsync(String table, String key, HashMap<String,ByteIterator> values) {
+      return CompletableFuture.completedFuture(0);
+    }
+
+    public CompletableFuture<Integer> deleteAsync(String table, String key) {
+      return CompletableFuture.completedFuture(0);
+    }
+  }
+
+  private SlowAsyncDB insert(int depth, int count) throws DBException {
+    Measurements.setProperties(new Properties());
+    SlowAsyncDB db = new SlowAsyncDB();
+    Properties props = new Properties();
+    props.setProperty(AsyncDB.PIPELINE_DEPTH_PROPERTY, "" + depth);
+    db.setProperties(props);
+    DBWrapper wrapper = new DBWrapper(db);
+    wrapper.init();
+    for (int i = 0; i < count; i++) {
+      assertEquals(depth > 1 ? DB.PENDING : 0, wrapper.insert("usertable", "user" + i, new HashMap<String,ByteIterator>()));
+    }
+    wrapper.cleanup();
+    db.completer.shutdown();
+    return db;
+  }
+
+  @Test
+  public void testPipelineKeepsWindowInFlight() throws Exception {
+    SlowAsyncDB db = insert(16, 200);
+    assertEquals(200, db.completed.get());
+    assertEquals(16, db.maxinflight.get());
+  }
+
+  @Test
+  public void testDepthOneWaitsForEachOperation() throws Exception {
+    SlowAsyncDB db = insert(1, 20);
+    assertEquals(20, db.completed.get());
+    assertEquals(1, db.maxinflight.get());
+  }
+}
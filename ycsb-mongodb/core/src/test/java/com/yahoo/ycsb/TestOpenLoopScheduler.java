@@ -0,0 +1,62 @@
+package com.yahoo.ycsb;
+
+import org.testng.annotations.Test;
+import static org.testng.AssertJUnit.*;
+
+public class TestOpenLoopScheduler {
+  static class IdleWorkload extends Workload {
+    public boolean doInsert(DB db, Object threadstate) {
+      return true;
+    }
+
+    public boolean doTransaction(DB db, Object threadstate) {
+      return true;
+    }
+  }
+
+  @Test
+  public void testConstantArrivalsKeepTheirScheduleAfterAStall() throws Exception {
+    int ops = 50;
+    long intervalns = 1000000;
+    OpenLoopScheduler scheduler = new OpenLoopScheduler(1000, false, ops, 5, new IdleWorkload());
+    long before = System.nanoTime();
+    scheduler.start();
+
+    // nobody takes arrivals for 20 intervals, so the backlog fills and the scheduler blocks
+    Thread.sleep(20);
+    long[] arrivals = new long[ops];
+    long[] taken = new long[ops];
+    for (int i = 0; i < ops; i++) {
+      arrivals[i] = scheduler.nextArrival();
+      taken[i] = System.nanoTime();
+    }
+    assertEquals(OpenLoopScheduler.NO_MORE_ARRIVALS, scheduler.nextArrival());
+
+    assertTrue(arrivals[0] - before >= intervalns);
+    for (int i = 0; i < ops; i++) {
+      // every arrival is where the schedule put it, however late it was released
+      assertEquals((double) (arrivals[0] + i * intervalns), (double) arrivals[i], 2);
+      assertTrue(taken[i] >= arrivals[i]);
+    }
+    // the stall shows up as queueing delay of the arrivals released during it
+    assertTrue(taken[0] - arrivals[0] >= 15 * intervalns);
+    assertTrue(taken[5] - arrivals[5] >= 10 * intervalns);
+  }
+
+  @Test
+  public void testStopEndsArrivals() throws Exception {
+    Workload w = new IdleWorkload();
+    OpenLoopScheduler scheduler = new OpenLoopScheduler(100000, true, 0, 10, w);
+    scheduler.start();
+    assertTrue(scheduler.nextArrival() > 0);
+    w.requestStop();
+    scheduler.join(1000);
+    assertFalse(scheduler.isAlive());
+    // arrivals released before the stop may still be handed out, but no more than the backlog holds
+    int left = 0;
+    while (scheduler.nextArrival() != OpenLoopScheduler.NO_MORE_ARRIVALS) {
+      left++;
+    }
+    assertTrue(left <= 10);
+  }
+}
@@ -0,0 +1,76 @@
+package com.yahoo.ycsb;
+
+import java.util.Properties;
+
+import org.testng.annotations.Test;
+import static org.testng.AssertJUnit.*;
+
+import com.yahoo.ycsb.measurements.Measurements;
+
+public class TestPhase {
+  private static Properties plan() {
+    Properties p = new Properties();
+    p.setProperty(Client.WORKLOAD_PROPERTY, "com.yahoo.ycsb.workloads.CoreWorkload");
+    p.setProperty(Client.PHASES_PROPERTY, "load,warmup,run");
+    p.setProperty("threadcount", "2");
+    p.setProperty("operationcount", "1000");
+    p.setProperty("phase.load.mode", "load");
+    p.setProperty("phase.load.threadcount", "8");
+    p.setProperty("phase.warmup.record", "false");
+    p.setProperty("phase.run.target", "400");
+    p.setProperty("phase.run.openloop", "true");
+    return p;
+  }
+
+  @Test
+  public void testPhasePropertiesOverrideTheOthers() {
+    Properties base = plan();
+    Phase load = Phase.fromPlan("load", 0, base);
+    Phase warmup = Phase.fromPlan("warmup", 1, base);
+    Phase run = Phase.fromPlan("run", 2, base);
+
+    assertEquals("load", load._name);
+    assertEquals(0, load._index);
+    assertEquals(8, load._threadcount);
+    assertEquals("8", load._props.getProperty("threadcount"));
+    // another phase's override does not leak
+    assertEquals(2, warmup._threadcount);
+    assertEquals(2, run._threadcount);
+    assertEquals("1000", run._props.getProperty("operationcount"));
+
+    assertEquals(400, run._target);
+    assertEquals(0.2, run._targetperthreadperms, 1e-9);
+    assertEquals(0, warmup._target);
+    assertEquals(-1.0, warmup._targetperthreadperms);
+
+    // the base properties are left as they were
+    assertEquals("2", base.getProperty("threadcount"));
+    assertNull(base.getProperty("target"));
+  }
+
+  @Test
+  public void testModeAndRecord() {
+    Properties base = plan();
+    Phase load = Phase.fromPlan("load", 0, base);
+    Phase warmup = Phase.fromPlan("warmup", 1, base);
+    Phase run = Phase.fromPlan("run", 2, base);
+    assertFalse(load._dotransactions);
+    assertTrue(warmup._dotransactions);
+    assertTrue(run._dotransactions);
+    assertTrue(load._record);
+    assertFalse(warmup._record);
+    assertTrue(run._record);
+  }
+
+  @Test
+  public void testOpenLoopMeasuresFromTheIntendedStartOfItsOwnPhase() {
+    Properties base = plan();
+    Phase warmup = Phase.fromPlan("warmup", 1, base);
+    Phase run = Phase.fromPlan("run", 2, base);
+    assertTrue(run._openloop);
+    assertEquals("both", run._props.getProperty(Measurements.MEASUREMENT_INTERVAL));
+    assertFalse(warmup._openloop);
+    assertNull(warmup._props.getProperty(Measurements.MEASUREMENT_INTERVAL));
+    assertNull(base.getProperty(Measurements.MEASUREMENT_INTERVAL));
+  }
+}
@@ -0,0 +1,76 @@
+package com.yahoo.ycsb;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import org.testng.annotations.Test;
+import static org.testng.AssertJUnit.*;
+
+public class TestThrottle {
+  @Test
+  public void testDeadlinesAreFixedOffsets() {
+    long before = System.nanoTime();
+    Throttle t = new Throttle(4000, false);
+    long start = t.deadline(0);
+    assertTrue(start >= before && start <= System.nanoTime());
+    assertEquals(start + 250000, t.deadline(1));
+    assertEquals(start + 250000000L, t.deadline(1000));
+
+    before = System.nanoTime();
+    Throttle staggered = new Throttle(1000, true);
+    long after = System.nanoTime();
+    assertTrue(staggered.deadline(0) >= before && staggered.deadline(0) <= after + 1000000);
+  }
+
+  @Test
+  public void testPacesToTheTargetRate() {
+    Throttle t = new Throttle(2000, false);
+    int ops = 200;
+    for (int n = 0; n < ops; n++) {
+      Throttle.waitUntil(t.deadline(n));
+      // never early
+      assertTrue(System.nanoTime() >= t.deadline(n));
+    }
+    long elapsed = System.nanoTime() - t.deadline(0);
+    // 199 intervals of 500us, allowing for a late wakeup at the end
+    assertTrue(elapsed >= 99500000L);
+    assertTrue("took " + elapsed + "ns", elapsed < 150000000L);
+  }
+
+  @Test
+  public void testBurstAfterAStallIsBoundedByTheMissedDeadlines() throws Exception {
+    Throttle t = new Throttle(1000, false);
+    Thread.sleep(20);
+    long now = System.nanoTime();
+    long missed = (now - t.deadline(0)) / 1000000 + 1;
+    int immediate = 0;
+    int n = 0;
+    while (immediate < 1000) {
+      long before = System.nanoTime();
+      Throttle.waitUntil(t.deadline(n++));
+      if (System.nanoTime() - before > 500000) {
+        break;
+      }
+      immediate++;
+    }
+    // the operations that were due during the stall go at once, then the schedule holds again
+    assertTrue("burst of " + immediate + " after missing " + missed, immediate >= missed - 1);
+    assertTrue("burst of " + immediate + " after missing " + missed, immediate <= missed + 2);
+  }
+
+  @Test
+  public void testWaitingParksMostOfTheInterval() {
+    ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    Throttle t = new Throttle(2000, false);
+    long cpu = threads.getCurrentThreadCpuTime();
+    int ops = 400;
+    for (int n = 0; n < ops; n++) {
+      Throttle.waitUntil(t.deadline(n));
+    }
+    cpu = threads.getCurrentThreadCpuTime() - cpu;
+    long elapsed = System.nanoTime() - t.deadline(0);
+    // a thread that yielded or spun between deadlines would use most of a core
+    assertTrue("used " + cpu + "ns of CPU in " + elapsed + "ns", cpu < elapsed / 4);
+    assertTrue(Throttle.parkslack >= 0 && Throttle.parkslack <= Throttle.MAX_PARK_SLACK_NS);
+  }
+}
@@ -0,0 +1,36 @@
+package com.yahoo.ycsb;
+
+import java.util.Properties;
+
+import org.testng.annotations.Test;
+import static org.testng.AssertJUnit.*;
+
+public class TestThroughputSearch {
+  private static Properties search(String measurementtype) {
+    Properties p = new Properties();
+    p.setProperty(ThroughputSearch.SLO_PROPERTY, "10");
+    if (measurementtype != null) {
+      p.setProperty("measurementtype", measurementtype);
+    }
+    return p;
+  }
+
+  @Test
+  public void testAcceptsMeasurementTypesWithPercentiles() {
+    new ThroughputSearch(search(null));
+    new ThroughputSearch(search("histogram"));
+    new ThroughputSearch(search("hdrhistogram"));
+  }
+
+  @Test
+  public void testRejectsTimeSeriesBeforeRunning() {
+    for (String type : new String[] {"timeseries", "other"}) {
+      try {
+        new ThroughputSearch(search(type));
+        fail("accepted measurementtype=" + type);
+      } catch (IllegalArgumentException e) {
+        assertTrue(e.getMessage().contains("percentiles"));
+      }
+    }
+  }
+}
@@ -0,0 +1,47 @@
+package com.yahoo.ycsb;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+import static org.testng.AssertJUnit.*;
+
+import com.yahoo.ycsb.generator.ZipfianGenerator;
+
+public class TestUtils {
+  @AfterMethod
+  public void unseed() {
+    Utils.setSeed(System.nanoTime());
+  }
+
+  private static String draw(int threadid) {
+    Utils.initThread(threadid);
+    ZipfianGenerator zipf = new ZipfianGenerator(1000);
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 20; i++) {
+      sb.append(zipf.nextLong()).append(' ');
+    }
+    return sb.append(new RandomByteIterator(32).toString()).toString();
+  }
+
+  @Test
+  public void testSeededStreamsRepeat() {
+    Utils.setSeed(42);
+    String a = draw(0);
+    String b = draw(1);
+    Utils.setSeed(42);
+    assertEquals(b, draw(1));
+    assertEquals(a, draw(0));
+    assertFalse(a.equals(b));
+  }
+
+  @Test
+  public void testNextIntBound() {
+    SplitMixRandom r = new SplitMixRandom(7);
+    int[] counts = new int[3];
+    for (int i = 0; i < 30000; i++) {
+      counts[r.nextInt(3)]++;
+    }
+    for (int c : counts) {
+      assertTrue(Math.abs(c - 10000) < 500);
+    }
+  }
+}
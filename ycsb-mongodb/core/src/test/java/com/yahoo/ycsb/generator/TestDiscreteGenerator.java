@@ -0,0 +1,38 @@
+package com.yahoo.ycsb.generator;
+
+import org.testng.annotations.Test;
+import static org.testng.AssertJUnit.*;
+
+public class TestDiscreteGenerator {
+  @Test
+  public void testFrequenciesFollowWeights() {
+    double[] weights = {0.5, 0.25, 0.125, 0.1, 0.025, 0};
+    DiscreteGenerator g = new DiscreteGenerator();
+    for (int i = 0; i < weights.length; i++) {
+      assertEquals(i, g.addValue(weights[i], "V" + i));
+    }
+    int draws = 1000000;
+    int[] counts = new int[weights.length];
+    for (int i = 0; i < draws; i++) {
+      counts[g.nextIndex()]++;
+    }
+    for (int i = 0; i < weights.length; i++) {
+      assertEquals(weights[i], counts[i] / (double) draws, 0.003);
+    }
+    assertEquals(0, counts[weights.length - 1]);
+  }
+
+  @Test
+  public void testUnnormalizedWeights() {
+    DiscreteGenerator g = new DiscreteGenerator();
+    g.addValue(3, "READ");
+    g.addValue(1, "UPDATE");
+    int reads = 0;
+    for (int i = 0; i < 100000; i++) {
+      if (g.nextString().equals("READ")) {
+        reads++;
+      }
+    }
+    assertEquals(0.75, reads / 100000.0, 0.01);
+  }
+}
@@ -0,0 +1,86 @@
+package com.yahoo.ycsb.generator;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import org.testng.annotations.Test;
+import static org.testng.AssertJUnit.*;
+
+public class TestHistogramGenerator {
+  @Test
+  public void testFrequenciesMeanAndPercentiles() {
+    // values 10, 20 (never), 30 and 40
+    long[] buckets = {1, 0, 2, 1};
+    HistogramGenerator g = new HistogramGenerator(buckets, 10);
+    assertEquals((10 + 30 * 2 + 40) / 4.0, g.mean(), 1e-9);
+
+    int draws = 1000000;
+    int[] counts = new int[buckets.length];
+    for (int i = 0; i < draws; i++) {
+      long v = g.nextLong();
+      assertEquals(v, g.lastLong());
+      assertEquals(0, v % 10);
+      counts[(int) (v / 10) - 1]++;
+    }
+    for (int i = 0; i < buckets.length; i++) {
+      assertEquals(buckets[i] / 4.0, counts[i] / (double) draws, 0.003);
+    }
+
+    assertEquals(10, g.percentile(0));
+    assertEquals(10, g.percentile(25));
+    assertEquals(30, g.percentile(26));
+    assertEquals(30, g.percentile(75));
+    assertEquals(40, g.percentile(99.9));
+    assertEquals(40, g.percentile(100));
+  }
+
+  @Test
+  public void testSparseHistogramFile() throws IOException {
+    File file = File.createTempFile("histogram", ".txt");
+    file.deleteOnExit();
+    int n = 50000;
+    double weighted = 0;
+    long area = 0;
+    long max = 0;
+    try (PrintWriter out = new PrintWriter(file)) {
+      out.println("BlockSize\t4");
+      out.println("# bucket count, from the largest down, every third one missing");
+      for (int i = n - 1; i >= 0; i--) {
+        if (i % 3 != 1) {
+          long count = 1 + (i % 7);
+          out.println(i + " " + count);
+          weighted += (i + 1) * 4.0 * count;
+          area += count;
+          max = Math.max(max, (i + 1) * 4L);
+        }
+      }
+      out.println();
+    }
+    HistogramGenerator g = new HistogramGenerator(file.getPath());
+    assertEquals(weighted / area, g.mean(), 1e-6);
+
+    int draws = 1000000;
+    double sum = 0;
+    for (int i = 0; i < draws; i++) {
+      long v = g.nextLong();
+      assertTrue(v >= 4 && v <= max);
+      assertTrue((v / 4 - 1) % 3 != 1);
+      sum += v;
+    }
+    assertEquals(1, sum / draws / g.mean(), 0.005);
+    assertEquals(max, g.percentile(100));
+  }
+
+  @Test(expectedExceptions = IOException.class)
+  public void testMalformedLine() throws IOException {
+    File file = File.createTempFile("histogram", ".txt");
+    file.deleteOnExit();
+    try (PrintWriter out = new PrintWriter(file)) {
+      out.println("BlockSize\t1");
+      out.println("0\t5");
+      out.println("1");
+    }
+    new HistogramGenerator(file.getPath());
+  }
+}
@@ -0,0 +1,117 @@
+package com.yahoo.ycsb.generator;
+
+import java.io.File;
+import java.io.PrintWriter;
+
+import org.testng.annotations.Test;
+import static org.testng.AssertJUnit.*;
+
+public class TestZipfianGenerator {
+  private static void checkFrequencies(double theta) {
+    int n = 10;
+    RejectionInversionZipfianGenerator g = new RejectionInversionZipfianGenerator(0, n - 1, theta);
+    double norm = 0;
+    for (int i = 1; i <= n; i++) {
+      norm += 1 / Math.pow(i, theta);
+    }
+    int draws = 1000000;
+    int[] counts = new int[n];
+    for (int i = 0; i < draws; i++) {
+      counts[(int) g.nextLong()]++;
+    }
+    for (int i = 0; i < n; i++) {
+      assertEquals(1 / Math.pow(i + 1, theta) / norm, counts[i] / (double) draws, 0.003);
+    }
+  }
+
+  @Test
+  public void testRejectionInversionFrequencies() {
+    checkFrequencies(0.5);
+    checkFrequencies(0.99);
+    checkFrequencies(1.0);
+    checkFrequencies(1.5);
+  }
+
+  @Test
+  public void testRejectionInversionGrows() {
+    RejectionInversionZipfianGenerator g = new RejectionInversionZipfianGenerator(5, 14, 0.99);
+    for (long items = 10; items < 100000000000L; items *= 7) {
+      for (int i = 0; i < 1000; i++) {
+        long v = g.nextLong(items);
+        assertTrue(v >= 5 && v < 5 + items);
+      }
+    }
+  }
+
+  @Test
+  public void testRejectionInversionMean() {
+    for (double theta : new double[] {0.2, 0.99, 1.0, 1.7}) {
+      for (long n : new long[] {1, 7, 11, 1000, 1000000}) {
+        double weights = 0;
+        double weighted = 0;
+        for (long k = 1; k <= n; k++) {
+          double w = 1 / Math.pow(k, theta);
+          weights += w;
+          weighted += (k - 1) * w;
+        }
+        double exact = 5 + weighted / weights;
+        RejectionInversionZipfianGenerator g = new RejectionInversionZipfianGenerator(5, 5 + n - 1, theta);
+        assertEquals("theta " + theta + ", " + n + " items", exact, g.mean(), exact * 1e-9);
+      }
+    }
+  }
+
+  @Test
+  public void testZetaCacheMatchesDirectComputation() throws Exception {
+    File file = File.createTempFile("zeta", ".cache");
+    file.delete();
+    try {
+      ZetaCache.setFile(file.getPath());
+      double zeta = ZetaCache.zeta(200000, 0.8);
+      assertEquals(ZipfianGenerator.zetastatic(0, 200000, 0.8, 0), zeta, 0);
+      assertTrue(file.length() > 0);
+
+      //a fresh cache reads the value back, and extends it incrementally to exactly the from-scratch value
+      ZetaCache.setFile(file.getPath());
+      assertEquals(zeta, ZetaCache.zeta(200000, 0.8), 0);
+      assertEquals(ZipfianGenerator.zetastatic(0, 300000, 0.8, 0), ZetaCache.zeta(300000, 0.8), 0);
+    } finally {
+      ZetaCache.setFile(null);
+      file.delete();
+    }
+  }
+
+  @Test
+  public void testZetaCacheIgnoresInvalidEntries() throws Exception {
+    File file = File.createTempFile("zeta", ".cache");
+    double right = ZipfianGenerator.zetastatic(0, 150000, 0.9, 0);
+    try (PrintWriter out = new PrintWriter(file)) {
+      // without a checksum, with a wrong checksum, torn, and with a valid checksum but an impossible value
+      out.println("0.9 150000 1.0");
+      out.println("0.9 150000 " + right + " 0");
+      out.println("0.9 150000 " + right + " " + Long.toHexString(ZetaCache.checksum("0.9 150000 " + right)).substring(1));
+      String wrong = "0.9 150000 " + (right * 1.5);
+      out.println(wrong + " " + Long.toHexString(ZetaCache.checksum(wrong)));
+    }
+    try {
+      ZetaCache.setFile(file.getPath());
+      assertEquals(right, ZetaCache.zeta(150000, 0.9), 0);
+    } finally {
+      ZetaCache.setFile(null);
+      file.delete();
+    }
+  }
+
+  @Test
+  public void testZetaBoundsHoldForComputedValues() {
+    for (double theta : new double[] {0.2, 0.99, 1.0, 1.7}) {
+      for (long n : new long[] {1, 2, 1000, 250000}) {
+        double zeta = ZipfianGenerator.zetastatic(0, n, theta, 0);
+        assertTrue(ZetaCache.plausible(theta, n, zeta));
+        // the bounds are less than one apart
+        assertFalse(ZetaCache.plausible(theta, n, zeta + 1));
+        assertFalse(ZetaCache.plausible(theta, n, zeta - 1));
+      }
+    }
+  }
+}
@@ -0,0 +1,86 @@
+package com.yahoo.ycsb.measurements;
+
+import java.io.StringWriter;
+import java.util.Properties;
+import java.util.Vector;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+import static org.testng.AssertJUnit.*;
+
+public class TestIntervalLog {
+  @AfterMethod
+  public void tearDown() {
+    Measurements.setProperties(new Properties());
+    Measurements.reset();
+  }
+
+  /**
+   * Return the fields of the lines logged so far for a metric.
+   */
+  private static Vector<String[]> lines(StringWriter out, String metric) {
+    Vector<String[]> lines = new Vector<String[]>();
+    for (String line : out.toString().split("\n")) {
+      String[] fields = line.split(",", -1);
+      if (fields.length > 1 && fields[1].equals(metric)) {
+        lines.add(fields);
+      }
+    }
+    return lines;
+  }
+
+  private static Measurements phase() {
+    Properties p = new Properties();
+    p.setProperty("measurementtype", "hdrhistogram");
+    Measurements.setProperties(p);
+    Measurements m = Measurements.reset();
+    m.setStartTime(System.currentTimeMillis());
+    return m;
+  }
+
+  @Test
+  public void testLogsEachIntervalSeparately() throws Exception {
+    Measurements m = phase();
+    StringWriter out = new StringWriter();
+    IntervalLog log = new IntervalLog(out, 1000);
+    for (int i = 1; i <= 100; i++) {
+      m.measure("READ", i);
+    }
+    log.log();
+    m.measure("READ", 5000);
+    log.log();
+    // nothing new: no line
+    log.log();
+
+    Vector<String[]> lines = lines(out, "READ");
+    assertEquals(2, lines.size());
+    assertEquals("100", lines.get(0)[2]);
+    assertEquals(100, Long.parseLong(lines.get(0)[7]), 1);
+    assertEquals("1", lines.get(1)[2]);
+    // the second interval only holds the new operation
+    assertEquals(5000, Long.parseLong(lines.get(1)[4]), 5);
+  }
+
+  @Test
+  public void testFirstIntervalOfAPhaseStartsWithThePhase() throws Exception {
+    phase();
+    StringWriter out = new StringWriter();
+    IntervalLog log = new IntervalLog(out, 1000);
+    log.log();
+    // the tail of the previous phase, with no operations logged in it
+    Thread.sleep(500);
+    Measurements m = phase();
+    for (int i = 0; i < 50; i++) {
+      m.measure("UPDATE", 10);
+    }
+    Thread.sleep(100);
+    log.log();
+
+    Vector<String[]> lines = lines(out, "UPDATE");
+    assertEquals(1, lines.size());
+    assertEquals("50", lines.get(0)[2]);
+    // 50 operations over the 100ms of the phase, not over the 600ms since the previous interval
+    double throughput = Double.parseDouble(lines.get(0)[3]);
+    assertTrue("throughput " + throughput, throughput > 250);
+  }
+}
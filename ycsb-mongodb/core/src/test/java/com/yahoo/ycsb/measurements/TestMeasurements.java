@@ -0,0 +1,210 @@
+package com.yahoo.ycsb.measurements;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Properties;
+
+import org.testng.annotations.Test;
+import static org.testng.AssertJUnit.*;
+
+import com.yahoo.ycsb.measurements.exporter.MeasurementsExporter;
+
+public class TestMeasurements {
+  static class MapExporter implements MeasurementsExporter {
+    HashMap<String,Double> values = new HashMap<String,Double>();
+
+    public void write(String metric, String measurement, int i) {
+      values.put(metric + " " + measurement, (double)i);
+    }
+
+    public void write(String metric, String measurement, long l) {
+      values.put(metric + " " + measurement, (double)l);
+    }
+
+    public void write(String metric, String measurement, double d) {
+      values.put(metric + " " + measurement, d);
+    }
+
+    public void close() {
+    }
+  }
+
+  private MapExporter recordFromThreads(Properties props) throws Exception {
+    final Measurements m = new Measurements(props);
+    Thread[] threads = new Thread[8];
+    for (int t = 0; t < threads.length; t++) {
+      final int latency = (t + 1) * 1000;
+      threads[t] = new Thread() {
+        public void run() {
+          for (int i = 0; i < 10000; i++) {
+            m.measure("READ", latency);
+            m.reportReturnCode("READ", 0);
+          }
+        }
+      };
+      threads[t].start();
+    }
+    for (Thread t : threads) {
+      t.join();
+    }
+    MapExporter exporter = new MapExporter();
+    m.exportMeasurements(exporter);
+    return exporter;
+  }
+
+  @Test
+  public void testHistogramMergesThreads() throws Exception {
+    MapExporter e = recordFromThreads(new Properties());
+    assertEquals(80000.0, e.values.get("READ Operations"));
+    assertEquals(80000.0, e.values.get("READ Return=0"));
+    assertEquals(1000.0, e.values.get("READ MinLatency(us)"));
+    assertEquals(8000.0, e.values.get("READ MaxLatency(us)"));
+    assertEquals(4500.0, e.values.get("READ AverageLatency(us)"));
+    assertEquals(10000.0, e.values.get("READ 4"));
+  }
+
+  @Test
+  public void testTimeSeriesMergesThreads() throws Exception {
+    Properties props = new Properties();
+    props.setProperty("measurementtype", "timeseries");
+    MapExporter e = recordFromThreads(props);
+    assertEquals(80000.0, e.values.get("READ Operations"));
+    assertEquals(80000.0, e.values.get("READ Return=0"));
+    assertEquals(4500.0, e.values.get("READ AverageLatency(us)"));
+  }
+
+  private Measurements recordSeriesFromThreads(Properties props, MeasurementsExporter stream) throws Exception {
+    props.setProperty("measurementtype", "timeseries");
+    props.setProperty(OneMeasurementTimeSeries.GRANULARITY, "1");
+    final Measurements m = new Measurements(props);
+    m.streamTimeSeries(stream);
+    Thread[] threads = new Thread[4];
+    for (int t = 0; t < threads.length; t++) {
+      threads[t] = new Thread() {
+        public void run() {
+          long end = System.currentTimeMillis() + 50;
+          while (System.currentTimeMillis() < end) {
+            m.measure("READ", 100);
+          }
+        }
+      };
+      threads[t].start();
+    }
+    for (Thread t : threads) {
+      t.join();
+    }
+    m.series.get("READ").flush();
+    return m;
+  }
+
+  @Test
+  public void testTimeSeriesKeepsEveryLatency() throws Exception {
+    Measurements m = recordSeriesFromThreads(new Properties(), null);
+    TimeSeries series = m.series.get("READ");
+    assertEquals(0, series.dropped);
+    long kept = 0;
+    for (int i = 0; i < series.size; i++) {
+      kept += series.counts[(series.head + i) % series.counts.length];
+    }
+    assertEquals(m.getSnapshot("READ").getOperations(), kept);
+  }
+
+  @Test
+  public void testTimeSeriesStreamsUnits() throws Exception {
+    Properties props = new Properties();
+    props.setProperty(OneMeasurementTimeSeries.BUFFER, "4");
+    final long[] streamed = new long[2];
+    Measurements m = recordSeriesFromThreads(props, new MapExporter() {
+      public void write(String metric, String measurement, double d) {
+        //every latency is 100, so each unit's average is too
+        assertEquals(100.0, d);
+        streamed[0]++;
+      }
+      public void write(String metric, String measurement, long l) {
+        //DroppedUnits
+        streamed[1]++;
+      }
+    });
+    assertEquals(0, m.series.get("READ").size);
+    assertEquals(0, streamed[1]);
+    assertTrue(streamed[0] > 4);
+  }
+
+  @Test
+  public void testTimeSeriesKeepsTheLastUnitsWhenNotStreamed() throws Exception {
+    Properties props = new Properties();
+    props.setProperty("measurementtype", "timeseries");
+    props.setProperty(OneMeasurementTimeSeries.GRANULARITY, "1");
+    props.setProperty(OneMeasurementTimeSeries.BUFFER, "4");
+    Measurements m = new Measurements(props);
+    long operations = 0;
+    long end = System.currentTimeMillis() + 20;
+    while (System.currentTimeMillis() < end) {
+      m.measure("READ", 100);
+      operations++;
+    }
+    TimeSeries series = m.series.get("READ");
+    series.flush();
+    assertEquals(4, series.size);
+    assertTrue(series.dropped > 0);
+    long kept = 0;
+    for (int i = 0; i < series.size; i++) {
+      kept += series.counts[(series.head + i) % series.counts.length];
+    }
+    assertTrue(kept > 0 && kept < operations);
+
+    MapExporter e = new MapExporter();
+    m.exportMeasurements(e);
+    assertEquals((double) operations, e.values.get("READ Operations"));
+    assertNotNull(e.values.get("READ DroppedUnits"));
+  }
+
+  @Test
+  public void testSummaryIsWindowed() throws IOException {
+    Measurements m = new Measurements(new Properties());
+    m.measure("UPDATE", 100);
+    assertEquals("[UPDATE AverageLatency(us)=100] ", m.getSummary());
+    m.measure("UPDATE", 300);
+    assertEquals("[UPDATE AverageLatency(us)=300] ", m.getSummary());
+    assertEquals(" ", m.getSummary());
+  }
+
+  @Test
+  public void testIntendedSeries() throws IOException {
+    Properties props = new Properties();
+    props.setProperty(Measurements.MEASUREMENT_INTERVAL, "both");
+    Measurements m = new Measurements(props);
+    assertEquals(0, m.getIntendedStartTimeNs());
+    m.setIntendedStartTimeNs(12345);
+    assertEquals(12345, m.getIntendedStartTimeNs());
+    m.measure("READ", 100);
+    m.measureIntended("READ", 5000);
+    m.reportReturnCode("READ", 0);
+    MapExporter e = new MapExporter();
+    m.exportMeasurements(e);
+    assertEquals(100.0, e.values.get("READ AverageLatency(us)"));
+    assertEquals(5000.0, e.values.get("Intended-READ AverageLatency(us)"));
+
+    props.setProperty(Measurements.MEASUREMENT_INTERVAL, "op");
+    m = new Measurements(props);
+    m.setIntendedStartTimeNs(12345);
+    assertEquals(0, m.getIntendedStartTimeNs());
+    m.measureIntended("READ", 5000);
+    e = new MapExporter();
+    m.exportMeasurements(e);
+    assertNull(e.values.get("Intended-READ Operations"));
+  }
+
+  @Test
+  public void testMetricsIgnoreTheInterval() throws IOException {
+    Properties props = new Properties();
+    props.setProperty(Measurements.MEASUREMENT_INTERVAL, "intended");
+    Measurements m = new Measurements(props);
+    m.measure("READ", 100);
+    m.measureMetric("QUEUE-DELAY", 700);
+    MapExporter e = new MapExporter();
+    m.exportMeasurements(e);
+    assertNull(e.values.get("READ Operations"));
+    assertEquals(700.0, e.values.get("QUEUE-DELAY AverageLatency(us)"));
+  }
+}
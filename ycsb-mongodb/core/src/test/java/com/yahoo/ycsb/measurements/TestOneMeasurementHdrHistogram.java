@@ -0,0 +1,59 @@
+package com.yahoo.ycsb.measurements;
+
+import java.io.IOException;
+import java.util.Properties;
+
+import org.testng.annotations.Test;
+import static org.testng.AssertJUnit.*;
+
+public class TestOneMeasurementHdrHistogram {
+  @Test
+  public void testBucketsBoundRelativeError() {
+    OneMeasurementHdrHistogram h = new OneMeasurementHdrHistogram("READ", new Properties());
+    int last = -1;
+    for (long v = 0; v <= Integer.MAX_VALUE; v = v < 4096 ? v + 1 : v + v / 1000) {
+      int idx = h.bucketIndex((int)v);
+      assertTrue(idx >= last);
+      last = idx;
+      long high = h.highestValueInBucket(idx);
+      assertTrue(high >= v);
+      assertTrue((high - v) <= v / 100);
+    }
+    assertEquals(h.counts.length - 1, h.bucketIndex(Integer.MAX_VALUE));
+  }
+
+  @Test
+  public void testPercentiles() throws IOException {
+    Properties props = new Properties();
+    props.setProperty(OneMeasurementHdrHistogram.PERCENTILES, "75");
+    OneMeasurementHdrHistogram h = new OneMeasurementHdrHistogram("READ", props);
+    for (int v = 1; v <= 100000; v++) {
+      h.measure(v);
+    }
+    TestMeasurements.MapExporter e = new TestMeasurements.MapExporter();
+    h.exportMeasurements(e);
+    assertEquals(50000.0, e.values.get("READ 50thPercentileLatency(us)"), 500);
+    assertEquals(75000.0, e.values.get("READ 75thPercentileLatency(us)"), 750);
+    assertEquals(99000.0, e.values.get("READ 99thPercentileLatency(us)"), 990);
+    assertEquals(99990.0, e.values.get("READ 99.99thPercentileLatency(us)"), 10);
+    assertEquals(100000.0, e.values.get("READ MaxLatency(us)"));
+  }
+
+  @Test
+  public void testPercentileLatency() {
+    OneMeasurementHdrHistogram h = new OneMeasurementHdrHistogram("READ", new Properties());
+    assertEquals(-1, h.getPercentileLatency(99));
+    for (int v = 1; v <= 100000; v++) {
+      h.measure(v);
+    }
+    assertEquals(100000, h.getOperations());
+    assertEquals(99000.0, h.getPercentileLatency(99), 990);
+    assertEquals(100000, h.getPercentileLatency(100));
+
+    OneMeasurementHistogram b = new OneMeasurementHistogram("READ", new Properties());
+    for (int v = 1; v <= 100000; v++) {
+      b.measure(v);
+    }
+    assertEquals(99999, b.getPercentileLatency(99));
+  }
+}
@@ -0,0 +1,173 @@
+package com.yahoo.ycsb.workloads;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Properties;
+import java.util.Set;
+import java.util.Vector;
+
+import org.testng.annotations.Test;
+import static org.testng.AssertJUnit.*;
+
+import com.yahoo.ycsb.AsyncDB;
+import com.yahoo.ycsb.ByteIterator;
+import com.yahoo.ycsb.DB;
+import com.yahoo.ycsb.WorkloadException;
+import com.yahoo.ycsb.measurements.Measurements;
+import com.yahoo.ycsb.measurements.OneMeasurement;
+
+public class TestCoreWorkload {
+  /**
+   * Does nothing, so that only the workload's own allocations are measured.
+   */
+  static class NullDB extends DB {
+    public int read(String table, String key, Set<String> fields, HashMap<String,ByteIterator> result) {
+      return 0;
+    }
+
+    public int scan(String table, String startkey, int recordcount, Set<String> fields, Vector<HashMap<String,ByteIterator>> result) {
+      return 0;
+    }
+
+    public int update(String table, String key, HashMap<String,ByteIterator> values) {
+      return 0;
+    }
+
+    public int insert(String table, String key, HashMap<String,ByteIterator> values) {
+      return 0;
+    }
+
+    public int delete(String table, String key) {
+      return 0;
+    }
+  }
+
+  private static CoreWorkload workload(String insertorder) throws Exception {
+    Properties p = new Properties();
+    p.setProperty("recordcount", "1000");
+    p.setProperty("insertorder", insertorder);
+    p.setProperty("readproportion", "1");
+    p.setProperty("updateproportion", "0");
+    p.setProperty("readallfields", "false");
+    CoreWorkload w = new CoreWorkload();
+    w.init(p);
+    return w;
+  }
+
+  private static long allocatedBytes() {
+    return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getCurrentThreadAllocatedBytes();
+  }
+
+  @Test
+  public void testReadsReuseContainers() throws Exception {
+    CoreWorkload w = workload("hashed");
+    Object state = w.initThread(new Properties(), 0, 1);
+    DB db = new NullDB();
+    int ops = 200000;
+    for (int i = 0; i < ops; i++) {
+      w.doTransaction(db, state);
+    }
+    long before = allocatedBytes();
+    for (int i = 0; i < ops; i++) {
+      w.doTransaction(db, state);
+    }
+    //only the key string should be left; a fresh field set and result map alone take well over 100 bytes
+    long perop = (allocatedBytes() - before) / ops;
+    assertTrue("allocated " + perop + " bytes per read", perop < 100);
+  }
+
+  @Test
+  public void testKeyspaceBeyondInt() throws Exception {
+    long recordcount = 6000000000L;
+    Properties p = new Properties();
+    p.setProperty("recordcount", Long.toString(recordcount));
+    p.setProperty("insertstart", "3000000000");
+    p.setProperty("insertorder", "ordered");
+    p.setProperty("requestdistribution", "uniform");
+    p.setProperty("readproportion", "1");
+    p.setProperty("updateproportion", "0");
+    CoreWorkload w = new CoreWorkload();
+    w.init(p);
+
+    final Vector<String> keys = new Vector<String>();
+    DB db = new NullDB() {
+      public int insert(String table, String key, HashMap<String,ByteIterator> values) {
+        keys.add(key);
+        return 0;
+      }
+
+      public int read(String table, String key, Set<String> fields, HashMap<String,ByteIterator> result) {
+        keys.add(key);
+        return 0;
+      }
+    };
+    w.doInsert(db, null);
+    assertEquals("user3000000000", keys.get(0));
+
+    keys.clear();
+    Object state = w.initThread(p, 0, 1);
+    for (int i = 0; i < 1000; i++) {
+      w.doTransaction(db, state);
+    }
+    int aboveint = 0;
+    for (String key : keys) {
+      long keynum = Long.parseLong(key.substring(4));
+      assertTrue(keynum >= 0 && keynum < recordcount);
+      if (keynum > Integer.MAX_VALUE) {
+        aboveint++;
+      }
+    }
+    assertTrue(aboveint > 500);
+  }
+
+  @Test
+  public void testReadModifyWriteUpdateIsNotBehindSchedule() throws Exception {
+    Properties p = new Properties();
+    p.setProperty(Measurements.MEASUREMENT_INTERVAL, "both");
+    Measurements.setProperties(p);
+    try {
+      Measurements m = Measurements.reset();
+      p.setProperty("recordcount", "1000");
+      p.setProperty("readproportion", "0");
+      p.setProperty("updateproportion", "0");
+      p.setProperty("readmodifywriteproportion", "1");
+      CoreWorkload w = new CoreWorkload();
+      w.init(p);
+      final long[] seen = new long[2];
+      DB db = new NullDB() {
+        public int read(String table, String key, Set<String> fields, HashMap<String,ByteIterator> result) {
+          seen[0] = Measurements.getMeasurements().getIntendedStartTimeNs();
+          return 0;
+        }
+
+        public int update(String table, String key, HashMap<String,ByteIterator> values) {
+          seen[1] = Measurements.getMeasurements().getIntendedStartTimeNs();
+          return 0;
+        }
+      };
+      long intended = System.nanoTime();
+      m.setIntendedStartTimeNs(intended);
+      w.doTransaction(db, w.initThread(p, 0, 1));
+      long elapsed = (System.nanoTime() - intended) / 1000;
+      assertEquals(intended, seen[0]);
+      assertEquals(0, seen[1]);
+      assertEquals(intended, m.getIntendedStartTimeNs());
+      OneMeasurement rmw = m.getSnapshot(Measurements.INTENDED_PREFIX + "READ-MODIFY-WRITE");
+      assertEquals(1, rmw.getOperations());
+      long latency = rmw.getPercentileLatency(100);
+      assertTrue("intended latency " + latency, latency >= 0 && latency <= elapsed);
+    } finally {
+      Measurements.setProperties(new Properties());
+      Measurements.reset();
+    }
+  }
+
+  @Test(expectedExceptions = WorkloadException.class)
+  public void testRejectsReadModifyWriteWithPipelining() throws Exception {
+    Properties p = new Properties();
+    p.setProperty("recordcount", "1000");
+    p.setProperty("readmodifywriteproportion", "0.5");
+    p.setProperty(AsyncDB.PIPELINE_DEPTH_PROPERTY, "4");
+    new CoreWorkload().init(p);
+  }
+}
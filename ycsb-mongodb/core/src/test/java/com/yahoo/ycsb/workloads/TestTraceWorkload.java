@@ -0,0 +1,174 @@
+package com.yahoo.ycsb.workloads;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.Vector;
+
+import org.testng.annotations.Test;
+import static org.testng.AssertJUnit.*;
+
+import com.yahoo.ycsb.AsyncDB;
+import com.yahoo.ycsb.ByteIterator;
+import com.yahoo.ycsb.DB;
+import com.yahoo.ycsb.DBWrapper;
+import com.yahoo.ycsb.RandomByteIterator;
+import com.yahoo.ycsb.TraceWriter;
+import com.yahoo.ycsb.measurements.Measurements;
+
+public class TestTraceWorkload {
+  /**
+   * Logs every operation it is asked to do.
+   */
+  static class LogDB extends DB {
+    final ArrayList<String> log;
+
+    LogDB(ArrayList<String> log) {
+      this.log = log;
+    }
+
+    void log(String s) {
+      synchronized (log) {
+        log.add(s);
+      }
+    }
+
+    public int read(String table, String key, Set<String> fields, HashMap<String,ByteIterator> result) {
+      log("READ " + table + " " + key + " " + (fields == null ? null : new TreeSet<String>(fields)));
+      return 0;
+    }
+
+    public int scan(String table, String startkey, int recordcount, Set<String> fields, Vector<HashMap<String,ByteIterator>> result) {
+      log("SCAN " + table + " " + startkey + " " + recordcount + " " + (fields == null ? null : new TreeSet<String>(fields)));
+      return 0;
+    }
+
+    String sizes(HashMap<String,ByteIterator> values) {
+      StringBuilder sb = new StringBuilder();
+      for (Map.Entry<String,ByteIterator> e : new java.util.TreeMap<String,ByteIterator>(values).entrySet()) {
+        sb.append(e.getKey()).append('=').append(e.getValue().toArray().length).append(' ');
+      }
+      return sb.toString();
+    }
+
+    public int update(String table, String key, HashMap<String,ByteIterator> values) {
+      log("UPDATE " + table + " " + key + " " + sizes(values));
+      return 0;
+    }
+
+    public int insert(String table, String key, HashMap<String,ByteIterator> values) {
+      log("INSERT " + table + " " + key + " " + sizes(values));
+      return 0;
+    }
+
+    public int delete(String table, String key) {
+      log("DELETE " + table + " " + key);
+      return 0;
+    }
+  }
+
+  private static void issue(DB db, int thread, int count) {
+    for (int i = 0; i < count; i++) {
+      String key = "user" + thread + "-" + i;
+      HashMap<String,ByteIterator> values = new HashMap<String,ByteIterator>();
+      values.put("field" + (i % 3), new RandomByteIterator(i % 200));
+      TreeSet<String> fields = new TreeSet<String>();
+      fields.add("field1");
+      switch (i % 6) {
+      case 0: db.read("usertable", key, null, new HashMap<String,ByteIterator>()); break;
+      case 1: db.read("usertable", key, fields, new HashMap<String,ByteIterator>()); break;
+      case 2: db.scan("usertable", key, i % 50, fields, new Vector<HashMap<String,ByteIterator>>()); break;
+      case 3: db.update("usertable", key, values); break;
+      case 4: db.insert("othertable", key, values); break;
+      default: db.delete("usertable", key); break;
+      }
+    }
+  }
+
+  @Test
+  public void testRecordAndReplay() throws Exception {
+    File file = File.createTempFile("trace", ".bin");
+    file.deleteOnExit();
+    Measurements.setProperties(new Properties());
+    Properties props = new Properties();
+    props.setProperty(TraceWriter.TRACE_RECORD_PROPERTY, file.getPath());
+    TraceWriter.open(props);
+
+    final ArrayList<String> recorded = new ArrayList<String>();
+    Thread[] threads = new Thread[2];
+    for (int t = 0; t < threads.length; t++) {
+      final int thread = t;
+      threads[t] = new Thread(() -> issue(new DBWrapper(new LogDB(recorded)), thread, 5000));
+      threads[t].start();
+    }
+    for (Thread t : threads) {
+      t.join();
+    }
+    TraceWriter.getTraceWriter().close();
+    TraceWriter.open(new Properties());
+
+    props = new Properties();
+    props.setProperty(TraceWorkload.TRACE_FILE_PROPERTY, file.getPath());
+    props.setProperty(TraceWorkload.TRACE_SPEED_PROPERTY, "0");
+    TraceWorkload workload = new TraceWorkload();
+    workload.init(props);
+    ArrayList<String> replayed = new ArrayList<String>();
+    LogDB db = new LogDB(replayed);
+    for (int t = 0; t < 3; t++) {
+      Object state = workload.initThread(props, t, 3);
+      while (workload.doTransaction(db, state)) {
+      }
+    }
+
+    assertEquals(10000, replayed.size());
+    Collections.sort(recorded);
+    Collections.sort(replayed);
+    assertEquals(recorded, replayed);
+  }
+
+  @Test
+  public void testPipelinedReplayDoesNotReuseContainers() throws Exception {
+    File file = File.createTempFile("trace", ".bin");
+    file.deleteOnExit();
+    Measurements.setProperties(new Properties());
+    Properties props = new Properties();
+    props.setProperty(TraceWriter.TRACE_RECORD_PROPERTY, file.getPath());
+    TraceWriter.open(props);
+    issue(new DBWrapper(new LogDB(new ArrayList<String>())), 0, 60);
+    TraceWriter.getTraceWriter().close();
+    TraceWriter.open(new Properties());
+
+    props = new Properties();
+    props.setProperty(TraceWorkload.TRACE_FILE_PROPERTY, file.getPath());
+    props.setProperty(TraceWorkload.TRACE_SPEED_PROPERTY, "0");
+    props.setProperty(AsyncDB.PIPELINE_DEPTH_PROPERTY, "4");
+    TraceWorkload workload = new TraceWorkload();
+    workload.init(props);
+    // a pipelined DB may still be filling the containers of earlier operations
+    final Set<Object> seen = Collections.newSetFromMap(new IdentityHashMap<Object,Boolean>());
+    DB db = new LogDB(new ArrayList<String>()) {
+      public int read(String table, String key, Set<String> fields, HashMap<String,ByteIterator> result) {
+        assertTrue(seen.add(result));
+        assertTrue(fields == null || seen.add(fields));
+        return 0;
+      }
+
+      public int scan(String table, String startkey, int recordcount, Set<String> fields, Vector<HashMap<String,ByteIterator>> result) {
+        assertTrue(seen.add(result));
+        assertTrue(seen.add(fields));
+        return 0;
+      }
+    };
+    Object state = workload.initThread(props, 0, 1);
+    while (workload.doTransaction(db, state)) {
+    }
+    // 20 reads, 10 of them of one field, and 10 scans of one field
+    assertEquals(50, seen.size());
+  }
+}
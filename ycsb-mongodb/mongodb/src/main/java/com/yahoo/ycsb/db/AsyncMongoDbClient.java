@@ -0,0 +1,333 @@
+/**
+ * MongoDB asynchronous client binding for YCSB.
+ */
+
+package com.yahoo.ycsb.db;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.Vector;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.bson.Document;
+import org.bson.types.Binary;
+
+import com.mongodb.ConnectionString;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.async.client.FindIterable;
+import com.mongodb.async.client.MongoClient;
+import com.mongodb.async.client.MongoClients;
+import com.mongodb.async.client.MongoCollection;
+import com.mongodb.async.client.MongoDatabase;
+import com.yahoo.ycsb.AsyncDB;
+import com.yahoo.ycsb.ByteArrayByteIterator;
+import com.yahoo.ycsb.ByteIterator;
+import com.yahoo.ycsb.DBException;
+
+/**
+ * MongoDB client for YCSB framework, built on the driver's asynchronous API so that each client thread
+ * can keep several operations in flight. Set pipeline.depth to the number of operations per thread.
+ *
+ * Takes the same mongodb.url, mongodb.database, mongodb.writeConcern and mongodb.readPreference properties
+ * as {@link MongoDbClient}. Inserts are always sent one at a time.
+ *
+ * Unless the URL sets maxPoolSize, the connection pool is sized for every operation in flight to have
+ * its own connection: MongoDB runs one operation at a time on a connection.
+ *
+ * Uses the callback API of mongodb-driver-async, deprecated since 3.10 in favour of the reactive streams
+ * driver, because it completes each operation straight into a CompletableFuture with no extra dependency,
+ * and it still ships with the driver version the synchronous binding uses.
+ */
+@SuppressWarnings("deprecation")
+public class AsyncMongoDbClient extends AsyncDB {
+
+    /** Used to include a field in a response. */
+    protected static final Integer INCLUDE = Integer.valueOf(1);
+
+    /** The clients shared by all instances, one per mongos. */
+    private static MongoClient[] mongo;
+
+    private static MongoDatabase[] db;
+
+    /** Chooses the mongos for each operation, see {@link EndpointRouter}. */
+    private static EndpointRouter router;
+
+    /** This instance's state in the router. */
+    private EndpointRouter.Route route;
+
+    /** The properties of the instance that opened the clients, and the connections it allowed per server. */
+    private static Properties connected;
+    private static int connections;
+
+    /** Count the number of times initialized to teardown on the last {@link #cleanup()}. */
+    private static final AtomicInteger initCount = new AtomicInteger(0);
+
+    /**
+     * Initialize any state for this DB.
+     * Called once per DB instance; there is one DB instance per client thread.
+     */
+    @Override
+    public void init() throws DBException {
+        synchronized (AsyncMongoDbClient.class) {
+            if (mongo != null) {
+                MongoDbClient.checkConnection(connected, connections, getProperties(), inflight(getProperties()));
+                route = router.newRoute();
+                initCount.incrementAndGet();
+                return;
+            }
+
+            Properties props = getProperties();
+            String urls = props.getProperty("mongodb.url", "localhost:27017");
+            String database = props.getProperty("mongodb.database", "ycsb");
+
+            int inflight = inflight(props);
+            connections = inflight;
+
+            try {
+                router = new EndpointRouter(urls.split("\\|"), props);
+            } catch (IllegalArgumentException e) {
+                throw new DBException(e.getMessage());
+            }
+
+            try {
+                String[] server = urls.split("\\|"); // split on the "|" character
+                mongo = new MongoClient[server.length];
+                db = new MongoDatabase[server.length];
+                for (int i = 0; i < server.length; i++) {
+                    String url = server[i];
+                    System.err.println("Found server connection string " + url);
+                    if (!url.startsWith("mongodb://")) {
+                        url = "mongodb://" + url;
+                    }
+                    ConnectionString uri = new ConnectionString(url);
+                    MongoClientSettings.Builder builder = MongoClientSettings.builder().applyConnectionString(uri);
+                    if (uri.getMaxConnectionPoolSize() == null) {
+                        builder.applyToConnectionPoolSettings(b -> b.maxSize(inflight).maxWaitQueueSize(inflight));
+                    } else {
+                        // sized by the user, who knows best
+                        connections = Integer.MAX_VALUE;
+                    }
+                    builder.writeConcern(MongoDbClient.writeConcern(props));
+                    builder.readPreference(MongoDbClient.readPreference(props));
+                    mongo[i] = MongoClients.create(builder.build());
+                    db[i] = mongo[i].getDatabase(database);
+
+                    System.out.println("mongo async connection created with " + url);
+                }
+            } catch (Exception e1) {
+                System.err.println("Could not initialize MongoDB async client: " + e1.toString());
+                e1.printStackTrace();
+                // so that the other instances do not find a half connected pool and run without a route
+                for (int i = 0; i < mongo.length && mongo[i] != null; i++) {
+                    mongo[i].close();
+                }
+                mongo = null;
+                db = null;
+                throw new DBException(e1);
+            }
+            connected = props;
+            route = router.newRoute();
+            initCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * The most operations the client threads have in flight at once, which is what the pool is sized for.
+     */
+    private static int inflight(Properties props) {
+        return Integer.parseInt(props.getProperty("threadcount", "1"))
+                * Integer.parseInt(props.getProperty(PIPELINE_DEPTH_PROPERTY, PIPELINE_DEPTH_PROPERTY_DEFAULT));
+    }
+
+    /**
+     * Cleanup any state for this DB.
+     * Called once per DB instance; there is one DB instance per client thread.
+     */
+    @Override
+    public void cleanup() throws DBException {
+        if (initCount.decrementAndGet() <= 0) {
+            synchronized (AsyncMongoDbClient.class) {
+                if (mongo == null) {
+                    return;
+                }
+                for (int i = 0; i < mongo.length; i++) {
+                    try {
+                        mongo[i].close();
+                    } catch (Exception e1) { /* ignore */ }
+                }
+                // so that a later init, e.g. in the next phase, connects again
+                mongo = null;
+                db = null;
+                router = null;
+            }
+        }
+    }
+
+    private MongoCollection<Document> collection(String table, int server) {
+        return db[server].getCollection(table);
+    }
+
+    private Document toDocument(Document doc, HashMap<String, ByteIterator> values) {
+        for (Map.Entry<String, ByteIterator> entry : values.entrySet()) {
+            byte[] data = entry.getValue().toArray();
+            doc.put(entry.getKey(), data);
+        }
+        return doc;
+    }
+
+    private Document projection(Set<String> fields) {
+        Document projection = new Document();
+        for (String field : fields) {
+            projection.put(field, INCLUDE);
+        }
+        return projection;
+    }
+
+    /**
+     * Run the body of a driver callback, completing the future exceptionally if it throws, so that the
+     * operation still completes and gives back its slot in the pipeline window.
+     */
+    private static void callback(CompletableFuture<Integer> future, Runnable body) {
+        try {
+            body.run();
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Complete the future with 1 if the operation failed, returning true if so.
+     */
+    private boolean failed(CompletableFuture<Integer> future, Throwable t) {
+        if (t == null) {
+            return false;
+        }
+        System.err.println(t.toString());
+        future.complete(1);
+        return true;
+    }
+
+    @Override
+    public CompletableFuture<Integer> deleteAsync(String table, String key) {
+        CompletableFuture<Integer> future = new CompletableFuture<Integer>();
+        int server = router.acquire(route);
+        long st = System.nanoTime();
+        collection(table, server).deleteOne(new Document("_id", key), (res, t) -> callback(future, () -> {
+            router.release(server, st);
+            if (!failed(future, t)) {
+                future.complete(0);
+            }
+        }));
+        return future;
+    }
+
+    @Override
+    public CompletableFuture<Integer> insertAsync(String table, String key, HashMap<String, ByteIterator> values) {
+        CompletableFuture<Integer> future = new CompletableFuture<Integer>();
+        Document r = toDocument(new Document("_id", key), values);
+        int server = router.acquire(route);
+        long st = System.nanoTime();
+        collection(table, server).insertOne(r, (res, t) -> callback(future, () -> {
+            router.release(server, st);
+            if (t != null) {
+                System.err.println("Couldn't insert key " + key);
+            }
+            if (!failed(future, t)) {
+                future.complete(0);
+            }
+        }));
+        return future;
+    }
+
+    @Override
+    public CompletableFuture<Integer> readAsync(String table, String key, Set<String> fields,
+            HashMap<String, ByteIterator> result) {
+        CompletableFuture<Integer> future = new CompletableFuture<Integer>();
+        int server = router.acquire(route);
+        long st = System.nanoTime();
+        FindIterable<Document> find = collection(table, server).find(new Document("_id", key));
+        if (fields != null) {
+            find.projection(projection(fields));
+        }
+        find.first((doc, t) -> callback(future, () -> {
+            router.release(server, st);
+            if (failed(future, t)) {
+                return;
+            }
+            if (doc == null) {
+                System.err.println("No results returned for key " + key);
+                future.complete(1);
+                return;
+            }
+            fillMap(result, doc);
+            future.complete(0);
+        }));
+        return future;
+    }
+
+    @Override
+    public CompletableFuture<Integer> updateAsync(String table, String key, HashMap<String, ByteIterator> values) {
+        CompletableFuture<Integer> future = new CompletableFuture<Integer>();
+        Document u = new Document("$set", toDocument(new Document(), values));
+        int server = router.acquire(route);
+        long st = System.nanoTime();
+        collection(table, server).updateOne(new Document("_id", key), u, (res, t) -> callback(future, () -> {
+            router.release(server, st);
+            if (failed(future, t)) {
+                return;
+            }
+            if (res.wasAcknowledged() && res.getMatchedCount() == 0) {
+                System.err.println("Nothing updated for key " + key);
+                future.complete(1);
+                return;
+            }
+            future.complete(0);
+        }));
+        return future;
+    }
+
+    @Override
+    public CompletableFuture<Integer> scanAsync(String table, String startkey, int recordcount,
+            Set<String> fields, Vector<HashMap<String, ByteIterator>> result) {
+        CompletableFuture<Integer> future = new CompletableFuture<Integer>();
+        int server = router.acquire(route);
+        long st = System.nanoTime();
+        FindIterable<Document> find = collection(table, server)
+                .find(new Document("_id", new Document("$gte", startkey)))
+                .sort(new Document("_id", INCLUDE))
+                .limit(recordcount);
+        if (fields != null) {
+            find.projection(projection(fields));
+        }
+        find.into(new ArrayList<Document>(), (docs, t) -> callback(future, () -> {
+            router.release(server, st);
+            if (failed(future, t)) {
+                return;
+            }
+            if (docs.isEmpty()) {
+                System.err.println("Nothing found in scan for key " + startkey);
+                future.complete(1);
+                return;
+            }
+            for (Document doc : docs) {
+                HashMap<String, ByteIterator> resultMap = new HashMap<String, ByteIterator>();
+                fillMap(resultMap, doc);
+                result.add(resultMap);
+            }
+            future.complete(0);
+        }));
+        return future;
+    }
+
+    protected void fillMap(HashMap<String, ByteIterator> resultMap, Document doc) {
+        for (Map.Entry<String, Object> entry : doc.entrySet()) {
+            if (entry.getValue() instanceof Binary) {
+                resultMap.put(entry.getKey(), new ByteArrayByteIterator(((Binary) entry.getValue()).getData()));
+            }
+        }
+    }
+}
@@ -0,0 +1,183 @@
+/**
+ * Endpoint selection for the MongoDB bindings.
+ */
+
+package com.yahoo.ycsb.db;
+
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.yahoo.ycsb.Utils;
+import com.yahoo.ycsb.measurements.Measurements;
+
+/**
+ * Chooses which of the mongos given in mongodb.url, separated by "|", each operation goes to, and measures the
+ * operations sent to each of them under "ENDPOINT-url", so the load on a fleet of mongos can be checked.
+ *
+ * Set mongodb.router to one of:
+ * <ul>
+ * <li>roundrobin (default): each DB instance cycles through the endpoints from its own starting point, so there is no
+ * shared counter for the client threads to contend on.</li>
+ * <li>sticky: each DB instance sends all its operations to one endpoint, assigned round robin.</li>
+ * <li>leastoutstanding: the endpoint with the fewest operations in flight, ties broken round robin.</li>
+ * <li>latency: an endpoint picked at random, weighted by the inverse of its recent average latency. Until every
+ * endpoint has completed an operation, each DB instance cycles through them as with roundrobin.</li>
+ * </ul>
+ *
+ * Every operation must be bracketed by {@link #acquire(Route)} and {@link #release(int, long)}.
+ */
+public class EndpointRouter {
+
+    public static final String ROUTER_PROPERTY = "mongodb.router";
+    public static final String ROUTER_PROPERTY_DEFAULT = "roundrobin";
+
+    /** Weight of a new latency sample in an endpoint's moving average, as a right shift: 1/8. */
+    private static final int EWMA_SHIFT = 3;
+
+    enum Policy { ROUNDROBIN, STICKY, LEASTOUTSTANDING, LATENCY }
+
+    /**
+     * The state of one endpoint, shared by all the DB instances.
+     */
+    static final class Endpoint {
+        final String name;
+        final AtomicInteger outstanding = new AtomicInteger();
+        /** Moving average of the latency, in nanoseconds; 0 until the first operation completes. */
+        volatile long ewma;
+
+        Endpoint(String name) {
+            this.name = name;
+        }
+    }
+
+    /**
+     * The routing state of one DB instance. Like the instance, it is only used by the client thread that owns it,
+     * batches included, so it needs no synchronization.
+     */
+    public static final class Route {
+        final int home;
+        int next;
+
+        Route(int home) {
+            this.home = home;
+            this.next = home;
+        }
+    }
+
+    private final Policy policy;
+    private final Endpoint[] endpoints;
+    private final AtomicInteger homes = new AtomicInteger();
+
+    /**
+     * @param urls The endpoints, in the order the binding indexes its connections.
+     * @param props The properties, for mongodb.router.
+     */
+    public EndpointRouter(String[] urls, Properties props) {
+        String name = props.getProperty(ROUTER_PROPERTY, ROUTER_PROPERTY_DEFAULT);
+        try {
+            policy = Policy.valueOf(name.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown " + ROUTER_PROPERTY + " \"" + name
+                    + "\", must be roundrobin, sticky, leastoutstanding or latency");
+        }
+        endpoints = new Endpoint[urls.length];
+        for (int i = 0; i < urls.length; i++) {
+            endpoints[i] = new Endpoint("ENDPOINT-" + urls[i]);
+        }
+    }
+
+    /**
+     * Create the routing state of a new DB instance. Instances are spread over the endpoints round robin.
+     */
+    public Route newRoute() {
+        return new Route((homes.getAndIncrement() & Integer.MAX_VALUE) % endpoints.length);
+    }
+
+    /**
+     * Choose the endpoint for an operation and count it as outstanding there.
+     *
+     * @return The index of the endpoint, to pass to {@link #release(int, long)} when the operation completes.
+     */
+    public int acquire(Route route) {
+        int n = endpoints.length;
+        int i;
+        if (n == 1) {
+            i = 0;
+        } else {
+            switch (policy) {
+            case STICKY:
+                i = route.home;
+                break;
+            case LEASTOUTSTANDING:
+                i = leastOutstanding(route);
+                break;
+            case LATENCY:
+                i = latencyWeighted(route);
+                break;
+            default:
+                i = route.next;
+                route.next = (i + 1) % n;
+                break;
+            }
+        }
+        endpoints[i].outstanding.incrementAndGet();
+        return i;
+    }
+
+    /**
+     * Record the completion of an operation sent to an endpoint.
+     *
+     * @param endpoint The index returned by {@link #acquire(Route)}.
+     * @param st The System.nanoTime() at which the operation started.
+     */
+    public void release(int endpoint, long st) {
+        long latency = System.nanoTime() - st;
+        Endpoint e = endpoints[endpoint];
+        e.outstanding.decrementAndGet();
+        long avg = e.ewma;
+        // racing updates may drop a sample, which an average can afford
+        e.ewma = (avg == 0) ? latency : avg + ((latency - avg) >> EWMA_SHIFT);
+        // looked up each time, since the router outlives the measurements of a phase
+        Measurements.getMeasurements().measure(e.name, (int) (latency / 1000));
+    }
+
+    private int leastOutstanding(Route route) {
+        int n = endpoints.length;
+        int start = route.next;
+        route.next = (start + 1) % n;
+        int best = start;
+        int least = endpoints[start].outstanding.get();
+        for (int k = 1; k < n && least > 0; k++) {
+            int i = (start + k) % n;
+            int o = endpoints[i].outstanding.get();
+            if (o < least) {
+                best = i;
+                least = o;
+            }
+        }
+        return best;
+    }
+
+    private int latencyWeighted(Route route) {
+        int n = endpoints.length;
+        double total = 0;
+        for (int i = 0; i < n; i++) {
+            long avg = endpoints[i].ewma;
+            if (avg == 0) {
+                // not measured yet: spread the operations until it is, rather than send them all to it
+                int next = route.next;
+                route.next = (next + 1) % n;
+                return next;
+            }
+            total += 1.0 / avg;
+        }
+        double r = Utils.random().nextDouble() * total;
+        for (int i = 0; i < n - 1; i++) {
+            r -= 1.0 / endpoints[i].ewma;
+            if (r < 0) {
+                return i;
+            }
+        }
+        return n - 1;
+    }
+}
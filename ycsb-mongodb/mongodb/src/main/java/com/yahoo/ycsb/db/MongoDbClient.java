@@ -11,6 +11,7 @@
 
 package com.yahoo.ycsb.db;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
@@ -18,10 +19,12 @@ import java.util.Properties;
 import java.util.Set;
 import java.util.Vector;
 import java.util.List;
-import java.util.ArrayList;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import org.bson.RawBsonDocument;
+
 import com.mongodb.BasicDBObject;
+import com.mongodb.BulkWriteException;
 import com.mongodb.BulkWriteOperation;
 import com.mongodb.BulkWriteResult;
 import com.mongodb.DBCollection;
@@ -30,15 +33,26 @@ import com.mongodb.DBObject;
 import com.mongodb.MongoClient;
 import com.mongodb.MongoClientURI;
 import com.mongodb.MongoClientOptions;
+import com.mongodb.MongoBulkWriteException;
 import com.mongodb.InsertOptions;
 import com.mongodb.ReadPreference;
 import com.mongodb.ServerAddress;
 import com.mongodb.WriteConcern;
 import com.mongodb.WriteResult;
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.InsertOneModel;
+import com.mongodb.client.model.WriteModel;
+import com.mongodb.client.result.UpdateResult;
+import com.yahoo.ycsb.Batcher;
 import com.yahoo.ycsb.ByteArrayByteIterator;
 import com.yahoo.ycsb.ByteIterator;
 import com.yahoo.ycsb.DB;
 import com.yahoo.ycsb.DBException;
+import com.yahoo.ycsb.DBPool;
 
 /**
  * MongoDB client for YCSB framework.
@@ -51,6 +65,9 @@ import com.yahoo.ycsb.DBException;
  * to pass connection to multiple mongos end points to round-robin between them, separate
  * hostnames with "|" character
  *
+ * Set mongodb.rawbson=true to encode documents straight from the field values into raw BSON, and to read
+ * fields as iterators over the raw BSON returned, instead of going through DBObjects.
+ *
  * @author ypai
  */
 public class MongoDbClient extends DB {
@@ -63,7 +80,25 @@ public class MongoDbClient extends DB {
 
     private static com.mongodb.DB[] db;
 
-    private static int serverCounter = 0;
+    /** Chooses the mongos for each operation, see {@link EndpointRouter}. */
+    private static EndpointRouter router;
+
+    /** This instance's state in the router. */
+    private EndpointRouter.Route route;
+
+    /** True to encode and decode documents as raw BSON, see mongodb.rawbson. */
+    private static boolean rawBson;
+
+    /** The databases, through the driver API that takes raw BSON documents. */
+    private static MongoDatabase[] rawDb;
+
+    /** This instance's encoding buffer, and its collections for the last table used, if rawBson is true. */
+    private RawBsonBuffer bson;
+    private String rawTable;
+    private List<MongoCollection<RawBsonDocument>> rawCollections;
+    private Batcher<RawBsonDocument> rawInserts;
+
+    private static final BulkWriteOptions UNORDERED = new BulkWriteOptions().ordered(false);
 
     /** The default write concern for the test. */
     private static WriteConcern writeConcern;
@@ -71,33 +106,101 @@ public class MongoDbClient extends DB {
     /** The default read preference for the test */
     private static ReadPreference readPreference;
 
-    /** Allow inserting batches to save time during load */
-    private static Integer BATCHSIZE;
-    private List<DBObject> insertList = new ArrayList<DBObject>();
-    private Integer insertCount = 0;
-    private BulkWriteOperation bulkWriteOperation = null;
+    /** Queues inserts into unordered bulk writes to save time during load, if batchsize is more than 1. */
+    private Batcher<DBObject> inserts;
+
+    /** Queue updates and deletes into unordered bulk writes, if writebatchsize is more than 1. */
+    private Batcher<DBObject[]> updates;
+    private Batcher<DBObject> deletes;
 
     /** The database to access. */
     private static String database;
 
+    /**
+     * The properties that configure the connections all the instances share, with their defaults. They are read by
+     * the first instance, so every later one, e.g. in a later phase of a plan, must give them the same values.
+     */
+    static final String[][] CONNECTION_PROPERTIES = {
+        {"mongodb.url", "localhost:27017"},
+        {"mongodb.database", "ycsb"},
+        {"mongodb.writeConcern", "acknowledged"},
+        {"mongodb.readPreference", "primary"},
+        {"mongodb.rawbson", "false"},
+        {EndpointRouter.ROUTER_PROPERTY, EndpointRouter.ROUTER_PROPERTY_DEFAULT},
+    };
+
+    /** The properties of the instance that opened the connections, and the connections it opened per server. */
+    private static Properties connected;
+    private static int connections;
+
     /** Count the number of times initialized to teardown on the last {@link #cleanup()}. */
     private static final AtomicInteger initCount = new AtomicInteger(0);
 
     private static InsertOptions io = new InsertOptions().continueOnError(true);
 
-    /** Measure of how compressible the data is, compressibility=10 means the data can compress tenfold.
-     *  The default is 1, which is uncompressible */
-    private static float compressibility = (float) 1.0;
-
     /**
      * Initialize any state for this DB.
      * Called once per DB instance; there is one DB instance per client thread.
      */
     @Override
     public void init() throws DBException {
-        initCount.incrementAndGet();
-        synchronized (INCLUDE) {
+        boolean shared = Boolean.parseBoolean(getProperties().getProperty(DBPool.DB_SHARED_PROPERTY,
+                DBPool.DB_SHARED_PROPERTY_DEFAULT));
+        if (Boolean.parseBoolean(getProperties().getProperty("mongodb.rawbson", "false"))) {
+            if (shared) {
+                throw new DBException("mongodb.rawbson needs an instance per thread, it cannot be used with "
+                        + DBPool.DB_SHARED_PROPERTY + "=true");
+            }
+            bson = new RawBsonBuffer();
+            rawInserts = new Batcher<RawBsonDocument>("INSERT", getProperties()) {
+                @Override
+                protected long execute(String table, List<RawBsonDocument> items) {
+                    return bulkInsertRaw(table, items);
+                }
+            };
+        }
+        inserts = new Batcher<DBObject>("INSERT", getProperties()) {
+            @Override
+            protected long execute(String table, List<DBObject> items) {
+                return bulkInsert(table, items);
+            }
+        };
+        if (shared && inserts.enabled()) {
+            // a batcher belongs to the thread that owns the instance, and shared instances have many
+            throw new DBException(Batcher.BATCH_SIZE_PROPERTY + " needs an instance per thread, it cannot be used with "
+                    + DBPool.DB_SHARED_PROPERTY + "=true");
+        }
+        long writeBatchSize;
+        long writeBatchInterval;
+        try {
+            writeBatchSize = Long.parseLong(getProperties().getProperty("writebatchsize", "1"));
+            writeBatchInterval = Long.parseLong(getProperties().getProperty("writebatch.interval", "10"));
+        }
+        catch (NumberFormatException e) {
+            throw new DBException("Invalid writebatchsize or writebatch.interval: " + e.getMessage());
+        }
+        updates = new Batcher<DBObject[]>("UPDATE", writeBatchSize, 0, writeBatchInterval) {
+            @Override
+            protected long execute(String table, List<DBObject[]> items) {
+                return bulkUpdate(table, items);
+            }
+        };
+        deletes = new Batcher<DBObject>("DELETE", writeBatchSize, 0, writeBatchInterval) {
+            @Override
+            protected long execute(String table, List<DBObject> items) {
+                return bulkDelete(table, items);
+            }
+        };
+        if (shared && (updates.enabled() || deletes.enabled())) {
+            throw new DBException("writebatchsize needs an instance per thread, it cannot be used with "
+                    + DBPool.DB_SHARED_PROPERTY + "=true");
+        }
+        synchronized (MongoDbClient.class) {
             if (mongo != null) {
+                checkConnection(connected, connections, getProperties(),
+                        Integer.parseInt(getProperties().getProperty("threadcount", "100")));
+                route = router.newRoute();
+                initCount.incrementAndGet();
                 return;
             }
 
@@ -106,77 +209,34 @@ public class MongoDbClient extends DB {
             String urls = props.getProperty("mongodb.url", "localhost:27017");
 
             database = props.getProperty("mongodb.database", "ycsb");
-
-            // Set insert batchsize, default 1 - to be YCSB-original equivalent
-            final String batchSizeString = props.getProperty("batchsize", "1");
-            BATCHSIZE = Integer.parseInt(batchSizeString);
-
-            final String compressibilityString = props.getProperty("compressibility", "1");
-            this.compressibility = Float.parseFloat(compressibilityString);
+            rawBson = bson != null;
 
             // Set connectionpool to size of ycsb thread pool
             final String maxConnections = props.getProperty("threadcount", "100");
 
-            String writeConcernType = props.getProperty("mongodb.writeConcern", 
-                    "acknowledged").toLowerCase();
-            if ("unacknowledged".equals(writeConcernType)) {
-                writeConcern = WriteConcern.UNACKNOWLEDGED;
-            }
-            else if ("acknowledged".equals(writeConcernType)) {
-                writeConcern = WriteConcern.ACKNOWLEDGED;
-            }
-            else if ("journaled".equals(writeConcernType)) {
-                writeConcern = WriteConcern.JOURNALED;
-            }
-            else if ("replica_acknowledged".equals(writeConcernType)) {
-                writeConcern = WriteConcern.REPLICA_ACKNOWLEDGED;
-            }
-            else if ("majority".equals(writeConcernType)) {
-                writeConcern = WriteConcern.MAJORITY;
-            }
-            else {
-                System.err.println("ERROR: Invalid writeConcern: '"
-                                + writeConcernType
-                                + "'. "
-                                + "Must be [ unacknowledged | acknowledged | journaled | replica_acknowledged | majority ]");
-                System.exit(1);
-            }
+            writeConcern = writeConcern(props);
+            readPreference = readPreference(props);
 
-            // readPreference
-            String readPreferenceType = props.getProperty("mongodb.readPreference", "primary").toLowerCase();
-            if ("primary".equals(readPreferenceType)) {
-                readPreference = ReadPreference.primary();
-            }
-            else if ("primary_preferred".equals(readPreferenceType)) {
-                readPreference = ReadPreference.primaryPreferred();
-            }
-            else if ("secondary".equals(readPreferenceType)) {
-                readPreference = ReadPreference.secondary();
-            }
-            else if ("secondary_preferred".equals(readPreferenceType)) {
-                readPreference = ReadPreference.secondaryPreferred();
-            }
-            else if ("nearest".equals(readPreferenceType)) {
-                readPreference = ReadPreference.nearest();
+            try {
+                router = new EndpointRouter(urls.split("\\|"), props);
             }
-            else {
-                System.err.println("ERROR: Invalid readPreference: '"
-                                + readPreferenceType
-                                + "'. Must be [ primary | primary_preferred | secondary | secondary_preferred | nearest ]");
-                System.exit(1);
+            catch (IllegalArgumentException e) {
+                throw new DBException(e.getMessage());
             }
 
             try {
 
                 MongoClientOptions.Builder builder = new MongoClientOptions.Builder();
                 builder.cursorFinalizerEnabled(false);
-                builder.connectionsPerHost(Integer.parseInt(maxConnections));
+                connections = Integer.parseInt(maxConnections);
+                builder.connectionsPerHost(connections);
                 builder.writeConcern(writeConcern);
                 builder.readPreference(readPreference);
 
                 String[] server = urls.split("\\|"); // split on the "|" character
                 mongo = new MongoClient[server.length];
                 db = new com.mongodb.DB[server.length];
+                rawDb = new MongoDatabase[server.length];
                 for (int i=0; i<server.length; i++) {
                    String url=server[i];
                    System.err.println("Found server connection string " + url);
@@ -189,6 +249,7 @@ public class MongoDbClient extends DB {
                        mongo[i] = new MongoClient(new ServerAddress(url), builder.build());
                    }
                    db[i] = mongo[i].getDB(database);
+                   rawDb[i] = mongo[i].getDatabase(database);
    
                    System.out.println("mongo connection created with " + url);
                  }
@@ -197,9 +258,42 @@ public class MongoDbClient extends DB {
                         .println("Could not initialize MongoDB connection pool for Loader: "
                                 + e1.toString());
                 e1.printStackTrace();
-                return;
+                // so that the other instances do not find a half connected pool and run without a route
+                for (int i = 0; i < mongo.length && mongo[i] != null; i++) {
+                    mongo[i].close();
+                }
+                mongo = null;
+                throw new DBException(e1);
+            }
+            connected = props;
+            route = router.newRoute();
+            initCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Check that an instance asks for the connections that were opened by the first one, which all the instances
+     * share until the last of them is cleaned up.
+     *
+     * @param first The properties the connections were opened with.
+     * @param opened The number of connections opened to each server.
+     * @param props The properties of the instance.
+     * @param needed The number of connections the instance's phase needs to each server.
+     * @throws DBException If a property in {@link #CONNECTION_PROPERTIES} differs, or too few connections were opened.
+     */
+    static void checkConnection(Properties first, int opened, Properties props, int needed) throws DBException {
+        for (String[] property : CONNECTION_PROPERTIES) {
+            String was = first.getProperty(property[0], property[1]);
+            String is = props.getProperty(property[0], property[1]);
+            if (was.compareTo(is) != 0) {
+                throw new DBException(property[0] + "=" + is + " differs from the " + was + " the connections were"
+                        + " opened with; the connections are shared by every phase of a run, so set it for all of them");
             }
         }
+        if (needed > opened) {
+            throw new DBException(needed + " connections per server are needed, but the first phase of the run opened "
+                    + opened + "; the connections are shared by every phase, so give the first the most threads");
+        }
     }
 
     /**
@@ -208,23 +302,140 @@ public class MongoDbClient extends DB {
      */
     @Override
     public void cleanup() throws DBException {
+        // execute the writes still queued, before the last instance closes the connections
+        inserts.close();
+        if (rawInserts != null) {
+            rawInserts.close();
+        }
+        updates.close();
+        deletes.close();
         if (initCount.decrementAndGet() <= 0) {
-             for (int i=0;i<mongo.length;i++) { 
-                try {
-                   mongo[i].close(); 
-               } catch (Exception e1) { /* ignore */ }
+            synchronized (MongoDbClient.class) {
+                if (mongo == null) {
+                    return;
+                }
+                for (int i=0;i<mongo.length;i++) { 
+                    try {
+                       mongo[i].close(); 
+                   } catch (Exception e1) { /* ignore */ }
+                }
+                // so that a later init connects again, with its own properties
+                mongo = null;
             }
         }
     }
 
-    private byte[] applyCompressibility(byte[] data){
-        long string_length = data.length;
+    /**
+     * Execute the queued writes whose batch interval has passed, so a thread that is reading does not hold them back.
+     */
+    private void flushIfDue() {
+        inserts.flushIfDue();
+        if (rawInserts != null) {
+            rawInserts.flushIfDue();
+        }
+        updates.flushIfDue();
+        deletes.flushIfDue();
+    }
 
-        long random_string_length = (int) Math.round(string_length /compressibility);
-        long compressible_len = string_length - random_string_length;
-        for(int i=0;i<compressible_len;i++)
-            data[i] = 0;
-        return data;
+    /**
+     * Parse the mongodb.writeConcern property, exiting if it is invalid.
+     */
+    static WriteConcern writeConcern(Properties props) {
+        String writeConcernType = props.getProperty("mongodb.writeConcern", 
+                "acknowledged").toLowerCase();
+        if ("unacknowledged".equals(writeConcernType)) {
+            return WriteConcern.UNACKNOWLEDGED;
+        }
+        else if ("acknowledged".equals(writeConcernType)) {
+            return WriteConcern.ACKNOWLEDGED;
+        }
+        else if ("journaled".equals(writeConcernType)) {
+            return WriteConcern.JOURNALED;
+        }
+        else if ("replica_acknowledged".equals(writeConcernType)) {
+            return WriteConcern.REPLICA_ACKNOWLEDGED;
+        }
+        else if ("majority".equals(writeConcernType)) {
+            return WriteConcern.MAJORITY;
+        }
+        else {
+            System.err.println("ERROR: Invalid writeConcern: '"
+                            + writeConcernType
+                            + "'. "
+                            + "Must be [ unacknowledged | acknowledged | journaled | replica_acknowledged | majority ]");
+            System.exit(1);
+            return null;
+        }
+    }
+
+    /**
+     * Parse the mongodb.readPreference property, exiting if it is invalid.
+     */
+    static ReadPreference readPreference(Properties props) {
+        String readPreferenceType = props.getProperty("mongodb.readPreference", "primary").toLowerCase();
+        if ("primary".equals(readPreferenceType)) {
+            return ReadPreference.primary();
+        }
+        else if ("primary_preferred".equals(readPreferenceType)) {
+            return ReadPreference.primaryPreferred();
+        }
+        else if ("secondary".equals(readPreferenceType)) {
+            return ReadPreference.secondary();
+        }
+        else if ("secondary_preferred".equals(readPreferenceType)) {
+            return ReadPreference.secondaryPreferred();
+        }
+        else if ("nearest".equals(readPreferenceType)) {
+            return ReadPreference.nearest();
+        }
+        else {
+            System.err.println("ERROR: Invalid readPreference: '"
+                            + readPreferenceType
+                            + "'. Must be [ primary | primary_preferred | secondary | secondary_preferred | nearest ]");
+            System.exit(1);
+            return null;
+        }
+    }
+
+    /**
+     * Return this instance's collection for the table on the given server, through the raw BSON API. Only the
+     * client thread that owns the instance calls this, batches included, so the cache needs no synchronization.
+     */
+    private MongoCollection<RawBsonDocument> rawCollection(int server, String table) {
+        if (rawTable == null || table.compareTo(rawTable) != 0) {
+            // getCollection only builds a handle, so all the servers' are looked up at once
+            ArrayList<MongoCollection<RawBsonDocument>> collections =
+                    new ArrayList<MongoCollection<RawBsonDocument>>(rawDb.length);
+            for (MongoDatabase d : rawDb) {
+                collections.add(d.getCollection(table, RawBsonDocument.class));
+            }
+            rawCollections = collections;
+            rawTable = table;
+        }
+        return rawCollections.get(server);
+    }
+
+    /**
+     * Encode {_id: key} into the buffer.
+     */
+    private RawBsonDocument rawIdFilter(String key) {
+        bson.startDocument();
+        bson.string("_id", key);
+        return bson.finish();
+    }
+
+    /**
+     * Encode a projection of the given fields into the buffer, or return null to return all of them.
+     */
+    private RawBsonDocument rawProjection(Set<String> fields) {
+        if (fields == null) {
+            return null;
+        }
+        bson.startDocument();
+        for (String field : fields) {
+            bson.int32(field, 1);
+        }
+        return bson.finish();
     }
 
     /**
@@ -236,9 +447,14 @@ public class MongoDbClient extends DB {
      */
     @Override
     public int delete(String table, String key) {
+        DBObject q = new BasicDBObject().append("_id", key);
+        if (deletes.enabled()) {
+            return deletes.add(table, q, 0);
+        }
+        int server = router.acquire(route);
+        long st = System.nanoTime();
         try {
-            DBCollection collection = db[serverCounter++%db.length].getCollection(table);
-            DBObject q = new BasicDBObject().append("_id", key);
+            DBCollection collection = db[server].getCollection(table);
             WriteResult res = collection.remove(q);
             return 0;
         }
@@ -247,6 +463,9 @@ public class MongoDbClient extends DB {
             e.printStackTrace();
             return 1;
         }
+        finally {
+            router.release(server, st);
+        }
     }
 
     /**
@@ -261,45 +480,162 @@ public class MongoDbClient extends DB {
     @Override
     public int insert(String table, String key,
             HashMap<String, ByteIterator> values) {
-        DBCollection collection = db[serverCounter++%db.length].getCollection(table);
+        if (rawBson) {
+            return insertRaw(table, key, values);
+        }
         DBObject r = new BasicDBObject().append("_id", key);
+        long bytes = key.length();
         for (String k : values.keySet()) {
             byte[] data = values.get(k).toArray();
-            r.put(k,applyCompressibility(data));
-        }
-        if (BATCHSIZE == 1 ) {
-           try {
-             WriteResult res = collection.insert(r);
-             return 0;
-           }
-           catch (Exception e) {
-             System.err.println("Couldn't insert key " + key);
-             e.printStackTrace();
-             return 1;
-           }
-        } 
-        if (insertCount == 0) {
-           bulkWriteOperation = collection.initializeUnorderedBulkOperation();
-        }
-        insertCount++;
-        bulkWriteOperation.insert(r);
-        if (insertCount < BATCHSIZE) {
+            r.put(k, data);
+            bytes += k.length() + data.length;
+        }
+        if (inserts.enabled()) {
+            return inserts.add(table, r, bytes);
+        }
+        int server = router.acquire(route);
+        long st = System.nanoTime();
+        try {
+            DBCollection collection = db[server].getCollection(table);
+            WriteResult res = collection.insert(r);
             return 0;
-        } else {
-           try {
-             BulkWriteResult res = bulkWriteOperation.execute();
-             if (res.getInsertedCount() == insertCount ) {
-                 insertCount = 0;
-                 return 0;
-             } 
-             System.err.println("Number of inserted documents doesn't match the number sent, " + res.getInsertedCount() + " inserted, sent " + insertCount);
-             return 1;
-           }
-           catch (Exception e) {
-             System.err.println("Exception while trying bulk insert with " + insertCount);
-             e.printStackTrace();
-             return 1;
-           }
+        }
+        catch (Exception e) {
+            System.err.println("Couldn't insert key " + key);
+            e.printStackTrace();
+            return 1;
+        }
+        finally {
+            router.release(server, st);
+        }
+    }
+
+    private int insertRaw(String table, String key, HashMap<String, ByteIterator> values) {
+        bson.reset();
+        bson.startDocument();
+        bson.string("_id", key);
+        for (Map.Entry<String, ByteIterator> entry : values.entrySet()) {
+            bson.binary(entry.getKey(), entry.getValue());
+        }
+        if (rawInserts.enabled()) {
+            RawBsonDocument r = bson.finishCopy();
+            return rawInserts.add(table, r, r.getByteBuffer().remaining());
+        }
+        RawBsonDocument r = bson.finish();
+        int server = router.acquire(route);
+        long st = System.nanoTime();
+        try {
+            rawCollection(server, table).insertOne(r);
+            return 0;
+        }
+        catch (Exception e) {
+            System.err.println("Couldn't insert key " + key);
+            e.printStackTrace();
+            return 1;
+        }
+        finally {
+            router.release(server, st);
+        }
+    }
+
+    /**
+     * Insert a batch of raw documents with one unordered bulk write.
+     *
+     * @return The number of documents inserted, counted as for {@link #bulkInsert(String, List)}.
+     */
+    long bulkInsertRaw(String table, List<RawBsonDocument> items) {
+        List<WriteModel<RawBsonDocument>> models = new ArrayList<WriteModel<RawBsonDocument>>(items.size());
+        for (RawBsonDocument r : items) {
+            models.add(new InsertOneModel<RawBsonDocument>(r));
+        }
+        int server = router.acquire(route);
+        long st = System.nanoTime();
+        try {
+            com.mongodb.bulk.BulkWriteResult res = rawCollection(server, table).bulkWrite(models, UNORDERED);
+            return res.wasAcknowledged() ? res.getInsertedCount() : items.size();
+        }
+        catch (MongoBulkWriteException e) {
+            System.err.println("Bulk insert of " + items.size() + " documents failed in part: " + e.getMessage());
+            return e.getWriteResult().getInsertedCount();
+        }
+        finally {
+            router.release(server, st);
+        }
+    }
+
+    /**
+     * Insert a batch of documents with one unordered bulk write.
+     *
+     * @return The number of documents inserted. A bulk write that fails part way still reports the documents
+     *         it inserted; an unacknowledged one is assumed to have inserted them all.
+     */
+    long bulkInsert(String table, List<DBObject> items) {
+        int server = router.acquire(route);
+        long st = System.nanoTime();
+        BulkWriteOperation bulk = db[server].getCollection(table).initializeUnorderedBulkOperation();
+        for (DBObject r : items) {
+            bulk.insert(r);
+        }
+        try {
+            BulkWriteResult res = bulk.execute();
+            return res.isAcknowledged() ? res.getInsertedCount() : items.size();
+        }
+        catch (BulkWriteException e) {
+            System.err.println("Bulk insert of " + items.size() + " documents failed in part: " + e.getMessage());
+            return e.getWriteResult().getInsertedCount();
+        }
+        finally {
+            router.release(server, st);
+        }
+    }
+
+    /**
+     * Apply a batch of {query, update} pairs with one unordered bulk write.
+     *
+     * @return The number of updates that matched a document, as a single update that matches nothing is an error.
+     */
+    long bulkUpdate(String table, List<DBObject[]> items) {
+        int server = router.acquire(route);
+        long st = System.nanoTime();
+        BulkWriteOperation bulk = db[server].getCollection(table).initializeUnorderedBulkOperation();
+        for (DBObject[] qu : items) {
+            bulk.find(qu[0]).updateOne(qu[1]);
+        }
+        try {
+            BulkWriteResult res = bulk.execute();
+            return res.isAcknowledged() ? res.getMatchedCount() : items.size();
+        }
+        catch (BulkWriteException e) {
+            System.err.println("Bulk update of " + items.size() + " documents failed in part: " + e.getMessage());
+            return e.getWriteResult().getMatchedCount();
+        }
+        finally {
+            router.release(server, st);
+        }
+    }
+
+    /**
+     * Delete a batch of documents by query with one unordered bulk write.
+     *
+     * @return The number of deletes that did not fail, as a single delete of a missing document is not an error.
+     */
+    long bulkDelete(String table, List<DBObject> items) {
+        int server = router.acquire(route);
+        long st = System.nanoTime();
+        BulkWriteOperation bulk = db[server].getCollection(table).initializeUnorderedBulkOperation();
+        for (DBObject q : items) {
+            bulk.find(q).removeOne();
+        }
+        try {
+            bulk.execute();
+            return items.size();
+        }
+        catch (BulkWriteException e) {
+            System.err.println("Bulk delete of " + items.size() + " documents failed in part: " + e.getMessage());
+            return items.size() - e.getWriteErrors().size();
+        }
+        finally {
+            router.release(server, st);
         }
     }
 
@@ -316,8 +652,14 @@ public class MongoDbClient extends DB {
     @SuppressWarnings("unchecked")
     public int read(String table, String key, Set<String> fields,
             HashMap<String, ByteIterator> result) {
+        flushIfDue();
+        if (rawBson) {
+            return readRaw(table, key, fields, result);
+        }
+        int server = router.acquire(route);
+        long st = System.nanoTime();
         try {
-            DBCollection collection = db[serverCounter++%db.length].getCollection(table);
+            DBCollection collection = db[server].getCollection(table);
             DBObject q = new BasicDBObject().append("_id", key);
             DBObject fieldsToReturn = null;
 
@@ -345,6 +687,37 @@ public class MongoDbClient extends DB {
             System.err.println(e.toString());
             return 1;
         }
+        finally {
+            router.release(server, st);
+        }
+    }
+
+    private int readRaw(String table, String key, Set<String> fields, HashMap<String, ByteIterator> result) {
+        bson.reset();
+        RawBsonDocument q = rawIdFilter(key);
+        RawBsonDocument projection = rawProjection(fields);
+        int server = router.acquire(route);
+        long st = System.nanoTime();
+        try {
+            FindIterable<RawBsonDocument> find = rawCollection(server, table).find(q);
+            if (projection != null) {
+                find.projection(projection);
+            }
+            RawBsonDocument doc = find.first();
+            if (doc != null) {
+                RawBsonBuffer.fillMap(result, doc);
+                return 0;
+            }
+            System.err.println("No results returned for key " + key);
+            return 1;
+        }
+        catch (Exception e) {
+            System.err.println(e.toString());
+            return 1;
+        }
+        finally {
+            router.release(server, st);
+        }
     }
 
     /**
@@ -359,18 +732,26 @@ public class MongoDbClient extends DB {
     @Override
     public int update(String table, String key,
             HashMap<String, ByteIterator> values) {
+        if (rawBson && !updates.enabled()) {
+            return updateRaw(table, key, values);
+        }
+        DBObject q = new BasicDBObject().append("_id", key);
+        DBObject u = new BasicDBObject();
+        DBObject fieldsToSet = new BasicDBObject();
+        Iterator<String> keys = values.keySet().iterator();
+        while (keys.hasNext()) {
+            String tmpKey = keys.next();
+            fieldsToSet.put(tmpKey, values.get(tmpKey).toArray());
+        }
+        u.put("$set", fieldsToSet);
+        if (updates.enabled()) {
+            // update and delete batches are bounded by writebatchsize only, so their size is not counted
+            return updates.add(table, new DBObject[] {q, u}, 0);
+        }
+        int server = router.acquire(route);
+        long st = System.nanoTime();
         try {
-            DBCollection collection = db[serverCounter++%db.length].getCollection(table);
-            DBObject q = new BasicDBObject().append("_id", key);
-            DBObject u = new BasicDBObject();
-            DBObject fieldsToSet = new BasicDBObject();
-            Iterator<String> keys = values.keySet().iterator();
-            while (keys.hasNext()) {
-                String tmpKey = keys.next();
-                byte[] data = values.get(tmpKey).toArray();
-                fieldsToSet.put(tmpKey, applyCompressibility(data));
-            }
-            u.put("$set", fieldsToSet);
+            DBCollection collection = db[server].getCollection(table);
             WriteResult res = collection.update(q, u);
             if (res.getN() == 0) {
                 System.err.println("Nothing updated for key " + key);
@@ -382,6 +763,38 @@ public class MongoDbClient extends DB {
             System.err.println(e.toString());
             return 1;
         }
+        finally {
+            router.release(server, st);
+        }
+    }
+
+    private int updateRaw(String table, String key, HashMap<String, ByteIterator> values) {
+        bson.reset();
+        RawBsonDocument q = rawIdFilter(key);
+        bson.startDocument();
+        bson.startDocument("$set");
+        for (Map.Entry<String, ByteIterator> entry : values.entrySet()) {
+            bson.binary(entry.getKey(), entry.getValue());
+        }
+        bson.endDocument();
+        RawBsonDocument u = bson.finish();
+        int server = router.acquire(route);
+        long st = System.nanoTime();
+        try {
+            UpdateResult res = rawCollection(server, table).updateOne(q, u);
+            if (res.wasAcknowledged() && res.getMatchedCount() == 0) {
+                System.err.println("Nothing updated for key " + key);
+                return 1;
+            }
+            return 0;
+        }
+        catch (Exception e) {
+            System.err.println(e.toString());
+            return 1;
+        }
+        finally {
+            router.release(server, st);
+        }
     }
 
     /**
@@ -397,9 +810,15 @@ public class MongoDbClient extends DB {
     @Override
     public int scan(String table, String startkey, int recordcount,
             Set<String> fields, Vector<HashMap<String, ByteIterator>> result) {
+        flushIfDue();
+        if (rawBson) {
+            return scanRaw(table, startkey, recordcount, fields, result);
+        }
         DBCursor cursor = null;
+        int server = router.acquire(route);
+        long st = System.nanoTime();
         try {
-            DBCollection collection = db[serverCounter++%db.length].getCollection(table);
+            DBCollection collection = db[server].getCollection(table);
             DBObject fieldsToReturn = null;
             // { "_id":{"$gte":startKey, "$lte":{"appId":key+"\uFFFF"}} }
             DBObject scanRange = new BasicDBObject().append("$gte", startkey);
@@ -438,10 +857,55 @@ public class MongoDbClient extends DB {
              if( cursor != null ) {
                     cursor.close();
              }
+             router.release(server, st);
         }
 
     }
 
+    private int scanRaw(String table, String startkey, int recordcount,
+            Set<String> fields, Vector<HashMap<String, ByteIterator>> result) {
+        bson.reset();
+        bson.startDocument();
+        bson.startDocument("_id");
+        bson.string("$gte", startkey);
+        bson.endDocument();
+        RawBsonDocument q = bson.finish();
+        bson.startDocument();
+        bson.int32("_id", 1);
+        RawBsonDocument s = bson.finish();
+        RawBsonDocument projection = rawProjection(fields);
+        MongoCursor<RawBsonDocument> cursor = null;
+        int server = router.acquire(route);
+        long st = System.nanoTime();
+        try {
+            FindIterable<RawBsonDocument> find = rawCollection(server, table).find(q).sort(s).limit(recordcount);
+            if (projection != null) {
+                find.projection(projection);
+            }
+            cursor = find.iterator();
+            if (!cursor.hasNext()) {
+                System.err.println("Nothing found in scan for key " + startkey);
+                return 1;
+            }
+            while (cursor.hasNext()) {
+                HashMap<String, ByteIterator> resultMap = new HashMap<String, ByteIterator>();
+                RawBsonBuffer.fillMap(resultMap, cursor.next());
+                result.add(resultMap);
+            }
+            return 0;
+        }
+        catch (Exception e) {
+            System.err.println(e.toString());
+            return 1;
+        }
+        finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+            router.release(server, st);
+        }
+    }
+
     /**
      * TODO - Finish
      *
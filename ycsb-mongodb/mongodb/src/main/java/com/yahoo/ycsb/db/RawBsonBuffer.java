@@ -0,0 +1,243 @@
+/**
+ * Raw BSON encoding and decoding for the MongoDB binding.
+ */
+
+package com.yahoo.ycsb.db;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.bson.BsonValue;
+import org.bson.ByteBuf;
+import org.bson.RawBsonDocument;
+
+import com.yahoo.ycsb.ByteArrayByteIterator;
+import com.yahoo.ycsb.ByteIterator;
+
+/**
+ * A reusable buffer that YCSB documents are encoded into as BSON, with the field values copied straight from
+ * their ByteIterators, so that no DBObject, map or intermediate byte array is built per field.
+ *
+ * Documents are returned as RawBsonDocument views of the buffer, which stay valid until the next
+ * {@link #reset()}. Several documents can be encoded between resets, e.g. a filter and an update.
+ *
+ * Not thread-safe: each DB instance has its own.
+ */
+final class RawBsonBuffer {
+
+    private static final byte DOCUMENT = 0x03;
+    private static final byte STRING = 0x02;
+    private static final byte BINARY = 0x05;
+    private static final byte INT32 = 0x10;
+
+    private byte[] buf = new byte[1024];
+    private int pos;
+
+    /** The start of each document still open, innermost last. */
+    private final int[] open = new int[8];
+    private int depth;
+
+    /**
+     * Discard everything encoded so far. Views returned since the last reset must no longer be used.
+     */
+    void reset() {
+        pos = 0;
+        depth = 0;
+    }
+
+    /**
+     * Start a top-level document.
+     */
+    void startDocument() {
+        ensure(4);
+        open[depth++] = pos;
+        pos += 4;
+    }
+
+    /**
+     * Start an embedded document as the value of the named field.
+     */
+    void startDocument(String name) {
+        element(DOCUMENT, name);
+        startDocument();
+    }
+
+    /**
+     * End the innermost open document.
+     */
+    void endDocument() {
+        ensure(1);
+        buf[pos++] = 0;
+        int start = open[--depth];
+        writeInt(start, pos - start);
+    }
+
+    /**
+     * End the top-level document and return a view of it, valid until the next {@link #reset()}.
+     */
+    RawBsonDocument finish() {
+        endDocument();
+        int start = open[depth];
+        return new RawBsonDocument(buf, start, pos - start);
+    }
+
+    /**
+     * End the top-level document and return a copy of it, for documents that outlive the next reset.
+     */
+    RawBsonDocument finishCopy() {
+        endDocument();
+        int start = open[depth];
+        return new RawBsonDocument(Arrays.copyOfRange(buf, start, pos));
+    }
+
+    void string(String name, String value) {
+        element(STRING, name);
+        ensure(4);
+        int start = pos;
+        pos += 4;
+        cstring(value);
+        writeInt(start, pos - start - 4);
+    }
+
+    void int32(String name, int value) {
+        element(INT32, name);
+        ensure(4);
+        writeInt(pos, value);
+        pos += 4;
+    }
+
+    /**
+     * Write a field as generic binary data, copied from the iterator, which is consumed.
+     */
+    void binary(String name, ByteIterator value) {
+        int len = (int) value.bytesLeft();
+        element(BINARY, name);
+        ensure(5 + len);
+        writeInt(pos, len);
+        buf[pos + 4] = 0;
+        pos += 5;
+        int start = pos;
+        int end = start;
+        while (end < start + len) {
+            end = value.nextBuf(buf, end);
+        }
+        pos = start + len;
+    }
+
+    private void element(byte type, String name) {
+        ensure(1);
+        buf[pos++] = type;
+        cstring(name);
+    }
+
+    private void cstring(String s) {
+        int n = s.length();
+        ensure(n + 1);
+        int start = pos;
+        for (int i = 0; i < n; i++) {
+            char c = s.charAt(i);
+            if (c == 0 || c >= 0x80) {
+                // not plain ASCII: fall back to the encoder
+                byte[] b = s.getBytes(StandardCharsets.UTF_8);
+                pos = start;
+                ensure(b.length + 1);
+                System.arraycopy(b, 0, buf, pos, b.length);
+                pos += b.length;
+                break;
+            }
+            buf[pos++] = (byte) c;
+        }
+        buf[pos++] = 0;
+    }
+
+    private void writeInt(int at, int v) {
+        buf[at] = (byte) v;
+        buf[at + 1] = (byte) (v >>> 8);
+        buf[at + 2] = (byte) (v >>> 16);
+        buf[at + 3] = (byte) (v >>> 24);
+    }
+
+    private void ensure(int n) {
+        if (pos + n > buf.length) {
+            // views already handed out keep the old array, which is left as it was
+            buf = Arrays.copyOf(buf, Math.max(buf.length * 2, pos + n));
+        }
+    }
+
+    private static int readInt(byte[] a, int at) {
+        return (a[at] & 0xff) | ((a[at + 1] & 0xff) << 8) | ((a[at + 2] & 0xff) << 16) | ((a[at + 3] & 0xff) << 24);
+    }
+
+    /**
+     * Put the binary fields of a raw document into result, as iterators over the document's own bytes rather
+     * than copies of them.
+     */
+    static void fillMap(HashMap<String, ByteIterator> result, RawBsonDocument doc) {
+        ByteBuf bytes = doc.getByteBuffer();
+        byte[] a = bytes.array();
+        int p = bytes.position() + 4;
+        int end = bytes.limit() - 1;
+        while (p < end) {
+            byte type = a[p++];
+            int name = p;
+            while (a[p] != 0) {
+                p++;
+            }
+            int nameEnd = p++;
+            switch (type) {
+            case BINARY:
+                int len = readInt(a, p);
+                result.put(new String(a, name, nameEnd - name, StandardCharsets.UTF_8),
+                        new ByteArrayByteIterator(a, p + 5, len));
+                p += 5 + len;
+                break;
+            case STRING:
+            case 0x0D: // JavaScript
+            case 0x0E: // symbol
+                p += 4 + readInt(a, p);
+                break;
+            case DOCUMENT:
+            case 0x04: // array
+                p += readInt(a, p);
+                break;
+            case 0x01: // double
+            case 0x09: // date
+            case 0x11: // timestamp
+            case 0x12: // int64
+                p += 8;
+                break;
+            case INT32:
+                p += 4;
+                break;
+            case 0x07: // ObjectId
+                p += 12;
+                break;
+            case 0x08: // boolean
+                p += 1;
+                break;
+            case 0x13: // decimal128
+                p += 16;
+                break;
+            case 0x06: // undefined
+            case 0x0A: // null
+            case 0x7F: // max key
+            case -1:   // min key
+                break;
+            default:
+                // a type YCSB never writes: let the driver decode the whole document
+                fillMapDecoded(result, doc);
+                return;
+            }
+        }
+    }
+
+    private static void fillMapDecoded(HashMap<String, ByteIterator> result, RawBsonDocument doc) {
+        for (Map.Entry<String, BsonValue> entry : doc.entrySet()) {
+            if (entry.getValue().isBinary()) {
+                result.put(entry.getKey(), new ByteArrayByteIterator(entry.getValue().asBinary().getData()));
+            }
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.yahoo.ycsb.db;
+
+import java.util.Properties;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import static org.testng.AssertJUnit.*;
+
+import com.yahoo.ycsb.measurements.Measurements;
+
+public class TestEndpointRouter {
+  private static final String[] URLS = {"a:27017", "b:27017", "c:27017"};
+
+  private static EndpointRouter router(String policy) {
+    Properties p = new Properties();
+    p.setProperty(EndpointRouter.ROUTER_PROPERTY, policy);
+    return new EndpointRouter(URLS, p);
+  }
+
+  /**
+   * Complete an operation on an endpoint as if it had taken the given number of milliseconds.
+   */
+  private static void complete(EndpointRouter router, int endpoint, long ms) {
+    router.release(endpoint, System.nanoTime() - ms * 1000000L);
+  }
+
+  @BeforeMethod
+  public void setUp() {
+    Measurements.setProperties(new Properties());
+  }
+
+  @Test
+  public void testRoundRobinCyclesFromEachRoutesOwnStart() {
+    EndpointRouter router = router("roundrobin");
+    EndpointRouter.Route first = router.newRoute();
+    EndpointRouter.Route second = router.newRoute();
+    int[] expected = {0, 1, 2, 0, 1};
+    for (int i = 0; i < expected.length; i++) {
+      assertEquals(expected[i], router.acquire(first));
+      assertEquals((expected[i] + 1) % 3, router.acquire(second));
+    }
+  }
+
+  @Test
+  public void testStickyKeepsEachRouteOnOneEndpoint() {
+    EndpointRouter router = router("sticky");
+    for (int r = 0; r < 4; r++) {
+      EndpointRouter.Route route = router.newRoute();
+      for (int i = 0; i < 5; i++) {
+        int endpoint = router.acquire(route);
+        assertEquals(r % 3, endpoint);
+        complete(router, endpoint, 1);
+      }
+    }
+  }
+
+  @Test
+  public void testLeastOutstandingAvoidsBusyEndpoints() {
+    EndpointRouter router = router("leastoutstanding");
+    EndpointRouter.Route route = router.newRoute();
+    // ties are broken round robin
+    assertEquals(0, router.acquire(route));
+    assertEquals(1, router.acquire(route));
+    assertEquals(2, router.acquire(route));
+    complete(router, 1, 1);
+    // the turn is endpoint 0's, but it is busier than endpoint 1
+    assertEquals(1, router.acquire(route));
+  }
+
+  @Test
+  public void testLatencySpreadsOperationsUntilEveryEndpointIsMeasured() {
+    EndpointRouter router = router("latency");
+    EndpointRouter.Route route = router.newRoute();
+    assertEquals(0, router.acquire(route));
+    complete(router, 0, 1);
+    // endpoint 0 now has a sample, the others do not, and none of them gets everything
+    assertEquals(1, router.acquire(route));
+    assertEquals(2, router.acquire(route));
+    assertEquals(0, router.acquire(route));
+    assertEquals(1, router.acquire(route));
+  }
+
+  @Test
+  public void testLatencyFavoursFastEndpoints() {
+    EndpointRouter router = router("latency");
+    complete(router, 0, 1);
+    complete(router, 1, 3);
+    complete(router, 2, 3);
+    EndpointRouter.Route route = router.newRoute();
+    int[] picks = new int[3];
+    int n = 6000;
+    for (int i = 0; i < n; i++) {
+      picks[router.acquire(route)]++;
+    }
+    // weights 1, 1/3 and 1/3: endpoint 0 gets three fifths
+    double fast = picks[0] / (double) n;
+    assertTrue("fast endpoint got " + fast, fast > 0.5 && fast < 0.7);
+    assertTrue(picks[1] > 0 && picks[2] > 0);
+  }
+
+  @Test
+  public void testSingleEndpointAlwaysWins() {
+    for (String policy : new String[] {"roundrobin", "sticky", "leastoutstanding", "latency"}) {
+      Properties p = new Properties();
+      p.setProperty(EndpointRouter.ROUTER_PROPERTY, policy);
+      EndpointRouter router = new EndpointRouter(new String[] {"a:27017"}, p);
+      EndpointRouter.Route route = router.newRoute();
+      for (int i = 0; i < 3; i++) {
+        assertEquals(0, router.acquire(route));
+      }
+    }
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testRejectsUnknownPolicy() {
+    router("random");
+  }
+}
@@ -0,0 +1,78 @@
+package com.yahoo.ycsb.db;
+
+import java.util.Properties;
+
+import org.testng.annotations.Test;
+import static org.testng.AssertJUnit.*;
+
+import com.yahoo.ycsb.DBException;
+import com.yahoo.ycsb.DBPool;
+
+public class TestMongoDbClient {
+  private static boolean accepted(Properties first, int opened, Properties props, int needed) {
+    try {
+      MongoDbClient.checkConnection(first, opened, props, needed);
+      return true;
+    } catch (DBException e) {
+      return false;
+    }
+  }
+
+  @Test
+  public void testLaterPhasesMustAskForTheSameConnections() {
+    Properties first = new Properties();
+    first.setProperty("mongodb.url", "a:27017|b:27017");
+    first.setProperty("threadcount", "16");
+
+    Properties same = new Properties();
+    same.putAll(first);
+    same.setProperty("threadcount", "8");
+    // a default given explicitly is the same as leaving it out
+    same.setProperty("mongodb.database", "ycsb");
+    same.setProperty(EndpointRouter.ROUTER_PROPERTY, EndpointRouter.ROUTER_PROPERTY_DEFAULT);
+    assertTrue(accepted(first, 16, same, 8));
+
+    for (String[] property : MongoDbClient.CONNECTION_PROPERTIES) {
+      Properties other = new Properties();
+      other.putAll(first);
+      other.setProperty(property[0], "other");
+      assertFalse(property[0], accepted(first, 16, other, 8));
+    }
+  }
+
+  @Test
+  public void testLaterPhasesCannotNeedMoreConnections() {
+    Properties first = new Properties();
+    assertTrue(accepted(first, 16, first, 16));
+    assertFalse(accepted(first, 16, first, 17));
+  }
+
+  /**
+   * Return the message init() fails with for the given properties, before it connects to anything.
+   */
+  private static String initFailure(String... properties) {
+    Properties p = new Properties();
+    for (int i = 0; i < properties.length; i += 2) {
+      p.setProperty(properties[i], properties[i + 1]);
+    }
+    MongoDbClient client = new MongoDbClient();
+    client.setProperties(p);
+    try {
+      client.init();
+      client.cleanup();
+      return null;
+    } catch (DBException e) {
+      return e.getMessage();
+    }
+  }
+
+  @Test
+  public void testSharedInstancesCannotBatch() {
+    String message = initFailure(DBPool.DB_SHARED_PROPERTY, "true", "batchsize", "2");
+    assertNotNull(message);
+    assertTrue(message, message.startsWith("batchsize"));
+    message = initFailure(DBPool.DB_SHARED_PROPERTY, "true", "writebatchsize", "2");
+    assertNotNull(message);
+    assertTrue(message, message.startsWith("writebatchsize"));
+  }
+}
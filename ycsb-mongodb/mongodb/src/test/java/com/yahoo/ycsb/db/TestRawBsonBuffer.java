@@ -0,0 +1,134 @@
+package com.yahoo.ycsb.db;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+import org.bson.BsonArray;
+import org.bson.BsonBinary;
+import org.bson.BsonBoolean;
+import org.bson.BsonDateTime;
+import org.bson.BsonDocument;
+import org.bson.BsonDouble;
+import org.bson.BsonInt32;
+import org.bson.BsonInt64;
+import org.bson.BsonNull;
+import org.bson.BsonObjectId;
+import org.bson.BsonRegularExpression;
+import org.bson.BsonString;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.BsonDocumentCodec;
+import org.bson.types.ObjectId;
+import org.testng.annotations.Test;
+import static org.testng.AssertJUnit.*;
+
+import com.yahoo.ycsb.ByteArrayByteIterator;
+import com.yahoo.ycsb.ByteIterator;
+
+public class TestRawBsonBuffer {
+  private static byte[] bytes(int n, int seed) {
+    byte[] b = new byte[n];
+    for (int i = 0; i < n; i++) {
+      b[i] = (byte) (seed + i * 31);
+    }
+    return b;
+  }
+
+  private static RawBsonDocument raw(BsonDocument doc) {
+    return new RawBsonDocument(doc, new BsonDocumentCodec());
+  }
+
+  @Test
+  public void testEncodedDocumentDecodesInTheDriver() {
+    RawBsonBuffer buffer = new RawBsonBuffer();
+    buffer.startDocument();
+    buffer.string("_id", "user1234");
+    buffer.binary("field0", new ByteArrayByteIterator(bytes(100, 1)));
+    buffer.binary("f\u00efeld1", new ByteArrayByteIterator(bytes(0, 2)));
+    buffer.int32("count", -7);
+    buffer.startDocument("$set");
+    buffer.binary("field2", new ByteArrayByteIterator(bytes(3, 3)));
+    buffer.endDocument();
+    RawBsonDocument doc = buffer.finish();
+
+    BsonDocument expected = new BsonDocument()
+        .append("_id", new BsonString("user1234"))
+        .append("field0", new BsonBinary(bytes(100, 1)))
+        .append("f\u00efeld1", new BsonBinary(bytes(0, 2)))
+        .append("count", new BsonInt32(-7))
+        .append("$set", new BsonDocument("field2", new BsonBinary(bytes(3, 3))));
+    assertEquals(expected, doc.decode(new BsonDocumentCodec()));
+    assertEquals(raw(expected).getByteBuffer().remaining(), doc.getByteBuffer().remaining());
+  }
+
+  @Test
+  public void testFieldsReadBackAsEncoded() {
+    RawBsonBuffer buffer = new RawBsonBuffer();
+    HashMap<String, byte[]> fields = new HashMap<String, byte[]>();
+    buffer.startDocument();
+    buffer.string("_id", "user1");
+    for (int i = 0; i < 10; i++) {
+      // more than the initial buffer, so it grows on the way
+      byte[] value = bytes(i * 300, i);
+      fields.put("field" + i, value);
+      buffer.binary("field" + i, new ByteArrayByteIterator(value));
+    }
+    RawBsonDocument doc = buffer.finishCopy();
+
+    HashMap<String, ByteIterator> result = new HashMap<String, ByteIterator>();
+    RawBsonBuffer.fillMap(result, doc);
+    assertEquals(fields.keySet(), result.keySet());
+    for (String name : fields.keySet()) {
+      assertTrue(name, Arrays.equals(fields.get(name), result.get(name).toArray()));
+    }
+  }
+
+  @Test
+  public void testViewsSurviveLaterDocuments() {
+    RawBsonBuffer buffer = new RawBsonBuffer();
+    buffer.startDocument();
+    buffer.string("_id", "first");
+    RawBsonDocument first = buffer.finish();
+    buffer.startDocument();
+    buffer.binary("big", new ByteArrayByteIterator(bytes(5000, 9)));
+    RawBsonDocument second = buffer.finish();
+    assertEquals("first", first.getString("_id").getValue());
+    assertTrue(Arrays.equals(bytes(5000, 9), second.getBinary("big").getData()));
+
+    buffer.reset();
+    buffer.startDocument();
+    buffer.string("_id", "third");
+    assertEquals("third", buffer.finish().getString("_id").getValue());
+  }
+
+  @Test
+  public void testSkipsTheTypesTheDriverWrites() {
+    BsonDocument doc = new BsonDocument()
+        .append("_id", new BsonObjectId(new ObjectId()))
+        .append("d", new BsonDouble(1.5))
+        .append("a", new BsonBinary(bytes(10, 1)))
+        .append("l", new BsonInt64(42))
+        .append("t", new BsonDateTime(1000))
+        .append("b", new BsonBoolean(true))
+        .append("n", BsonNull.VALUE)
+        .append("s", new BsonString("text"))
+        .append("arr", new BsonArray(Arrays.asList(new BsonInt32(1), new BsonString("x"))))
+        .append("sub", new BsonDocument("inner", new BsonBinary(bytes(4, 2))))
+        .append("z", new BsonBinary(bytes(20, 3)));
+    HashMap<String, ByteIterator> result = new HashMap<String, ByteIterator>();
+    RawBsonBuffer.fillMap(result, raw(doc));
+    assertEquals(2, result.size());
+    assertTrue(Arrays.equals(bytes(10, 1), result.get("a").toArray()));
+    assertTrue(Arrays.equals(bytes(20, 3), result.get("z").toArray()));
+  }
+
+  @Test
+  public void testFallsBackToTheDriverForOtherTypes() {
+    BsonDocument doc = new BsonDocument()
+        .append("r", new BsonRegularExpression("^a"))
+        .append("a", new BsonBinary(bytes(10, 1)));
+    HashMap<String, ByteIterator> result = new HashMap<String, ByteIterator>();
+    RawBsonBuffer.fillMap(result, raw(doc));
+    assertEquals(1, result.size());
+    assertTrue(Arrays.equals(bytes(10, 1), result.get("a").toArray()));
+  }
+}